@@ -0,0 +1,209 @@
+package sgms.dao;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * MS Access file read through UCanAccess. UCanAccess loads the whole file
+ * into an HSQLDB mirror when the first connection opens, so
+ * startup time and memory grow with the file; see {@link HsqldbStorage} for
+ * larger schools.
+ * <p>
+ * A missing or empty file is replaced by the database shipped in the JAR.
+ * <p>
+ * With a mirror folder, the mirror is kept on disk between runs
+ * (UCanAccess {@code keepMirror}) and reused while the Access file is
+ * unchanged, so a restart skips most of the loading. After a clean close the
+ * file's size and modification time are written next to the mirror; on the
+ * next open the mirror is thrown away and rebuilt unless both still match.
+ * The note is removed while the database is open, so after a crash (or if
+ * another program changed the file) the mirror is always rebuilt.
+ */
+public final class AccessStorage implements StorageBackend {
+
+    /** Name used to select this backend. */
+    public static final String NAME = "access";
+
+    private static final String MIRROR_NAME = "School";
+    private static final String STAMP_FILE = "mirror.properties";
+
+    private final Path file;
+    private final Path mirrorDir;
+
+    // guarded by this
+    private boolean mirrorInUse;
+
+    /** Access file whose mirror is rebuilt on every start. */
+    public AccessStorage(Path file) {
+        this(file, null);
+    }
+
+    /**
+     * @param file the .accdb file
+     * @param mirrorDir folder for the kept mirror, or null to rebuild the
+     *        mirror on every start
+     */
+    public AccessStorage(Path file, Path mirrorDir) {
+        this.file = file;
+        this.mirrorDir = mirrorDir;
+    }
+
+    /** {@code ~/.sgms/School.accdb} */
+    public static Path defaultLocation() {
+        return Paths.get(System.getProperty("user.home"), ".sgms", "School.accdb");
+    }
+
+    /** {@code ~/.sgms/mirror} */
+    public static Path defaultMirrorLocation() {
+        return Paths.get(System.getProperty("user.home"), ".sgms", "mirror");
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Path getLocation() {
+        return file;
+    }
+
+    @Override
+    public boolean exists() {
+        try {
+            return Files.exists(file) && Files.size(file) > 0;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public Connection open() throws SQLException {
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) {
+                Files.createDirectories(dir);
+            }
+            if (!exists()) {
+                long start = System.nanoTime();
+                try (InputStream in = AccessStorage.class.getResourceAsStream("/sgms/data/School.accdb")) {
+                    if (in == null) {
+                        throw new IllegalStateException(
+                                "Embedded DB not found at /sgms/data/School.accdb inside the JAR");
+                    }
+                    Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+                System.err.printf("[startup] copied the embedded School.accdb to %s in %d ms%n",
+                        file, (System.nanoTime() - start) / 1000000L);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to prepare DB at " + file, e);
+        }
+
+        // no singleConnection: pooled connections share one UCanAccess mirror
+        String url = "jdbc:ucanaccess://" + file
+                + ";memory=false";
+        if (mirrorDir != null) {
+            url += ";keepMirror=" + prepareMirror();
+        }
+        return DriverManager.getConnection(url);
+    }
+
+    /**
+     * Store the size and time of the Access file, so the next start can
+     * reuse the mirror. Skipped if connections are still open.
+     */
+    @Override
+    public synchronized void closed(boolean allClosed) {
+        if (mirrorDir == null || !mirrorInUse) {
+            return;
+        }
+        mirrorInUse = false;
+        if (!allClosed) {
+            return; // the mirror may still change; rebuild it next time
+        }
+        try {
+            Properties stamp = new Properties();
+            stamp.setProperty("size", Long.toString(Files.size(file)));
+            stamp.setProperty("modified", Long.toString(Files.getLastModifiedTime(file).toMillis()));
+            try (OutputStream out = Files.newOutputStream(mirrorDir.resolve(STAMP_FILE))) {
+                stamp.store(out, "Access file the mirror was last in step with");
+            }
+        } catch (IOException ex) {
+            System.err.println("[db] could not record the mirror state: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Before the first connection: keep the mirror if the Access file is as
+     * it was at the last clean close, otherwise delete it so it is rebuilt.
+     *
+     * @return the keepMirror path
+     */
+    private synchronized Path prepareMirror() throws SQLException {
+        if (!mirrorInUse) {
+            try {
+                Files.createDirectories(mirrorDir);
+                String reason = staleReason();
+                if (reason == null) {
+                    System.err.println("[startup] reusing the kept mirror (" + file.getFileName() + " unchanged)");
+                } else {
+                    System.err.println("[startup] rebuilding the mirror: " + reason);
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(mirrorDir, MIRROR_NAME + "*")) {
+                        for (Path f : files) {
+                            Files.deleteIfExists(f);
+                        }
+                    }
+                }
+                // written again only by a clean close
+                Files.deleteIfExists(mirrorDir.resolve(STAMP_FILE));
+            } catch (IOException ex) {
+                throw new SQLException("Failed to prepare the mirror in " + mirrorDir, ex);
+            }
+            mirrorInUse = true;
+        }
+        return mirrorDir.resolve(MIRROR_NAME);
+    }
+
+    /** Why the kept mirror cannot be used, or null if it can. */
+    private String staleReason() throws IOException {
+        Path stampFile = mirrorDir.resolve(STAMP_FILE);
+        if (Files.notExists(stampFile)) {
+            return "no mirror from a clean close";
+        }
+        Properties stamp = new Properties();
+        try (InputStream in = Files.newInputStream(stampFile)) {
+            stamp.load(in);
+        }
+        if (!Long.toString(Files.size(file)).equals(stamp.getProperty("size"))
+                || !Long.toString(Files.getLastModifiedTime(file).toMillis()).equals(stamp.getProperty("modified"))) {
+            return file.getFileName() + " changed since the last run";
+        }
+        return null;
+    }
+
+    @Override
+    public String autoIncrementKey() {
+        return "AUTOINCREMENT PRIMARY KEY";
+    }
+
+    @Override
+    public String currentDateDefault() {
+        return "DATE()";
+    }
+
+    @Override
+    public String toString() {
+        return NAME + " (" + file + ")";
+    }
+}
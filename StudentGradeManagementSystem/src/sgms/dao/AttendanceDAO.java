@@ -1,5 +1,7 @@
 package sgms.dao;
 
+import sgms.model.AttendanceBitmap;
+
 import java.time.LocalDate;
 import java.util.Map;
 
@@ -22,6 +24,31 @@ public interface AttendanceDAO {
     Map<Integer, Map<LocalDate, Boolean>> findByCourseAndDateRange(
             int courseId, LocalDate start, LocalDate end) throws Exception;
 
+    /**
+     * Get a course's attendance between two dates as a bit set per student,
+     * read in one pass. Suits long ranges such as a term or the whole year.
+     *
+     * @param courseId course to check
+     * @param start start date (included)
+     * @param end end date (included)
+     * @return register with one row per student that has a record
+     * @throws Exception if the database read fails
+     */
+    AttendanceBitmap findBitmapByCourse(int courseId, LocalDate start, LocalDate end) throws Exception;
+
+    /**
+     * Get attendance for every course in a grade between two dates, read in
+     * one pass.
+     *
+     * @param gradeLevel grade to check
+     * @param start start date (included)
+     * @param end end date (included)
+     * @return map of courseId to that course's register
+     * @throws Exception if the database read fails
+     */
+    Map<Integer, AttendanceBitmap> findBitmapsByGradeLevel(int gradeLevel, LocalDate start, LocalDate end)
+            throws Exception;
+
     /**
      * Add or update one attendance record.
      *
@@ -32,4 +59,16 @@ public interface AttendanceDAO {
      * @throws Exception if the database write fails
      */
     void upsert(int studentId, int courseId, LocalDate date, boolean present) throws Exception;
+
+    /**
+     * Save a whole register for one course in a single transaction. Cells that
+     * already hold the same value are skipped; the rest are sent as one batch
+     * of updates and one batch of inserts. Nothing is saved if any write fails.
+     *
+     * @param courseId course the register belongs to
+     * @param changes studentId -> (date -> present)
+     * @return number of records inserted or updated
+     * @throws Exception if the database write fails
+     */
+    int upsertAll(int courseId, Map<Integer, Map<LocalDate, Boolean>> changes) throws Exception;
 }
@@ -0,0 +1,604 @@
+package sgms.dao;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+
+/**
+ * A prepared statement kept open in a {@link PhysicalConnection}'s cache and
+ * handed to one borrower at a time. It forwards to the real statement;
+ * {@link #close()} only frees it for the next borrower: the result sets it
+ * returned are closed and its parameters and batch are cleared.
+ */
+final class CachedStatement implements PreparedStatement {
+
+    private final PreparedStatement real;
+    boolean inUse;
+    // last result sets handed out; the driver closes older ones on re-execute
+    private ResultSet results;
+    private ResultSet keys;
+
+    CachedStatement(PreparedStatement real) {
+        this.real = real;
+    }
+
+    private PreparedStatement real() throws SQLException {
+        if (!inUse) {
+            throw new SQLException("Statement is closed");
+        }
+        return real;
+    }
+
+    /** Give it back to the cache: close its results, clear its state. */
+    void release() {
+        inUse = false;
+        closeQuietly(results);
+        closeQuietly(keys);
+        results = null;
+        keys = null;
+        try {
+            real.clearParameters();
+            real.clearBatch();
+            real.clearWarnings();
+        } catch (SQLException ignore) {
+        }
+    }
+
+    /** True if the real statement can no longer be used. */
+    boolean isBroken() {
+        try {
+            return real.isClosed();
+        } catch (SQLException ex) {
+            return true;
+        }
+    }
+
+    /** Close the real statement (when it leaves the cache). */
+    void closeQuietly() {
+        try {
+            real.close();
+        } catch (SQLException ignore) {
+        }
+    }
+
+    private static void closeQuietly(ResultSet rs) {
+        if (rs != null) {
+            try {
+                rs.close();
+            } catch (SQLException ignore) {
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return !inUse || real.isClosed();
+    }
+
+    // --- execution ---
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        results = real().executeQuery();
+        return results;
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        results = real().executeQuery(sql);
+        return results;
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        ResultSet rs = real().getResultSet();
+        if (rs != null) {
+            results = rs;
+        }
+        return rs;
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        keys = real().getGeneratedKeys();
+        return keys;
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        return real().executeUpdate(sql);
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        real().cancel();
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        return real().execute(sql);
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        return real().getUpdateCount();
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        return real().getMoreResults();
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        real().addBatch(sql);
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        real().clearBatch();
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        return real().executeBatch();
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        return real().getMoreResults(current);
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return real().executeUpdate(sql, autoGeneratedKeys);
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return real().executeUpdate(sql, columnIndexes);
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        return real().executeUpdate(sql, columnNames);
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        return real().execute(sql, autoGeneratedKeys);
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        return real().execute(sql, columnIndexes);
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        return real().execute(sql, columnNames);
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        return real().executeUpdate();
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        return real().execute();
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        real().addBatch();
+    }
+
+    // --- parameters ---
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        real().setNull(parameterIndex, sqlType);
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        real().setBoolean(parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        real().setByte(parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        real().setShort(parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        real().setInt(parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        real().setLong(parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        real().setFloat(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        real().setDouble(parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        real().setBigDecimal(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        real().setString(parameterIndex, x);
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        real().setBytes(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        real().setDate(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        real().setTime(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        real().setTimestamp(parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        real().setAsciiStream(parameterIndex, x, length);
+    }
+
+    @Override
+    @Deprecated
+    @SuppressWarnings("deprecation")
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        real().setUnicodeStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, int length) throws SQLException {
+        real().setBinaryStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        real().clearParameters();
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        real().setObject(parameterIndex, x, targetSqlType);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        real().setObject(parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, int length) throws SQLException {
+        real().setCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setRef(int parameterIndex, Ref x) throws SQLException {
+        real().setRef(parameterIndex, x);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        real().setBlob(parameterIndex, x);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Clob x) throws SQLException {
+        real().setClob(parameterIndex, x);
+    }
+
+    @Override
+    public void setArray(int parameterIndex, Array x) throws SQLException {
+        real().setArray(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+        real().setDate(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+        real().setTime(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+        real().setTimestamp(parameterIndex, x, cal);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        real().setNull(parameterIndex, sqlType, typeName);
+    }
+
+    @Override
+    public void setURL(int parameterIndex, URL x) throws SQLException {
+        real().setURL(parameterIndex, x);
+    }
+
+    @Override
+    public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        real().setRowId(parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String x) throws SQLException {
+        real().setNString(parameterIndex, x);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+        real().setNCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, NClob x) throws SQLException {
+        real().setNClob(parameterIndex, x);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        real().setClob(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream x, long length) throws SQLException {
+        real().setBlob(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
+        real().setNClob(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setSQLXML(int parameterIndex, SQLXML x) throws SQLException {
+        real().setSQLXML(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        real().setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        real().setAsciiStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        real().setBinaryStream(parameterIndex, x, length);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader, long length) throws SQLException {
+        real().setCharacterStream(parameterIndex, reader, length);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
+        real().setAsciiStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
+        real().setBinaryStream(parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+        real().setCharacterStream(parameterIndex, reader);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader reader) throws SQLException {
+        real().setNCharacterStream(parameterIndex, reader);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader) throws SQLException {
+        real().setClob(parameterIndex, reader);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream x) throws SQLException {
+        real().setBlob(parameterIndex, x);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader) throws SQLException {
+        real().setNClob(parameterIndex, reader);
+    }
+
+    // --- plain pass-through ---
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return real().getMaxFieldSize();
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        real().setMaxFieldSize(max);
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return real().getMaxRows();
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        real().setMaxRows(max);
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        real().setEscapeProcessing(enable);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return real().getQueryTimeout();
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        real().setQueryTimeout(seconds);
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return real().getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        real().clearWarnings();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        real().setCursorName(name);
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        real().setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return real().getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        real().setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return real().getFetchSize();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return real().getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return real().getResultSetType();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return real().getConnection();
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return real().getResultSetHoldability();
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        real().setPoolable(poolable);
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return real().isPoolable();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        real().closeOnCompletion();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return real().isCloseOnCompletion();
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return real().getMetaData();
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        return real().getParameterMetaData();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return real().unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || real().isWrapperFor(iface);
+    }
+}
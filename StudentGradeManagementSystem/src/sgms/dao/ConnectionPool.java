@@ -0,0 +1,250 @@
+package sgms.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small bounded pool of physical connections used by {@link DB}.
+ * Connections are validated when borrowed, evicted after sitting idle too long
+ * and keep their own cache of prepared statements. Statements a borrower
+ * forgot to close are closed when the connection comes back and counted as
+ * leaks (see {@link DB#stats()}).
+ */
+final class ConnectionPool {
+
+    /** Opens a new physical connection. */
+    interface Factory {
+        Connection open() throws SQLException;
+    }
+
+    private final Factory factory;
+    private final int maxSize;
+    private final int minIdle;
+    private final long idleTimeoutNanos;
+    private final long borrowTimeoutMillis;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    // most recently used at the head, so the tail holds the oldest idle ones
+    private final Deque<PhysicalConnection> idle = new ArrayDeque<PhysicalConnection>();
+    private final List<PhysicalConnection> all = new ArrayList<PhysicalConnection>();
+    private final ScheduledExecutorService evictor;
+    private final AtomicLong leakedStatements = new AtomicLong();
+    private volatile boolean closed;
+
+    ConnectionPool(Factory factory, int maxSize, int minIdle, long idleTimeoutMillis,
+                   long borrowTimeoutMillis, int statementCacheSize) {
+        this.factory = factory;
+        this.maxSize = Math.max(1, maxSize);
+        this.minIdle = Math.max(0, Math.min(minIdle, this.maxSize));
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1000L, idleTimeoutMillis));
+        this.borrowTimeoutMillis = Math.max(0L, borrowTimeoutMillis);
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+        this.permits = new Semaphore(this.maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "sgms-db-evictor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        long period = Math.max(1000L, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdle();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection. Closing the returned connection hands it back to
+     * the pool instead of closing the physical connection.
+     */
+    Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is shut down");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a database connection (pool size "
+                        + maxSize + ")");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", ex);
+        }
+
+        try {
+            while (true) {
+                PhysicalConnection pc = pollIdle();
+                if (pc == null) {
+                    pc = new PhysicalConnection(factory.open(), statementCacheSize);
+                    synchronized (this) {
+                        all.add(pc);
+                    }
+                    return new PooledConnection(this, pc);
+                }
+                if (isExpired(pc, System.nanoTime()) || !isUsable(pc)) {
+                    destroy(pc);
+                    continue;
+                }
+                return new PooledConnection(this, pc);
+            }
+        } catch (SQLException ex) {
+            permits.release();
+            throw ex;
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /** Called by {@link PooledConnection#close()}. */
+    void release(PhysicalConnection pc) {
+        try {
+            boolean healthy = !closed && resetState(pc);
+            if (healthy) {
+                pc.lastUsedNanos = System.nanoTime();
+                synchronized (this) {
+                    idle.addFirst(pc);
+                }
+            } else {
+                destroy(pc);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** Close every connection. Borrowed ones are closed when handed back. */
+    void close() {
+        closed = true;
+        evictor.shutdownNow();
+        List<PhysicalConnection> toClose;
+        synchronized (this) {
+            toClose = new ArrayList<PhysicalConnection>(idle);
+            idle.clear();
+        }
+        for (int i = 0; i < toClose.size(); i++) {
+            destroy(toClose.get(i));
+        }
+    }
+
+    /** Number of physical connections currently open (idle or borrowed). */
+    synchronized int size() {
+        return all.size();
+    }
+
+    /** Number of idle connections ready to be borrowed. */
+    synchronized int idleCount() {
+        return idle.size();
+    }
+
+    int maxSize() {
+        return maxSize;
+    }
+
+    /** Connections handed out and not yet returned. */
+    int borrowedCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    /** Prepared statements cached over all open connections. */
+    synchronized int cachedStatementCount() {
+        int n = 0;
+        for (int i = 0; i < all.size(); i++) {
+            n += all.get(i).cachedStatementCount();
+        }
+        return n;
+    }
+
+    /** Statements left open by borrowers since the pool started. */
+    long leakedStatementCount() {
+        return leakedStatements.get();
+    }
+
+    /** Called by {@link PooledConnection#close()} when it had to close statements itself. */
+    void statementsLeaked(int count) {
+        long total = leakedStatements.addAndGet(count);
+        System.err.println("[db] " + count + " statement(s) were not closed before the connection"
+                + " was returned (" + total + " so far)");
+    }
+
+    // --- helpers ---
+
+    private synchronized PhysicalConnection pollIdle() {
+        return idle.pollFirst();
+    }
+
+    /** Drop idle connections past the timeout, but keep minIdle around. */
+    void evictIdle() {
+        long now = System.nanoTime();
+        List<PhysicalConnection> expired = new ArrayList<PhysicalConnection>();
+        synchronized (this) {
+            Iterator<PhysicalConnection> it = idle.descendingIterator();
+            while (it.hasNext() && idle.size() > minIdle) {
+                PhysicalConnection pc = it.next();
+                if (isExpired(pc, now)) {
+                    it.remove();
+                    expired.add(pc);
+                }
+            }
+        }
+        for (int i = 0; i < expired.size(); i++) {
+            destroy(expired.get(i));
+        }
+    }
+
+    private boolean isExpired(PhysicalConnection pc, long now) {
+        return now - pc.lastUsedNanos > idleTimeoutNanos;
+    }
+
+    private static boolean isUsable(PhysicalConnection pc) {
+        try {
+            return !pc.raw.isClosed() && pc.raw.isValid(2);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    /** Undo anything a caller left behind (open transaction, read-only flag). */
+    private static boolean resetState(PhysicalConnection pc) {
+        try {
+            if (pc.raw.isClosed()) {
+                return false;
+            }
+            if (!pc.raw.getAutoCommit()) {
+                pc.raw.rollback();
+                pc.raw.setAutoCommit(true);
+            }
+            if (pc.raw.isReadOnly()) {
+                pc.raw.setReadOnly(false);
+            }
+            pc.raw.clearWarnings();
+            return true;
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private void destroy(PhysicalConnection pc) {
+        synchronized (this) {
+            all.remove(pc);
+        }
+        pc.closeQuietly();
+    }
+}
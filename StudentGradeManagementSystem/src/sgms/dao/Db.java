@@ -2,22 +2,48 @@ package sgms.dao;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.nio.file.*;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.Handler;
 
+/**
+ * Entry point for database connections. {@link #get()} borrows a connection
+ * from a small pool; closing it (try-with-resources) hands it back.
+ * <p>
+ * Pool settings can be changed with system properties:
+ * {@code sgms.db.poolSize} (default 4), {@code sgms.db.minIdle} (1),
+ * {@code sgms.db.idleTimeoutSeconds} (300), {@code sgms.db.borrowTimeoutSeconds} (30)
+ * and {@code sgms.db.statementCacheSize} (32, per connection).
+ * {@link #stats()} shows pool usage and how many statements callers forgot
+ * to close.
+ * <p>
+ * When the pool starts, {@link SchemaBootstrap} brings the schema up to
+ * date before any connection is handed out.
+ * <p>
+ * The data lives in a {@link StorageBackend}, chosen once at startup by the
+ * system property {@code sgms.db.backend}, else by the {@code backend} entry
+ * of {@code ~/.sgms/sgms.properties}: {@code access} (the default,
+ * {@code ~/.sgms/School.accdb}) or {@code hsqldb} ({@code ~/.sgms/hsqldb}).
+ * The Access mirror is kept in {@code ~/.sgms/mirror} between runs unless
+ * {@code sgms.db.keepMirror} is {@code false}.
+ * <p>
+ * Opening the database can take seconds, so {@link #warmUp()} starts it in
+ * the background at launch. Each startup step is logged as {@code [startup]}.
+ */
 public final class DB {
     private DB() {}
 
-    /** Cached connection reused across DAO calls. */
-    private static Connection shared;
+    /** Shared pool, created on first use. */
+    private static volatile ConnectionPool pool;
+
+    /** Where the data lives, chosen on first use. */
+    private static volatile StorageBackend backend;
 
     static {
         System.setProperty("hsqldb.reconfig_logging", "false");
@@ -31,57 +57,209 @@ public final class DB {
         Runtime.getRuntime().addShutdownHook(new Thread(DB::shutdown));
     }
 
-    public static synchronized Connection get() throws SQLException {
-        if (shared == null || shared.isClosed()) {
-            shared = open();
+    /**
+     * Borrow a connection. Safe to call from several threads at once; each
+     * caller gets its own connection until the pool is exhausted.
+     */
+    public static Connection get() throws SQLException {
+        ConnectionPool p = pool;
+        if (p == null) {
+            p = initPool();
         }
+        return p.borrow();
+    }
 
-        InvocationHandler h = new InvocationHandler() {
-            @Override
-            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                if ("close".equals(method.getName())) {
-                    return null;
+    private static synchronized ConnectionPool initPool() throws SQLException {
+        if (pool == null) {
+            long start = System.nanoTime();
+            final StorageBackend b = backend();
+            ConnectionPool p = new ConnectionPool(new ConnectionPool.Factory() {
+                @Override
+                public Connection open() throws SQLException {
+                    return b.open();
                 }
-                return method.invoke(shared, args);
+            },
+                    intProperty("sgms.db.poolSize", 4),
+                    intProperty("sgms.db.minIdle", 1),
+                    intProperty("sgms.db.idleTimeoutSeconds", 300) * 1000L,
+                    intProperty("sgms.db.borrowTimeoutSeconds", 30) * 1000L,
+                    intProperty("sgms.db.statementCacheSize", 32));
+
+            // publish the pool only once the schema is current
+            long opened;
+            try (Connection c = p.borrow()) {
+                opened = System.nanoTime();
+                SchemaBootstrap.run(c, b);
+            } catch (SQLException | RuntimeException ex) {
+                p.close();
+                throw ex;
             }
-        };
-        return (Connection) Proxy.newProxyInstance(
-                Connection.class.getClassLoader(),
-                new Class[]{Connection.class},
-                h);
+            pool = p;
+            long done = System.nanoTime();
+            System.err.printf("[startup] database %s: open %d ms, schema check %d ms; ready %d ms after launch%n",
+                    b, (opened - start) / 1000000L, (done - opened) / 1000000L,
+                    ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+        return pool;
     }
 
-    private static Connection open() throws SQLException {
-        Path appDir = Paths.get(System.getProperty("user.home"), ".sgms");
-        Path dbPath = appDir.resolve("School.accdb");
+    /**
+     * Open the database on a background thread, so it is ready by the time
+     * the user logs in. A {@link #get()} meanwhile waits for it instead of
+     * opening a second time. Failures are only logged here; the next
+     * {@link #get()} tries again and reports them.
+     */
+    public static void warmUp() {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    get().close(); // opening is all we want
+                } catch (SQLException | RuntimeException ex) {
+                    System.err.println("[startup] database warm-up failed: " + ex.getMessage());
+                }
+            }
+        }, "sgms-db-warmup");
+        t.setDaemon(true);
+        t.start();
+    }
 
+    private static int intProperty(String name, int def) {
+        String v = System.getProperty(name);
+        if (v == null) return def;
         try {
-            Files.createDirectories(appDir);
-            if (Files.notExists(dbPath) || Files.size(dbPath) == 0) {
-                try (InputStream in = DB.class.getResourceAsStream("/sgms/data/School.accdb")) {
-                    if (in == null) {
-                        throw new IllegalStateException(
-                                "Embedded DB not found at /sgms/data/School.accdb inside the JAR");
-                    }
-                    Files.copy(in, dbPath, StandardCopyOption.REPLACE_EXISTING);
-                }
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException ex) {
+            return def;
+        }
+    }
+
+    /**
+     * The storage backend in use (see the class comment). Reading it does
+     * not open the database.
+     *
+     * @throws SQLException if the configured backend name is unknown
+     */
+    public static StorageBackend backend() throws SQLException {
+        StorageBackend b = backend;
+        if (b == null) {
+            b = selectBackend();
+        }
+        return b;
+    }
+
+    private static synchronized StorageBackend selectBackend() throws SQLException {
+        if (backend == null) {
+            String name = System.getProperty("sgms.db.backend");
+            if (name == null) {
+                name = settings().getProperty("backend", AccessStorage.NAME);
+            }
+            backend = backendFor(name.trim());
+        }
+        return backend;
+    }
+
+    /**
+     * Backend with the given name at its default location.
+     *
+     * @throws SQLException if the name is unknown
+     */
+    public static StorageBackend backendFor(String name) throws SQLException {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case AccessStorage.NAME:
+                return new AccessStorage(AccessStorage.defaultLocation(),
+                        Boolean.parseBoolean(System.getProperty("sgms.db.keepMirror", "true"))
+                                ? AccessStorage.defaultMirrorLocation() : null);
+            case HsqldbStorage.NAME:
+                return new HsqldbStorage(HsqldbStorage.defaultLocation());
+            default:
+                throw new SQLException("Unknown storage backend '" + name + "' (use "
+                        + AccessStorage.NAME + " or " + HsqldbStorage.NAME + ")");
+        }
+    }
+
+    /** {@code ~/.sgms/sgms.properties}; may not exist. */
+    public static Path settingsFile() {
+        return Paths.get(System.getProperty("user.home"), ".sgms", "sgms.properties");
+    }
+
+    private static Properties settings() {
+        Properties props = new Properties();
+        Path file = settingsFile();
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                props.load(in);
+            } catch (IOException ex) {
+                System.err.println("[db] could not read " + file + ": " + ex.getMessage());
             }
-        } catch (IOException e) {
-            throw new SQLException("Failed to prepare DB at " + dbPath, e);
         }
+        return props;
+    }
+
+    /** Snapshot of the pool for diagnostics. */
+    public static final class Stats {
+        private final int maxSize;
+        private final int open;
+        private final int idle;
+        private final int borrowed;
+        private final int cachedStatements;
+        private final long leakedStatements;
+
+        Stats(int maxSize, int open, int idle, int borrowed, int cachedStatements, long leakedStatements) {
+            this.maxSize = maxSize;
+            this.open = open;
+            this.idle = idle;
+            this.borrowed = borrowed;
+            this.cachedStatements = cachedStatements;
+            this.leakedStatements = leakedStatements;
+        }
+
+        public int getMaxSize() { return maxSize; }
+        /** Physical connections open (idle or borrowed). */
+        public int getOpen() { return open; }
+        public int getIdle() { return idle; }
+        public int getBorrowed() { return borrowed; }
+        public int getCachedStatements() { return cachedStatements; }
+        /** Statements closed by the pool because their borrower did not; should stay 0. */
+        public long getLeakedStatements() { return leakedStatements; }
+
+        @Override
+        public String toString() {
+            return "connections " + open + "/" + maxSize + " open (" + idle + " idle, " + borrowed + " in use), "
+                    + cachedStatements + " cached statements, " + leakedStatements + " leaked statements";
+        }
+    }
+
+    /** Current pool numbers (all zero before the first {@link #get()}). */
+    public static Stats stats() {
+        ConnectionPool p = pool;
+        if (p == null) {
+            return new Stats(intProperty("sgms.db.poolSize", 4), 0, 0, 0, 0, 0L);
+        }
+        return stats(p);
+    }
 
-        String url = "jdbc:ucanaccess://" + dbPath
-                + ";memory=false;singleConnection=true";
-        return DriverManager.getConnection(url);
+    private static Stats stats(ConnectionPool p) {
+        return new Stats(p.maxSize(), p.size(), p.idleCount(), p.borrowedCount(),
+                p.cachedStatementCount(), p.leakedStatementCount());
     }
 
+    /**
+     * Close every pooled connection. The next {@link #get()} starts a new pool.
+     * The pool numbers are logged first, so a connection still in use at
+     * shutdown shows up next to the leak summary.
+     */
     public static synchronized void shutdown() {
-        if (shared != null) {
-            try {
-                shared.close();
-            } catch (SQLException ignore) {
+        ConnectionPool p = pool;
+        if (p != null) {
+            pool = null;
+            System.err.println("[db] pool at shutdown: " + stats(p));
+            if (p.leakedStatementCount() > 0) {
+                System.err.println("[db] leak summary: " + p.leakedStatementCount()
+                        + " statement(s) were closed by the pool instead of by their borrower");
             }
-            shared = null;
+            p.close();
+            backend.closed(p.size() == 0);
         }
     }
 }
\ No newline at end of file
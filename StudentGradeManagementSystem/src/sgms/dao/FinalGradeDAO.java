@@ -5,15 +5,17 @@ import sgms.model.FinalGrade;
 
 /**
  * Final grade database access. Lets us read final grades and the list of grade
- * levels that have data.
+ * levels that have data. Final grades are stored in tblFinalGrades, which the
+ * other DAOs keep up to date whenever marks or assignments change.
  */
 public interface FinalGradeDAO {
 
     /**
-     * Get all final grades for one grade level.
+     * Get all final grades for one grade level. Every student in the grade
+     * gets a row; values are null when the student has no marks.
      *
      * @param gradeLevel e.g. 8, 9, 10, 11, 12
-     * @return list of final grades (can be empty)
+     * @return list of final grades, ordered by last name (can be empty)
      * @throws Exception if the database read fails
      */
     List<FinalGrade> findByGradeLevel(int gradeLevel) throws Exception;
@@ -25,4 +27,32 @@ public interface FinalGradeDAO {
      * @throws Exception if the database read fails
      */
     List<Integer> findGradeLevels() throws Exception;
+
+    /**
+     * Recompute the stored final grades for one student.
+     *
+     * @param studentId the student
+     * @throws Exception if the database read or write fails
+     */
+    void refreshStudent(int studentId) throws Exception;
+
+    /**
+     * Recompute the stored final grades for every student in a grade level.
+     *
+     * @param gradeLevel e.g. 8, 9, 10, 11, 12
+     * @return number of rows written
+     * @throws Exception if the database read or write fails
+     */
+    int refreshGradeLevel(int gradeLevel) throws Exception;
+
+    /**
+     * Compare the stored final grades with values computed from the marks.
+     * Schema migration 4 runs this with repair on, once per database;
+     * {@code DBSetup} runs it again on request.
+     *
+     * @param repair true to fix every row that is wrong or missing
+     * @return number of students whose stored row did not match
+     * @throws Exception if the database read or write fails
+     */
+    int checkConsistency(boolean repair) throws Exception;
 }
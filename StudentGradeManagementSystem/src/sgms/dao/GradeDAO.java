@@ -1,6 +1,9 @@
 package sgms.dao;
 
+import java.util.List;
 import java.util.Map;
+import sgms.model.GradeMatrix;
+import sgms.model.GradeSaveResult;
 
 /**
  * Grades database access. We store raw marks for each student and assignment in
@@ -9,14 +12,14 @@ import java.util.Map;
 public interface GradeDAO {
 
     /**
-     * Get all grades for one course. Map layout: studentId -> (assignmentId ->
-     * raw mark).
+     * Get all grades for one course. Rows are students, columns are
+     * assignments (both in ascending ID order).
      *
      * @param courseId the course to read
-     * @return nested map of marks (can be empty)
+     * @return matrix of raw marks (can be empty)
      * @throws Exception if the database read fails
      */
-    Map<Integer, Map<Integer, Integer>> findByCourse(int courseId) throws Exception;
+    GradeMatrix findByCourse(int courseId) throws Exception;
 
     /**
      * Add or update one grade for a student and assignment.
@@ -27,4 +30,16 @@ public interface GradeDAO {
      * @throws Exception if the database write fails
      */
     void upsert(int studentId, int assignmentId, int mark) throws Exception;
+
+    /**
+     * Save many marks at once, in one transaction. Only cells that differ
+     * from the database are sent; a null mark clears that cell.
+     * A cell the database rejects is reported as FAILED and the rest are
+     * still saved.
+     *
+     * @param changes studentId -> (assignmentId -> raw mark, or null to clear)
+     * @return one result per cell in {@code changes}
+     * @throws Exception if the save as a whole fails (nothing is saved)
+     */
+    List<GradeSaveResult> upsertAll(Map<Integer, Map<Integer, Integer>> changes) throws Exception;
 }
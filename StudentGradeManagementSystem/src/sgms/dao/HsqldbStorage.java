@@ -0,0 +1,83 @@
+package sgms.dao;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * Native HSQLDB file database (the engine UCanAccess itself runs on, used
+ * directly). Tables are disk-based ("cached"), so only the rows in use are
+ * kept in memory and opening it does not read the whole store.
+ * <p>
+ * The store is a folder holding {@code school.properties}, {@code school.script}
+ * and {@code school.data}. Text comparisons ignore case, as in Access.
+ * Fill a new store from School.accdb with {@code sgms.util.StorageMigrator}.
+ */
+public final class HsqldbStorage implements StorageBackend {
+
+    /** Name used to select this backend. */
+    public static final String NAME = "hsqldb";
+
+    private static final String DB_NAME = "school";
+
+    private final Path dir;
+
+    public HsqldbStorage(Path dir) {
+        this.dir = dir;
+    }
+
+    /** {@code ~/.sgms/hsqldb} */
+    public static Path defaultLocation() {
+        return Paths.get(System.getProperty("user.home"), ".sgms", "hsqldb");
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Path getLocation() {
+        return dir;
+    }
+
+    @Override
+    public boolean exists() {
+        return Files.exists(dir.resolve(DB_NAME + ".properties"));
+    }
+
+    @Override
+    public Connection open() throws SQLException {
+        // cached tables: rows stay on disk; mvcc: grid loads do not wait
+        // for writers; shutdown: the files are closed with the last connection
+        String url = "jdbc:hsqldb:file:" + dir.resolve(DB_NAME).toAbsolutePath()
+                + ";hsqldb.default_table_type=cached"
+                + ";hsqldb.tx=mvcc"
+                + ";sql.ignore_case=true"
+                + ";shutdown=true";
+        return DriverManager.getConnection(url, "SA", "");
+    }
+
+    /** Nothing to do: the files are closed with the last connection. */
+    @Override
+    public void closed(boolean allClosed) {
+    }
+
+    @Override
+    public String autoIncrementKey() {
+        return "INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY";
+    }
+
+    @Override
+    public String currentDateDefault() {
+        return "CURRENT_DATE";
+    }
+
+    @Override
+    public String toString() {
+        return NAME + " (" + dir + ")";
+    }
+}
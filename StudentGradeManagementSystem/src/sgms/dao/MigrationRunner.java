@@ -0,0 +1,242 @@
+package sgms.dao;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Applies numbered schema changes (migrations) in order, each one once.
+ * Every applied migration is recorded as a row in {@code tblSchemaVersion},
+ * so the highest recorded number is the schema version of the database.
+ * <p>
+ * A migration must be safe to run again on a database where it has already
+ * (partly) happened: if the program stops after the change but before the
+ * row is written, the next start runs it again. {@link Schema} tells it what
+ * is already there.
+ */
+public final class MigrationRunner {
+
+    /** One numbered schema change. */
+    public interface Migration {
+        /** Position in the sequence, starting at 1. */
+        int getVersion();
+
+        /** Short text stored with the version. */
+        String getDescription();
+
+        /**
+         * Make the change, skipping any part that is already there.
+         *
+         * @param c open connection
+         * @param schema tables and indexes that existed before this run
+         * @return what was done, for the log
+         */
+        String apply(Connection c, Schema schema) throws SQLException;
+    }
+
+    /**
+     * Tables and indexes in the database, read from the metadata only when
+     * there is something to apply. Names are compared case-insensitively.
+     */
+    public static final class Schema {
+        private final DatabaseMetaData meta;
+        private final Set<String> tables = new HashSet<String>();
+        // table -> column lists of its indexes (in index column order)
+        private final Map<String, List<List<String>>> indexes = new HashMap<String, List<List<String>>>();
+
+        Schema(Connection c) throws SQLException {
+            this.meta = c.getMetaData();
+            try (ResultSet rs = meta.getTables(null, null, null, new String[] { "TABLE" })) {
+                while (rs.next()) {
+                    String name = rs.getString("TABLE_NAME");
+                    if (name != null) {
+                        tables.add(key(name));
+                    }
+                }
+            }
+        }
+
+        public boolean hasTable(String table) {
+            return tables.contains(key(table));
+        }
+
+        /**
+         * True if some index on the table starts with these columns (in this
+         * order), so it can serve lookups on them.
+         */
+        public boolean hasIndexOn(String table, String... columns) throws SQLException {
+            for (List<String> cols : indexes(table)) {
+                if (cols.size() >= columns.length) {
+                    boolean match = true;
+                    for (int i = 0; i < columns.length && match; i++) {
+                        match = cols.get(i).equals(key(columns[i]));
+                    }
+                    if (match) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /** Remember a table made by a migration, for the ones after it. */
+        public void tableCreated(String table) {
+            tables.add(key(table));
+        }
+
+        /** Remember an index made by a migration, for the ones after it. */
+        public void indexCreated(String table, String... columns) throws SQLException {
+            List<String> cols = new ArrayList<String>();
+            for (String col : columns) {
+                cols.add(key(col));
+            }
+            indexes(table).add(cols);
+        }
+
+        private List<List<String>> indexes(String table) throws SQLException {
+            List<List<String>> list = indexes.get(key(table));
+            if (list != null) {
+                return list;
+            }
+            // INDEX_NAME -> (ORDINAL_POSITION -> column)
+            Map<String, Map<Integer, String>> byName = new HashMap<String, Map<Integer, String>>();
+            if (hasTable(table)) {
+                try (ResultSet rs = meta.getIndexInfo(null, null, table.toUpperCase(Locale.ROOT), false, false)) {
+                    while (rs.next()) {
+                        String index = rs.getString("INDEX_NAME");
+                        String column = rs.getString("COLUMN_NAME");
+                        if (index == null || column == null) {
+                            continue;
+                        }
+                        Map<Integer, String> cols = byName.get(index);
+                        if (cols == null) {
+                            cols = new TreeMap<Integer, String>();
+                            byName.put(index, cols);
+                        }
+                        cols.put(Integer.valueOf(rs.getInt("ORDINAL_POSITION")), key(column));
+                    }
+                }
+            }
+            list = new ArrayList<List<String>>();
+            for (Map<Integer, String> cols : byName.values()) {
+                list.add(new ArrayList<String>(cols.values()));
+            }
+            indexes.put(key(table), list);
+            return list;
+        }
+
+        private static String key(String name) {
+            return name.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final String CREATE_VERSION_TABLE =
+            "CREATE TABLE tblSchemaVersion (" +
+            "  version     INTEGER PRIMARY KEY, " +
+            "  description VARCHAR(100), " +
+            "  appliedOn   TIMESTAMP" +
+            ")";
+
+    private static final String SELECT_VERSION =
+            "SELECT MAX(version) FROM tblSchemaVersion";
+
+    private static final String INSERT_VERSION =
+            "INSERT INTO tblSchemaVersion (version, description, appliedOn) VALUES (?, ?, ?)";
+
+    private final List<Migration> migrations;
+
+    /**
+     * @param migrations numbered 1, 2, 3... with no gaps (any order)
+     */
+    public MigrationRunner(List<Migration> migrations) {
+        List<Migration> sorted = new ArrayList<Migration>(migrations);
+        Collections.sort(sorted, new Comparator<Migration>() {
+            @Override
+            public int compare(Migration a, Migration b) {
+                return Integer.compare(a.getVersion(), b.getVersion());
+            }
+        });
+        for (int i = 0; i < sorted.size(); i++) {
+            if (sorted.get(i).getVersion() != i + 1) {
+                throw new IllegalArgumentException("Migrations must be numbered 1.." + sorted.size()
+                        + " without gaps; found " + sorted.get(i).getVersion() + " at position " + (i + 1));
+            }
+        }
+        this.migrations = Collections.unmodifiableList(sorted);
+    }
+
+    /** Version of the last migration. */
+    public int getLatestVersion() {
+        return migrations.size();
+    }
+
+    /**
+     * Apply every migration newer than the recorded version.
+     *
+     * @param c open connection (not closed)
+     * @return the schema version now in the database
+     * @throws SQLException if reading the version or a migration fails; the
+     *         migrations before it stay recorded
+     */
+    public int run(Connection c) throws SQLException {
+        int version = readVersion(c);
+        if (version >= getLatestVersion()) {
+            return version;
+        }
+
+        Schema schema = new Schema(c);
+        if (version < 0) {
+            try (Statement s = c.createStatement()) {
+                s.executeUpdate(CREATE_VERSION_TABLE);
+            }
+            version = 0;
+        }
+        for (int i = version; i < migrations.size(); i++) {
+            Migration m = migrations.get(i);
+            String done = m.apply(c, schema);
+            record(c, m);
+            System.err.println("[schema] applied version " + m.getVersion() + " (" + m.getDescription() + "): " + done);
+        }
+        return getLatestVersion();
+    }
+
+    /**
+     * Recorded version: 0 if the version table is empty, -1 if it does not
+     * exist yet (a database made before versioning).
+     */
+    public static int readVersion(Connection c) throws SQLException {
+        try (Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery(SELECT_VERSION)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException ex) {
+            if (new Schema(c).hasTable("tblSchemaVersion")) {
+                throw ex; // the table is there, so this is a real failure
+            }
+            return -1;
+        }
+    }
+
+    private static void record(Connection c, Migration m) throws SQLException {
+        String description = m.getDescription();
+        try (PreparedStatement ps = c.prepareStatement(INSERT_VERSION)) {
+            ps.setInt(1, m.getVersion());
+            ps.setString(2, description.length() > 100 ? description.substring(0, 100) : description);
+            ps.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            ps.executeUpdate();
+        }
+    }
+}
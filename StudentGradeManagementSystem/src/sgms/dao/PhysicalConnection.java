@@ -0,0 +1,102 @@
+package sgms.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One real JDBC connection owned by the {@link ConnectionPool}, plus its cache
+ * of prepared statements. Only one borrower uses it at a time.
+ */
+final class PhysicalConnection {
+
+    final Connection raw;
+    volatile long lastUsedNanos = System.nanoTime();
+
+    private final int cacheSize;
+    // SQL text -> reusable statement, least recently used first
+    private final LinkedHashMap<String, CachedStatement> cache;
+
+    PhysicalConnection(Connection raw, int cacheSize) {
+        this.raw = raw;
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true);
+    }
+
+    /**
+     * Return the cached statement for this SQL, preparing it if needed.
+     * Closing it only frees it for reuse.
+     *
+     * @return null if the cache is off or the statement is already open in
+     *         this borrow; the caller then prepares (and tracks) a plain one
+     */
+    PreparedStatement prepareCached(String sql) throws SQLException {
+        if (cacheSize == 0) {
+            return null;
+        }
+        CachedStatement cs = cache.get(sql);
+        if (cs != null && cs.inUse) {
+            return null; // same SQL opened twice in one borrow
+        }
+        if (cs == null || cs.isBroken()) {
+            if (cs != null) {
+                cache.remove(sql);
+                cs.closeQuietly();
+            }
+            cs = new CachedStatement(raw.prepareStatement(sql));
+            cache.put(sql, cs);
+            trimCache();
+        }
+        cs.inUse = true;
+        return cs;
+    }
+
+    /**
+     * Mark every statement as free again (used when a borrow ends).
+     *
+     * @return how many were still open, i.e. never closed by the borrower
+     */
+    int releaseStatements() {
+        int open = 0;
+        Iterator<CachedStatement> it = cache.values().iterator();
+        while (it.hasNext()) {
+            CachedStatement cs = it.next();
+            if (cs.inUse) {
+                cs.release();
+                open++;
+            }
+        }
+        return open;
+    }
+
+    int cachedStatementCount() {
+        return cache.size();
+    }
+
+    void closeQuietly() {
+        Iterator<CachedStatement> it = cache.values().iterator();
+        while (it.hasNext()) {
+            it.next().closeQuietly();
+        }
+        cache.clear();
+        try {
+            raw.close();
+        } catch (SQLException ignore) {
+        }
+    }
+
+    /** Drop the least recently used idle statements above the limit. */
+    private void trimCache() {
+        Iterator<Map.Entry<String, CachedStatement>> it = cache.entrySet().iterator();
+        while (cache.size() > cacheSize && it.hasNext()) {
+            CachedStatement cs = it.next().getValue();
+            if (!cs.inUse) {
+                it.remove();
+                cs.closeQuietly();
+            }
+        }
+    }
+}
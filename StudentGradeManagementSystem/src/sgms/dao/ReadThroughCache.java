@@ -0,0 +1,119 @@
+package sgms.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small in-memory cache that loads a value on the first request and keeps
+ * it for a limited time. The least recently used entry is dropped when the
+ * cache is full. Writers call {@link #invalidate(Object)} or
+ * {@link #invalidateAll()} after changing the data behind it.
+ * <p>
+ * Values are shared between callers, so cache only objects that nobody
+ * changes (or hand out copies).
+ */
+public final class ReadThroughCache<K, V> {
+
+    /** Reads a value from the real source on a miss. */
+    public interface Loader<K, V> {
+        V load(K key) throws Exception;
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long loadedNanos;
+
+        Entry(V value, long loadedNanos) {
+            this.value = value;
+            this.loadedNanos = loadedNanos;
+        }
+    }
+
+    private final String name;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> map;
+    // bumped by every invalidation, so a load that overlaps one is not stored
+    private long generation;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param name shown in {@link #toString()}
+     * @param maxEntries most keys kept at once
+     * @param ttlMillis how long a value is trusted (0 = until invalidated)
+     */
+    public ReadThroughCache(String name, final int maxEntries, long ttlMillis) {
+        this.name = name;
+        this.ttlNanos = Math.max(0L, ttlMillis) * 1000000L;
+        this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > Math.max(1, maxEntries);
+            }
+        };
+    }
+
+    /**
+     * Return the cached value for the key, or load and remember it.
+     * The loader runs outside the lock, so a slow read does not block other
+     * keys.
+     */
+    public V get(K key, Loader<K, V> loader) throws Exception {
+        long gen;
+        synchronized (this) {
+            Entry<V> e = map.get(key);
+            if (e != null && !isExpired(e, System.nanoTime())) {
+                hits++;
+                return e.value;
+            }
+            misses++;
+            gen = generation;
+        }
+
+        V value = loader.load(key);
+
+        synchronized (this) {
+            if (gen == generation) {
+                map.put(key, new Entry<V>(value, System.nanoTime()));
+            }
+        }
+        return value;
+    }
+
+    /** Forget one key. */
+    public synchronized void invalidate(K key) {
+        generation++;
+        map.remove(key);
+    }
+
+    /** Forget everything. */
+    public synchronized void invalidateAll() {
+        generation++;
+        map.clear();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return name + ": " + hits + " hits, " + misses + " misses, " + map.size() + " entries";
+    }
+
+    private boolean isExpired(Entry<V> e, long now) {
+        return ttlNanos > 0 && now - e.loadedNanos > ttlNanos;
+    }
+}
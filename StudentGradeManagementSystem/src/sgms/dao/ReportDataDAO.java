@@ -0,0 +1,31 @@
+package sgms.dao;
+
+import sgms.model.ReportData;
+
+/**
+ * Reads the data behind report cards in a fixed number of queries, no matter
+ * how many courses the grade has.
+ */
+public interface ReportDataDAO {
+
+    /**
+     * Get one student's report card data: the grade's courses and assignments
+     * plus only this student's marks and feedback.
+     *
+     * @param studentId the student
+     * @param gradeLevel the student's grade
+     * @return report data holding a single student
+     * @throws Exception if the database read fails
+     */
+    ReportData findForStudent(int studentId, int gradeLevel) throws Exception;
+
+    /**
+     * Get report card data for every student in a grade at once, for batch
+     * runs that make many cards.
+     *
+     * @param gradeLevel e.g. 8, 9, 10, 11, 12
+     * @return report data holding the whole grade
+     * @throws Exception if the database read fails
+     */
+    ReportData findForGradeLevel(int gradeLevel) throws Exception;
+}
@@ -0,0 +1,106 @@
+package sgms.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A reusable read-only query that hands back typed rows instead of a raw
+ * {@link ResultSet}. The statement and result set are opened and closed
+ * inside each call, so nothing is left open for the caller to forget.
+ * Statements come from the connection's own cache (see {@link DB}), so
+ * running the same query again on a pooled connection does not prepare it
+ * again.
+ */
+public final class ReportQuery {
+
+    /** Turns the current result set row into an object. */
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /** Receives each row in turn. */
+    public interface RowCallback<T> {
+        void row(T row) throws SQLException;
+    }
+
+    private final String sql;
+    private final int fetchSize;
+
+    public ReportQuery(String sql) {
+        this(sql, 0);
+    }
+
+    /**
+     * @param sql query text with ? parameters
+     * @param fetchSize rows to ask the driver for at a time (0 = driver default)
+     */
+    public ReportQuery(String sql, int fetchSize) {
+        this.sql = sql;
+        this.fetchSize = Math.max(0, fetchSize);
+    }
+
+    /**
+     * Run the query and pass every row to the callback.
+     *
+     * @param c open connection (not closed)
+     * @param mapper builds one object per row
+     * @param callback receives the objects in result order
+     * @param params values for the ? parameters, in order
+     * @return number of rows
+     */
+    public <T> int forEach(Connection c, RowMapper<T> mapper, RowCallback<? super T> callback,
+                           Object... params) throws SQLException {
+        int count = 0;
+        try (PreparedStatement ps = prepare(c, params);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                callback.row(mapper.map(rs));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Run the query and collect every row into a list. */
+    public <T> List<T> list(Connection c, RowMapper<T> mapper, Object... params) throws SQLException {
+        final List<T> rows = new ArrayList<T>();
+        forEach(c, mapper, new RowCallback<T>() {
+            @Override
+            public void row(T row) {
+                rows.add(row);
+            }
+        }, params);
+        return rows;
+    }
+
+    /**
+     * Prepare the statement with its parameters set, for callers that need
+     * to read rows one at a time (a cursor). The caller must close it.
+     */
+    public PreparedStatement prepare(Connection c, Object... params) throws SQLException {
+        PreparedStatement ps = c.prepareStatement(sql);
+        try {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            ps.setFetchSize(fetchSize); // always set: cached statements keep it
+            return ps;
+        } catch (SQLException ex) {
+            ps.close();
+            throw ex;
+        }
+    }
+
+    /** The same query with a different fetch size. */
+    public ReportQuery withFetchSize(int fetchSize) {
+        return (fetchSize == this.fetchSize) ? this : new ReportQuery(sql, fetchSize);
+    }
+
+    public String getSql() {
+        return sql;
+    }
+}
@@ -0,0 +1,272 @@
+package sgms.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import sgms.dao.impl.FinalGradeMaterializer;
+
+/**
+ * Brings the database schema up to date once, when the connection pool
+ * starts (see {@link DB}), so the DAOs can rely on every table being there
+ * and never have to look at the database metadata themselves.
+ * <p>
+ * The schema changes are numbered steps run by a {@link MigrationRunner},
+ * which records the applied version in {@code tblSchemaVersion}. If the
+ * recorded version is current, startup costs one small query.
+ */
+public final class SchemaBootstrap {
+
+    // replaced by the backend's own syntax (see StorageBackend)
+    private static final String KEY = "{autoIncrementKey}";
+    private static final String TODAY = "{currentDate}";
+
+    /**
+     * Every application table, in an order where referenced tables come
+     * first: {name, CREATE statement}.
+     */
+    private static final String[][] TABLES = {
+        {"tblUsers",
+            "CREATE TABLE tblUsers (" +
+            "  userId        " + KEY + ", " +
+            "  fullName      VARCHAR(50), " +
+            "  username      VARCHAR(30) UNIQUE NOT NULL, " +
+            "  passwordHash  VARCHAR(80) NOT NULL, " +
+            "  role          VARCHAR(20) DEFAULT 'Teacher'" +
+            ")"},
+        {"tblStudents",
+            "CREATE TABLE tblStudents (" +
+            "  studentId   " + KEY + ", " +
+            "  firstName   VARCHAR(30) NOT NULL, " +
+            "  lastName    VARCHAR(30) NOT NULL, " +
+            "  gradeLevel  INTEGER    NOT NULL" +
+            ")"},
+        {"tblCourses",
+            "CREATE TABLE tblCourses (" +
+            "  courseId    " + KEY + ", " +
+            "  courseCode  VARCHAR(10) UNIQUE NOT NULL, " +
+            "  courseName  VARCHAR(50) NOT NULL, " +
+            "  gradeLevel  INTEGER   NOT NULL" +
+            ")"},
+        {"tblStudentCourses",
+            "CREATE TABLE tblStudentCourses (" +
+            "  studentId  INTEGER NOT NULL, " +
+            "  courseId   INTEGER NOT NULL, " +
+            "  PRIMARY KEY (studentId, courseId), " +
+            "  FOREIGN KEY (studentId) REFERENCES tblStudents(studentId), " +
+            "  FOREIGN KEY (courseId)  REFERENCES tblCourses(courseId)" +
+            ")"},
+        {"tblAssignments",
+            "CREATE TABLE tblAssignments (" +
+            "  assignmentId  " + KEY + ", " +
+            "  courseId      INTEGER NOT NULL, " +
+            "  title         VARCHAR(50) NOT NULL, " +
+            "  maxMarks      INTEGER  NOT NULL, " +
+            "  term          INTEGER  NOT NULL, " +
+            "  dueDate       DATE     NOT NULL, " +
+            "  FOREIGN KEY (courseId) REFERENCES tblCourses(courseId)" +
+            ")"},
+        {"tblGrades",
+            "CREATE TABLE tblGrades (" +
+            "  studentId     INTEGER NOT NULL, " +
+            "  assignmentId  INTEGER NOT NULL, " +
+            "  markAwarded   INTEGER, " +
+            "  PRIMARY KEY (studentId, assignmentId), " +
+            "  FOREIGN KEY (studentId)    REFERENCES tblStudents(studentId), " +
+            "  FOREIGN KEY (assignmentId) REFERENCES tblAssignments(assignmentId)" +
+            ")"},
+        {"tblFinalGrades",
+            "CREATE TABLE tblFinalGrades (" +
+            "  studentId  INTEGER PRIMARY KEY, " +
+            "  term1      INTEGER, " +
+            "  term2      INTEGER, " +
+            "  term3      INTEGER, " +
+            "  term4      INTEGER, " +
+            "  finalGrade INTEGER, " +
+            "  FOREIGN KEY (studentId) REFERENCES tblStudents(studentId)" +
+            ")"},
+        {"tblAttendance",
+            "CREATE TABLE tblAttendance (" +
+            "  studentId      INTEGER NOT NULL, " +
+            "  courseId       INTEGER NOT NULL, " +
+            "  attendanceDate DATE    NOT NULL, " +
+            "  present        BOOLEAN DEFAULT FALSE, " +
+            "  PRIMARY KEY (studentId, courseId, attendanceDate), " +
+            "  FOREIGN KEY (studentId) REFERENCES tblStudents(studentId), " +
+            "  FOREIGN KEY (courseId)  REFERENCES tblCourses(courseId)" +
+            ")"},
+        {"tblFeedback",
+            "CREATE TABLE tblFeedback (" +
+            "  feedbackId  " + KEY + ", " +
+            "  studentId   INTEGER NOT NULL, " +
+            "  courseId    INTEGER NOT NULL, " +
+            "  note        LONGVARCHAR, " +
+            "  entryDate   DATE DEFAULT " + TODAY + ", " +
+            "  FOREIGN KEY (studentId) REFERENCES tblStudents(studentId), " +
+            "  FOREIGN KEY (courseId)  REFERENCES tblCourses(courseId)" +
+            ")"},
+    };
+
+    /**
+     * Indexes for the lookups the DAOs make most: {name, table, columns...}.
+     * An index is skipped when an existing one already starts with the same
+     * columns; Access makes one for every relationship, so the foreign key
+     * columns are usually covered already.
+     */
+    private static final String[][] INDEXES = {
+        {"idxGradesAssignment",      "tblGrades",      "assignmentId"},
+        {"idxAssignmentsCourse",     "tblAssignments", "courseId"},
+        {"idxAttendanceCourseDate",  "tblAttendance",  "courseId", "attendanceDate"},
+        {"idxFeedbackCourseStudent", "tblFeedback",    "courseId", "studentId"},
+        {"idxStudentsGradeLevel",    "tblStudents",    "gradeLevel"},
+        {"idxCoursesGradeLevel",     "tblCourses",     "gradeLevel"},
+    };
+
+    /** Migration 1: create the tables that are missing. */
+    private static MigrationRunner.Migration createTables(final StorageBackend backend) {
+        return new MigrationRunner.Migration() {
+            @Override
+            public int getVersion() {
+                return 1;
+            }
+
+            @Override
+            public String getDescription() {
+                return "application tables";
+            }
+
+            @Override
+            public String apply(Connection c, MigrationRunner.Schema schema) throws SQLException {
+                List<String> created = new ArrayList<String>();
+                try (Statement s = c.createStatement()) {
+                    for (int i = 0; i < TABLES.length; i++) {
+                        if (!schema.hasTable(TABLES[i][0])) {
+                            s.executeUpdate(TABLES[i][1]
+                                    .replace(KEY, backend.autoIncrementKey())
+                                    .replace(TODAY, backend.currentDateDefault()));
+                            schema.tableCreated(TABLES[i][0]);
+                            created.add(TABLES[i][0]);
+                        }
+                    }
+                }
+                return created.isEmpty() ? "all tables present" : "created " + String.join(", ", created);
+            }
+        };
+    }
+
+    private static final MigrationRunner.Migration CREATE_INDEXES = new MigrationRunner.Migration() {
+        @Override
+        public int getVersion() {
+            return 2;
+        }
+
+        @Override
+        public String getDescription() {
+            return "lookup indexes";
+        }
+
+        @Override
+        public String apply(Connection c, MigrationRunner.Schema schema) throws SQLException {
+            List<String> created = new ArrayList<String>();
+            try (Statement s = c.createStatement()) {
+                for (int i = 0; i < INDEXES.length; i++) {
+                    String table = INDEXES[i][1];
+                    String[] columns = Arrays.copyOfRange(INDEXES[i], 2, INDEXES[i].length);
+                    if (!schema.hasIndexOn(table, columns)) {
+                        s.executeUpdate("CREATE INDEX " + INDEXES[i][0] + " ON " + table
+                                + " (" + String.join(", ", columns) + ")");
+                        schema.indexCreated(table, columns);
+                        created.add(INDEXES[i][0]);
+                    }
+                }
+            }
+            return created.isEmpty() ? "all indexes present" : "created " + String.join(", ", created);
+        }
+    };
+
+    /**
+     * Migration 3: user names in lower case, so a login can look the name up
+     * with a plain {@code username = ?} on the unique index (see
+     * {@code CredentialManager}) instead of scanning with {@code LOWER()}.
+     */
+    private static final MigrationRunner.Migration LOWER_CASE_USERNAMES = new MigrationRunner.Migration() {
+        @Override
+        public int getVersion() {
+            return 3;
+        }
+
+        @Override
+        public String getDescription() {
+            return "case-folded user names";
+        }
+
+        @Override
+        public String apply(Connection c, MigrationRunner.Schema schema) throws SQLException {
+            try (Statement s = c.createStatement()) {
+                // every row: both engines compare text ignoring case, so a
+                // "WHERE username <> LOWER(username)" filter would match none
+                int rows = s.executeUpdate("UPDATE tblUsers SET username = LOWER(username)");
+                String note = rows + " user name(s) folded";
+                if (!schema.hasIndexOn("tblUsers", "username")) {
+                    s.executeUpdate("CREATE UNIQUE INDEX idxUsersUsername ON tblUsers (username)");
+                    schema.indexCreated("tblUsers", "username");
+                    note += ", created idxUsersUsername";
+                }
+                return note;
+            }
+        }
+    };
+
+    /**
+     * Migration 4: check tblFinalGrades against the marks and repair it.
+     * Databases from before the table was kept up to date have it empty or
+     * stale (also when an older build wrote marks to a shared file), and the
+     * Final Grades view reads only the table.
+     */
+    private static final MigrationRunner.Migration REPAIR_FINAL_GRADES = new MigrationRunner.Migration() {
+        @Override
+        public int getVersion() {
+            return 4;
+        }
+
+        @Override
+        public String getDescription() {
+            return "final grades checked against marks";
+        }
+
+        @Override
+        public String apply(Connection c, MigrationRunner.Schema schema) throws SQLException {
+            return FinalGradeMaterializer.checkConsistency(c, true) + " final grade row(s) repaired";
+        }
+    };
+
+    /** Version this code expects: that of the last migration. */
+    public static final int CURRENT_VERSION = 4;
+
+    private SchemaBootstrap() {}
+
+    /** Application table names, referenced tables first. */
+    public static List<String> tableNames() {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < TABLES.length; i++) {
+            names.add(TABLES[i][0]);
+        }
+        return names;
+    }
+
+    /**
+     * Check the recorded schema version and upgrade if it is behind.
+     *
+     * @param c open connection (not closed)
+     * @param backend where the connection points; supplies its DDL syntax
+     * @return the schema version now in the database
+     * @throws SQLException if the check or the upgrade fails
+     */
+    public static int run(Connection c, StorageBackend backend) throws SQLException {
+        return new MigrationRunner(Arrays.asList(createTables(backend), CREATE_INDEXES,
+                LOWER_CASE_USERNAMES, REPAIR_FINAL_GRADES)).run(c);
+    }
+}
@@ -0,0 +1,42 @@
+package sgms.dao;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Where the data is stored and how to connect to it. {@link DB} picks one
+ * backend at startup and pools its connections; the DAOs only see plain JDBC
+ * connections, so they work unchanged on every backend.
+ * <p>
+ * DAO SQL must therefore stay portable (no Access-only functions such as
+ * {@code IIF} or {@code DATE()}). The few DDL differences are covered by
+ * {@link #autoIncrementKey()} and {@link #currentDateDefault()}.
+ */
+public interface StorageBackend {
+
+    /** Short name used to select the backend, e.g. {@code access}. */
+    String getName();
+
+    /** File or folder that holds the data. */
+    Path getLocation();
+
+    /** True if a database is already stored at {@link #getLocation()}. */
+    boolean exists();
+
+    /** Open a new physical connection, creating the store if needed. */
+    Connection open() throws SQLException;
+
+    /**
+     * Called when the connection pool has been shut down.
+     *
+     * @param allClosed false if some connections were still borrowed
+     */
+    void closed(boolean allClosed);
+
+    /** Column definition for an auto-numbered integer primary key. */
+    String autoIncrementKey();
+
+    /** Expression for today's date, for a column DEFAULT clause. */
+    String currentDateDefault();
+}
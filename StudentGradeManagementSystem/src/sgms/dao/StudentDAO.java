@@ -1,6 +1,7 @@
 package sgms.dao;
 
 import java.util.List;
+import java.util.Map;
 import sgms.model.Course;
 import sgms.model.Student;
 
@@ -99,6 +100,15 @@ public interface StudentDAO {
      */
     List<Student> findByCourse(int courseId) throws Exception;
 
+    /**
+     * Get every enrolment at once, in one query.
+     *
+     * @return course ID -> IDs of its students; courses without students are
+     * left out
+     * @throws Exception if the database read fails
+     */
+    Map<Integer, List<Integer>> findEnrolments() throws Exception;
+
     /**
      * Remove the link between a student and a course (unenrol).
      *
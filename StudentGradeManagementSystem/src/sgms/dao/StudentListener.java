@@ -0,0 +1,34 @@
+package sgms.dao;
+
+import sgms.model.Student;
+
+/**
+ * Told about student and enrolment changes made through a
+ * {@link StudentDAO}, so in-memory copies (e.g. a search index) can be kept
+ * up to date without reading everything again.
+ */
+public interface StudentListener {
+
+    /**
+     * A student was added or changed.
+     *
+     * @param s the student as saved (has its ID)
+     */
+    void studentSaved(Student s);
+
+    /**
+     * A student was deleted, with all of their enrolments.
+     *
+     * @param studentId the removed ID
+     */
+    void studentDeleted(int studentId);
+
+    /**
+     * A student was enrolled in or removed from a course.
+     *
+     * @param studentId the student
+     * @param courseId the course
+     * @param enrolled true if enrolled, false if removed
+     */
+    void enrolmentChanged(int studentId, int courseId, boolean enrolled);
+}
@@ -0,0 +1,60 @@
+package sgms.dao.impl;
+
+import sgms.dao.AssignmentDAO;
+import sgms.dao.ReadThroughCache;
+import sgms.model.Assignment;
+
+import java.util.List;
+
+/**
+ * {@link AssignmentDAO} that remembers each course's assignments (see
+ * {@link ReferenceDataCache}) and forgets them whenever an assignment is
+ * added, changed or deleted through it.
+ */
+public class CachingAssignmentDAO implements AssignmentDAO {
+
+    private final AssignmentDAO delegate;
+
+    public CachingAssignmentDAO(AssignmentDAO delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Assignment add(Assignment a) throws Exception {
+        try {
+            return delegate.add(a);
+        } finally {
+            ReferenceDataCache.invalidateAssignments();
+        }
+    }
+
+    @Override
+    public void update(Assignment a) throws Exception {
+        try {
+            delegate.update(a);
+        } finally {
+            ReferenceDataCache.invalidateAssignments();
+        }
+    }
+
+    @Override
+    public boolean delete(int assignmentId) throws Exception {
+        try {
+            return delegate.delete(assignmentId);
+        } finally {
+            ReferenceDataCache.invalidateAssignments();
+        }
+    }
+
+    @Override
+    public List<Assignment> findByCourse(int courseId) throws Exception {
+        List<Assignment> list = ReferenceDataCache.ASSIGNMENTS_BY_COURSE.get(Integer.valueOf(courseId),
+                new ReadThroughCache.Loader<Integer, List<Assignment>>() {
+                    @Override
+                    public List<Assignment> load(Integer id) throws Exception {
+                        return delegate.findByCourse(id.intValue());
+                    }
+                });
+        return ReferenceDataCache.copyAssignments(list);
+    }
+}
@@ -0,0 +1,67 @@
+package sgms.dao.impl;
+
+import sgms.dao.CourseDAO;
+import sgms.dao.ReadThroughCache;
+import sgms.model.Course;
+
+import java.util.List;
+
+/**
+ * {@link CourseDAO} that remembers course lists per grade (see
+ * {@link ReferenceDataCache}) and forgets them whenever a course is added,
+ * changed or deleted through it.
+ */
+public class CachingCourseDAO implements CourseDAO {
+
+    private final CourseDAO delegate;
+
+    public CachingCourseDAO(CourseDAO delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public List<Course> findByGrade(int gradeLevel) throws Exception {
+        List<Course> list = ReferenceDataCache.COURSES_BY_GRADE.get(Integer.valueOf(gradeLevel),
+                new ReadThroughCache.Loader<Integer, List<Course>>() {
+                    @Override
+                    public List<Course> load(Integer grade) throws Exception {
+                        return delegate.findByGrade(grade.intValue());
+                    }
+                });
+        return ReferenceDataCache.copyCourses(list);
+    }
+
+    @Override
+    public Course add(Course c) throws Exception {
+        try {
+            return delegate.add(c);
+        } finally {
+            ReferenceDataCache.invalidateCourses();
+        }
+    }
+
+    @Override
+    public boolean update(Course c) throws Exception {
+        try {
+            return delegate.update(c);
+        } finally {
+            ReferenceDataCache.invalidateCourses();
+        }
+    }
+
+    @Override
+    public boolean delete(int courseId) throws Exception {
+        try {
+            return delegate.delete(courseId);
+        } finally {
+            ReferenceDataCache.invalidateCourses();
+            ReferenceDataCache.invalidateAssignments();
+        }
+    }
+
+    /** Not cached: used to check a code is free just before adding. */
+    @Override
+    public Course findByCode(String code) throws Exception {
+        return delegate.findByCode(code);
+    }
+}
@@ -0,0 +1,169 @@
+package sgms.dao.impl;
+
+import sgms.dao.ReadThroughCache;
+import sgms.dao.StudentDAO;
+import sgms.dao.StudentListener;
+import sgms.model.Course;
+import sgms.model.Student;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * {@link StudentDAO} that remembers the grade level and course lists (see
+ * {@link ReferenceDataCache}). Student rows themselves are not cached.
+ * Adding, changing or deleting a student, or changing an enrolment, forgets
+ * the lists it could affect (course lists include student counts).
+ * <p>
+ * Successful writes are also passed to the registered
+ * {@link StudentListener}s. Like the caches, listeners are shared by every
+ * instance.
+ */
+public class CachingStudentDAO implements StudentDAO {
+
+    private static final List<StudentListener> LISTENERS = new CopyOnWriteArrayList<StudentListener>();
+
+    private final StudentDAO delegate;
+
+    public CachingStudentDAO(StudentDAO delegate) {
+        this.delegate = delegate;
+    }
+
+    public static void addListener(StudentListener l) {
+        LISTENERS.add(l);
+    }
+
+    public static void removeListener(StudentListener l) {
+        LISTENERS.remove(l);
+    }
+
+    @Override
+    public Student add(Student s) throws Exception {
+        Student saved;
+        try {
+            saved = delegate.add(s);
+        } finally {
+            ReferenceDataCache.invalidateGradeLevels();
+        }
+        for (StudentListener l : LISTENERS) {
+            l.studentSaved(saved);
+        }
+        return saved;
+    }
+
+    @Override
+    public boolean update(Student s) throws Exception {
+        boolean changed;
+        try {
+            changed = delegate.update(s);
+        } finally {
+            ReferenceDataCache.invalidateGradeLevels();
+        }
+        if (changed) {
+            for (StudentListener l : LISTENERS) {
+                l.studentSaved(s);
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean delete(int studentId) throws Exception {
+        boolean deleted;
+        try {
+            deleted = delegate.delete(studentId);
+        } finally {
+            ReferenceDataCache.invalidateGradeLevels();
+            ReferenceDataCache.invalidateCourses();
+        }
+        if (deleted) {
+            for (StudentListener l : LISTENERS) {
+                l.studentDeleted(studentId);
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public Student findById(int studentId) throws Exception {
+        return delegate.findById(studentId);
+    }
+
+    @Override
+    public List<Student> findAll() throws Exception {
+        return delegate.findAll();
+    }
+
+    @Override
+    public List<Student> findByGradeLevel(int gradeLevel) throws Exception {
+        return delegate.findByGradeLevel(gradeLevel);
+    }
+
+    @Override
+    public List<Integer> findGradeLevels() throws Exception {
+        List<Integer> list = ReferenceDataCache.GRADE_LEVELS.get(ReferenceDataCache.ALL,
+                new ReadThroughCache.Loader<String, List<Integer>>() {
+                    @Override
+                    public List<Integer> load(String key) throws Exception {
+                        return delegate.findGradeLevels();
+                    }
+                });
+        return new ArrayList<Integer>(list);
+    }
+
+    @Override
+    public List<Course> findCourses() throws Exception {
+        List<Course> list = ReferenceDataCache.ALL_COURSES.get(ReferenceDataCache.ALL,
+                new ReadThroughCache.Loader<String, List<Course>>() {
+                    @Override
+                    public List<Course> load(String key) throws Exception {
+                        return delegate.findCourses();
+                    }
+                });
+        return ReferenceDataCache.copyCourses(list);
+    }
+
+    @Override
+    public boolean enrollStudentInCourse(int studentId, int courseId) throws Exception {
+        boolean enrolled;
+        try {
+            enrolled = delegate.enrollStudentInCourse(studentId, courseId);
+        } finally {
+            ReferenceDataCache.invalidateCourses();
+        }
+        if (enrolled) {
+            for (StudentListener l : LISTENERS) {
+                l.enrolmentChanged(studentId, courseId, true);
+            }
+        }
+        return enrolled;
+    }
+
+    @Override
+    public List<Student> findByCourse(int courseId) throws Exception {
+        return delegate.findByCourse(courseId);
+    }
+
+    @Override
+    public Map<Integer, List<Integer>> findEnrolments() throws Exception {
+        return delegate.findEnrolments();
+    }
+
+    @Override
+    public boolean removeStudentFromCourse(int studentId, int courseId) throws Exception {
+        boolean removed;
+        try {
+            removed = delegate.removeStudentFromCourse(studentId, courseId);
+        } finally {
+            ReferenceDataCache.invalidateCourses();
+        }
+        if (removed) {
+            for (StudentListener l : LISTENERS) {
+                l.enrolmentChanged(studentId, courseId, false);
+            }
+        }
+        return removed;
+    }
+}
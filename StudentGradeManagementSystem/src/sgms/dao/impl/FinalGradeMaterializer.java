@@ -0,0 +1,339 @@
+package sgms.dao.impl;
+
+import sgms.util.GradeCalculator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps tblFinalGrades in step with tblGrades.
+ * A student's row holds the rounded term 1-4 averages and the weighted final,
+ * worked out exactly like the Final Grades screen: every course in the
+ * student's grade, assignments in course-name order, term average = mean of
+ * (raw / maxMarks) * 100, final from {@link GradeCalculator}.
+ * A student with no marks has no row.
+ * The DAOs call this on their own connection so the cache is written in the
+ * same transaction as the change that caused it. Only the consistency check
+ * is public, for the schema migration and the setup tools.
+ */
+public final class FinalGradeMaterializer {
+
+    private FinalGradeMaterializer() { }
+
+    // Marks of one student for the courses in the student's grade, in screen order
+    private static final String SELECT_STUDENT_MARKS =
+            "SELECT a.maxMarks, a.term, g.markAwarded " +
+            "FROM ((tblGrades g " +
+            "JOIN tblAssignments a ON g.assignmentId = a.assignmentId) " +
+            "JOIN tblCourses c ON a.courseId = c.courseId) " +
+            "JOIN tblStudents s ON s.studentId = g.studentId " +
+            "WHERE g.studentId = ? AND c.gradeLevel = s.gradeLevel " +
+            "ORDER BY c.courseName, c.courseId, a.assignmentId";
+
+    // Marks for every course in a grade, in screen order (filtered by student in Java)
+    private static final String SELECT_GRADE_LEVEL_MARKS =
+            "SELECT g.studentId, a.maxMarks, a.term, g.markAwarded " +
+            "FROM (tblCourses c " +
+            "JOIN tblAssignments a ON a.courseId = c.courseId) " +
+            "JOIN tblGrades g ON g.assignmentId = a.assignmentId " +
+            "WHERE c.gradeLevel = ? " +
+            "ORDER BY c.courseName, c.courseId, a.assignmentId";
+
+    private static final String SELECT_STUDENTS_IN_GRADE =
+            "SELECT studentId FROM tblStudents WHERE gradeLevel = ?";
+
+    private static final String SELECT_STUDENTS_FOR_ASSIGNMENT =
+            "SELECT studentId FROM tblGrades WHERE assignmentId = ?";
+
+    private static final String SELECT_GRADE_LEVELS =
+            "SELECT DISTINCT gradeLevel FROM tblStudents";
+
+    private static final String SELECT_ALL_ROWS =
+            "SELECT studentId, term1, term2, term3, term4, finalGrade FROM tblFinalGrades";
+
+    private static final String UPDATE_ROW =
+            "UPDATE tblFinalGrades SET term1=?, term2=?, term3=?, term4=?, finalGrade=? WHERE studentId=?";
+
+    private static final String INSERT_ROW =
+            "INSERT INTO tblFinalGrades(term1, term2, term3, term4, finalGrade, studentId) VALUES (?,?,?,?,?,?)";
+
+    private static final String DELETE_ROW =
+            "DELETE FROM tblFinalGrades WHERE studentId=?";
+
+    private static final String DELETE_GRADE_LEVEL_ROWS =
+            "DELETE FROM tblFinalGrades WHERE studentId IN " +
+            "(SELECT studentId FROM tblStudents WHERE gradeLevel = ?)";
+
+    // --- refresh ---
+
+    /** Recompute and store one student's row. */
+    static void refreshStudent(Connection c, int studentId) throws SQLException {
+        Totals t = new Totals();
+        try (PreparedStatement ps = c.prepareStatement(SELECT_STUDENT_MARKS)) {
+            ps.setInt(1, studentId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    t.add(rs.getInt("term"), rs.getInt("markAwarded"), (Integer) rs.getObject("maxMarks"));
+                }
+            }
+        }
+        write(c, studentId, t.row());
+    }
+
+    /** Recompute several students (duplicates are skipped). */
+    static void refreshStudents(Connection c, List<Integer> studentIds) throws SQLException {
+        Set<Integer> done = new LinkedHashSet<Integer>(studentIds);
+        for (Integer id : done) {
+            refreshStudent(c, id.intValue());
+        }
+    }
+
+    /** Students that have a mark for an assignment (read before it changes or goes). */
+    static List<Integer> studentsWithMarks(Connection c, int assignmentId) throws SQLException {
+        List<Integer> ids = new ArrayList<Integer>();
+        try (PreparedStatement ps = c.prepareStatement(SELECT_STUDENTS_FOR_ASSIGNMENT)) {
+            ps.setInt(1, assignmentId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(Integer.valueOf(rs.getInt(1)));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Recompute every student in a grade level.
+     *
+     * @return number of rows written
+     */
+    static int refreshGradeLevel(Connection c, int gradeLevel) throws SQLException {
+        Map<Integer, Integer[]> rows = computeGradeLevel(c, gradeLevel);
+
+        try (PreparedStatement del = c.prepareStatement(DELETE_GRADE_LEVEL_ROWS)) {
+            del.setInt(1, gradeLevel);
+            del.executeUpdate();
+        }
+        return insertAll(c, rows);
+    }
+
+    /**
+     * Compare the stored rows with freshly computed ones.
+     *
+     * @param c open connection (not closed, not committed)
+     * @param repair when true, fix every row that differs
+     * @return number of students whose stored row was wrong or missing
+     * @throws SQLException if a read or write fails
+     */
+    public static int checkConsistency(Connection c, boolean repair) throws SQLException {
+        Map<Integer, Integer[]> expected = computeAll(c);
+        Map<Integer, Integer[]> stored = new HashMap<Integer, Integer[]>();
+
+        try (PreparedStatement ps = c.prepareStatement(SELECT_ALL_ROWS);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Integer[] row = new Integer[5];
+                for (int i = 0; i < 5; i++) {
+                    row[i] = (Integer) rs.getObject(i + 2);
+                }
+                stored.put(Integer.valueOf(rs.getInt("studentId")), row);
+            }
+        }
+
+        List<Integer> wrong = new ArrayList<Integer>();
+        for (Map.Entry<Integer, Integer[]> e : expected.entrySet()) {
+            if (!Arrays.equals(e.getValue(), stored.get(e.getKey()))) {
+                wrong.add(e.getKey());
+            }
+        }
+        for (Integer id : stored.keySet()) {
+            if (!expected.containsKey(id)) {
+                wrong.add(id); // row for a student with no marks (or no student)
+            }
+        }
+
+        if (repair) {
+            for (int i = 0; i < wrong.size(); i++) {
+                Integer id = wrong.get(i);
+                write(c, id.intValue(), expected.get(id));
+            }
+        }
+        return wrong.size();
+    }
+
+    // --- helpers ---
+
+    /** studentId -> {t1, t2, t3, t4, final} for students in a grade that have marks. */
+    private static Map<Integer, Integer[]> computeGradeLevel(Connection c, int gradeLevel) throws SQLException {
+        Set<Integer> inGrade = new HashSet<Integer>();
+        try (PreparedStatement ps = c.prepareStatement(SELECT_STUDENTS_IN_GRADE)) {
+            ps.setInt(1, gradeLevel);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    inGrade.add(Integer.valueOf(rs.getInt(1)));
+                }
+            }
+        }
+
+        Map<Integer, Totals> totals = new HashMap<Integer, Totals>();
+        try (PreparedStatement ps = c.prepareStatement(SELECT_GRADE_LEVEL_MARKS)) {
+            ps.setInt(1, gradeLevel);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Integer id = Integer.valueOf(rs.getInt("studentId"));
+                    if (!inGrade.contains(id)) {
+                        continue; // mark left over from another grade
+                    }
+                    Totals t = totals.get(id);
+                    if (t == null) {
+                        t = new Totals();
+                        totals.put(id, t);
+                    }
+                    t.add(rs.getInt("term"), rs.getInt("markAwarded"), (Integer) rs.getObject("maxMarks"));
+                }
+            }
+        }
+
+        Map<Integer, Integer[]> rows = new HashMap<Integer, Integer[]>();
+        for (Map.Entry<Integer, Totals> e : totals.entrySet()) {
+            Integer[] row = e.getValue().row();
+            if (row != null) {
+                rows.put(e.getKey(), row);
+            }
+        }
+        return rows;
+    }
+
+    private static Map<Integer, Integer[]> computeAll(Connection c) throws SQLException {
+        List<Integer> levels = new ArrayList<Integer>();
+        try (PreparedStatement ps = c.prepareStatement(SELECT_GRADE_LEVELS);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                levels.add(Integer.valueOf(rs.getInt(1)));
+            }
+        }
+
+        Map<Integer, Integer[]> rows = new HashMap<Integer, Integer[]>();
+        for (int i = 0; i < levels.size(); i++) {
+            rows.putAll(computeGradeLevel(c, levels.get(i).intValue()));
+        }
+        return rows;
+    }
+
+    /** Store one row; a null row deletes it. */
+    private static void write(Connection c, int studentId, Integer[] row) throws SQLException {
+        if (row == null) {
+            try (PreparedStatement del = c.prepareStatement(DELETE_ROW)) {
+                del.setInt(1, studentId);
+                del.executeUpdate();
+            }
+            return;
+        }
+
+        try (PreparedStatement up = c.prepareStatement(UPDATE_ROW)) {
+            bind(up, studentId, row);
+            if (up.executeUpdate() > 0) {
+                return;
+            }
+            try (PreparedStatement in = c.prepareStatement(INSERT_ROW)) {
+                bind(in, studentId, row);
+                in.executeUpdate();
+            }
+            if (hasNull(row)) {
+                up.executeUpdate(); // see insertAll: put the NULLs back
+            }
+        }
+    }
+
+    private static int insertAll(Connection c, Map<Integer, Integer[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        try (PreparedStatement in = c.prepareStatement(INSERT_ROW);
+             PreparedStatement up = c.prepareStatement(UPDATE_ROW)) {
+            boolean anyNull = false;
+            for (Map.Entry<Integer, Integer[]> e : rows.entrySet()) {
+                bind(in, e.getKey().intValue(), e.getValue());
+                in.addBatch();
+            }
+            in.executeBatch();
+
+            // Access applies the column default (0) to a NULL in an INSERT,
+            // but keeps a NULL set by UPDATE; missing terms must stay NULL.
+            for (Map.Entry<Integer, Integer[]> e : rows.entrySet()) {
+                if (hasNull(e.getValue())) {
+                    bind(up, e.getKey().intValue(), e.getValue());
+                    up.addBatch();
+                    anyNull = true;
+                }
+            }
+            if (anyNull) {
+                up.executeBatch();
+            }
+        }
+        return rows.size();
+    }
+
+    private static boolean hasNull(Integer[] row) {
+        for (int i = 0; i < row.length; i++) {
+            if (row[i] == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Same parameter order for UPDATE_ROW and INSERT_ROW. */
+    private static void bind(PreparedStatement ps, int studentId, Integer[] row) throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            if (row[i] == null) {
+                ps.setNull(i + 1, Types.INTEGER);
+            } else {
+                ps.setInt(i + 1, row[i].intValue());
+            }
+        }
+        ps.setInt(6, studentId);
+    }
+
+    /** Running per-term sums for one student, added in screen order. */
+    private static final class Totals {
+        private final double[] sum = new double[4];
+        private final int[] count = new int[4];
+
+        void add(int term, int raw, Integer maxMarks) {
+            if (term < 1 || term > 4) {
+                return;
+            }
+            sum[term - 1] += GradeCalculator.assignmentPercent(raw, maxMarks);
+            count[term - 1]++;
+        }
+
+        /** {t1, t2, t3, t4, final} rounded, or null when there are no marks. */
+        Integer[] row() {
+            Double[] avg = new Double[4];
+            for (int t = 0; t < 4; t++) {
+                avg[t] = (count[t] == 0) ? null : Double.valueOf(sum[t] / count[t]);
+            }
+            Double fin = GradeCalculator.calculateFinalGrade(avg[0], avg[1], avg[2], avg[3]);
+            if (fin == null) {
+                return null;
+            }
+            return new Integer[]{round(avg[0]), round(avg[1]), round(avg[2]), round(avg[3]), round(fin)};
+        }
+
+        private static Integer round(Double d) {
+            return (d == null) ? null : Integer.valueOf((int) Math.round(d.doubleValue()));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package sgms.dao.impl;
+
+import sgms.dao.ReadThroughCache;
+import sgms.model.Assignment;
+import sgms.model.Course;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The caches behind the caching DAOs, shared by every instance so a change
+ * made through one DAO is seen by all of them.
+ * <p>
+ * Settings (system properties): {@code sgms.cache.maxEntries} (default 64 per
+ * cache) and {@code sgms.cache.ttlSeconds} (default 300).
+ * <p>
+ * The hit/miss counters ({@link #stats()}) are logged when the application
+ * exits.
+ */
+public final class ReferenceDataCache {
+
+    private static final int MAX_ENTRIES = Integer.getInteger("sgms.cache.maxEntries", 64).intValue();
+    private static final long TTL_MILLIS = Integer.getInteger("sgms.cache.ttlSeconds", 300).intValue() * 1000L;
+
+    /** Key for caches that hold a single list. */
+    static final String ALL = "all";
+
+    /** gradeLevel -> courses with student counts. */
+    static final ReadThroughCache<Integer, List<Course>> COURSES_BY_GRADE =
+            new ReadThroughCache<Integer, List<Course>>("courses by grade", MAX_ENTRIES, TTL_MILLIS);
+
+    /** Every course. */
+    static final ReadThroughCache<String, List<Course>> ALL_COURSES =
+            new ReadThroughCache<String, List<Course>>("all courses", MAX_ENTRIES, TTL_MILLIS);
+
+    /** Grade levels that have students. */
+    static final ReadThroughCache<String, List<Integer>> GRADE_LEVELS =
+            new ReadThroughCache<String, List<Integer>>("grade levels", MAX_ENTRIES, TTL_MILLIS);
+
+    /** courseId -> assignments. */
+    static final ReadThroughCache<Integer, List<Assignment>> ASSIGNMENTS_BY_COURSE =
+            new ReadThroughCache<Integer, List<Assignment>>("assignments by course", MAX_ENTRIES, TTL_MILLIS);
+
+    static {
+        // Hit rates at exit show whether the size and TTL settings pay off.
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (String line : stats().split("\n")) {
+                    System.err.println("[cache] " + line);
+                }
+            }
+        }, "sgms-cache-stats"));
+    }
+
+    private ReferenceDataCache() {}
+
+    /** Courses or enrolments changed (course lists carry student counts). */
+    public static void invalidateCourses() {
+        COURSES_BY_GRADE.invalidateAll();
+        ALL_COURSES.invalidateAll();
+    }
+
+    public static void invalidateGradeLevels() {
+        GRADE_LEVELS.invalidateAll();
+    }
+
+    public static void invalidateAssignments() {
+        ASSIGNMENTS_BY_COURSE.invalidateAll();
+    }
+
+    /** Drop everything, e.g. after the database was changed outside the app. */
+    public static void invalidateAll() {
+        invalidateCourses();
+        invalidateGradeLevels();
+        invalidateAssignments();
+    }
+
+    /** Hit/miss counters of every cache, one per line. */
+    public static String stats() {
+        return COURSES_BY_GRADE + "\n" + ALL_COURSES + "\n" + GRADE_LEVELS + "\n" + ASSIGNMENTS_BY_COURSE;
+    }
+
+    // --- copies, so callers can change what they get without touching the cache ---
+
+    static List<Course> copyCourses(List<Course> list) {
+        List<Course> out = new ArrayList<Course>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            Course c = list.get(i);
+            out.add(new Course(c.getCourseId(), c.getCourseCode(), c.getCourseName(),
+                    c.getGradeLevel(), c.getStudentCount()));
+        }
+        return out;
+    }
+
+    static List<Assignment> copyAssignments(List<Assignment> list) {
+        List<Assignment> out = new ArrayList<Assignment>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            Assignment a = list.get(i);
+            Date due = (a.getDueDate() == null) ? null : new Date(a.getDueDate().getTime());
+            out.add(new Assignment(a.getAssignmentId(), a.getCourseId(), a.getTitle(),
+                    a.getMaxMarks(), a.getTerm(), due));
+        }
+        return out;
+    }
+}
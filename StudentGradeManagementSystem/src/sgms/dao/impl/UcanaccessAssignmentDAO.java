@@ -26,6 +26,9 @@ public class UcanaccessAssignmentDAO implements AssignmentDAO {
     private static final String UPDATE_ASSIGNMENT =
             "UPDATE tblAssignments SET title=?, maxMarks=?, term=?, dueDate=? WHERE assignmentId=?";
 
+    private static final String SELECT_SCORING =
+            "SELECT maxMarks, term FROM tblAssignments WHERE assignmentId=?";
+
     private static final String DELETE_GRADES =
             "DELETE FROM tblGrades WHERE assignmentId = ?";
 
@@ -67,29 +70,59 @@ public class UcanaccessAssignmentDAO implements AssignmentDAO {
     }
 
     /**
-     * Update an existing assignment.
+     * Update an existing assignment. If max marks or term changed, the stored
+     * final grades of every student with a mark for it are refreshed.
      */
     @Override
     public void update(Assignment a) throws SQLException {
         try (Connection c = DB.get();
+             PreparedStatement psOld = c.prepareStatement(SELECT_SCORING);
              PreparedStatement ps = c.prepareStatement(UPDATE_ASSIGNMENT)) {
 
-            ps.setString(1, a.getTitle());
-            if (a.getMaxMarks() != null) {
-                ps.setInt(2, a.getMaxMarks().intValue());
-            } else {
-                ps.setNull(2, Types.INTEGER);
-            }
-            ps.setInt(3, a.getTerm());
-            ps.setDate(4, a.getDueDate());
-            ps.setInt(5, a.getAssignmentId());
+            boolean oldAuto = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                // Save re-sends every row, so only refresh when the maths changed
+                boolean scoringChanged = false;
+                psOld.setInt(1, a.getAssignmentId());
+                try (ResultSet rs = psOld.executeQuery()) {
+                    if (rs.next()) {
+                        Integer oldMax = (Integer) rs.getObject("maxMarks");
+                        int oldTerm = rs.getInt("term");
+                        scoringChanged = oldTerm != a.getTerm()
+                                || (oldMax == null ? a.getMaxMarks() != null : !oldMax.equals(a.getMaxMarks()));
+                    }
+                }
 
-            ps.executeUpdate();
+                ps.setString(1, a.getTitle());
+                if (a.getMaxMarks() != null) {
+                    ps.setInt(2, a.getMaxMarks().intValue());
+                } else {
+                    ps.setNull(2, Types.INTEGER);
+                }
+                ps.setInt(3, a.getTerm());
+                ps.setDate(4, a.getDueDate());
+                ps.setInt(5, a.getAssignmentId());
+
+                ps.executeUpdate();
+
+                if (scoringChanged) {
+                    FinalGradeMaterializer.refreshStudents(c,
+                            FinalGradeMaterializer.studentsWithMarks(c, a.getAssignmentId()));
+                }
+                c.commit();
+                c.setAutoCommit(oldAuto);
+            } catch (SQLException ex) {
+                c.rollback();
+                c.setAutoCommit(oldAuto);
+                throw ex;
+            }
         }
     }
 
     /**
-     * Delete one assignment. Also removes its grades first.
+     * Delete one assignment. Also removes its grades first and refreshes the
+     * stored final grades of the students who had a mark for it.
      *
      * @return true if the assignment row was deleted
      */
@@ -99,12 +132,27 @@ public class UcanaccessAssignmentDAO implements AssignmentDAO {
              PreparedStatement psGrades = c.prepareStatement(DELETE_GRADES);
              PreparedStatement psAssign = c.prepareStatement(DELETE_ASSIGNMENT)) {
 
-            // remove child rows, then the assignment
-            psGrades.setInt(1, assignmentId);
-            psGrades.executeUpdate();
-
-            psAssign.setInt(1, assignmentId);
-            return psAssign.executeUpdate() == 1;
+            boolean oldAuto = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                List<Integer> affected = FinalGradeMaterializer.studentsWithMarks(c, assignmentId);
+
+                // remove child rows, then the assignment
+                psGrades.setInt(1, assignmentId);
+                psGrades.executeUpdate();
+
+                psAssign.setInt(1, assignmentId);
+                boolean deleted = psAssign.executeUpdate() == 1;
+
+                FinalGradeMaterializer.refreshStudents(c, affected);
+                c.commit();
+                c.setAutoCommit(oldAuto);
+                return deleted;
+            } catch (SQLException ex) {
+                c.rollback();
+                c.setAutoCommit(oldAuto);
+                throw ex;
+            }
         }
     }
 
@@ -113,10 +161,17 @@ public class UcanaccessAssignmentDAO implements AssignmentDAO {
      */
     @Override
     public List<Assignment> findByCourse(int courseId) throws SQLException {
+        return query(SELECT_BY_COURSE, courseId);
+    }
+
+    // --- helpers ---
+
+    /** Run a select with one int parameter and map each row. */
+    private static List<Assignment> query(String sql, int param) throws SQLException {
         try (Connection c = DB.get();
-             PreparedStatement ps = c.prepareStatement(SELECT_BY_COURSE)) {
+             PreparedStatement ps = c.prepareStatement(sql)) {
 
-            ps.setInt(1, courseId);
+            ps.setInt(1, param);
 
             try (ResultSet rs = ps.executeQuery()) {
                 List<Assignment> list = new ArrayList<Assignment>();
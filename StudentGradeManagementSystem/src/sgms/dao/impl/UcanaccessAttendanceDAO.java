@@ -2,6 +2,7 @@ package sgms.dao.impl;
 
 import sgms.dao.AttendanceDAO;
 import sgms.dao.DB;
+import sgms.model.AttendanceBitmap;
 
 import java.sql.Connection;
 import java.sql.Date;
@@ -9,7 +10,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -24,6 +28,12 @@ public class UcanaccessAttendanceDAO implements AttendanceDAO {
             "FROM tblAttendance " +
             "WHERE courseId = ? AND attendanceDate BETWEEN ? AND ?";
 
+    // start from tblCourses so the grade filter is applied first
+    private static final String SELECT_BY_GRADE_AND_RANGE =
+            "SELECT a.courseId, a.studentId, a.attendanceDate, a.present " +
+            "FROM tblCourses c JOIN tblAttendance a ON a.courseId = c.courseId " +
+            "WHERE c.gradeLevel = ? AND a.attendanceDate BETWEEN ? AND ?";
+
     private static final String UPDATE_ATTENDANCE =
             "UPDATE tblAttendance SET present=? WHERE studentId=? AND courseId=? AND attendanceDate=?";
 
@@ -38,7 +48,17 @@ public class UcanaccessAttendanceDAO implements AttendanceDAO {
     public Map<Integer, Map<LocalDate, Boolean>> findByCourseAndDateRange(
             int courseId, LocalDate start, LocalDate end) throws SQLException {
 
-        Map<Integer, Map<LocalDate, Boolean>> map = new HashMap<Integer, Map<LocalDate, Boolean>>();
+        try (Connection c = DB.get()) {
+            return readRange(c, courseId, start, end);
+        }
+    }
+
+    /**
+     * Get a course's attendance between two dates as a bit set per student.
+     */
+    @Override
+    public AttendanceBitmap findBitmapByCourse(int courseId, LocalDate start, LocalDate end) throws SQLException {
+        AttendanceBitmap.Builder b = new AttendanceBitmap.Builder(start, end);
 
         try (Connection c = DB.get();
              PreparedStatement ps = c.prepareStatement(SELECT_BY_COURSE_AND_RANGE)) {
@@ -49,20 +69,47 @@ public class UcanaccessAttendanceDAO implements AttendanceDAO {
 
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    int studentId = rs.getInt("studentId");
-                    LocalDate date = rs.getDate("attendanceDate").toLocalDate();
-                    boolean present = rs.getBoolean("present");
+                    b.add(rs.getInt("studentId"), rs.getDate("attendanceDate").toLocalDate(),
+                            rs.getBoolean("present"));
+                }
+            }
+        }
+        return b.build();
+    }
 
-                    // No lambdas: create inner map if missing
-                    Map<LocalDate, Boolean> perDay = map.get(studentId);
-                    if (perDay == null) {
-                        perDay = new HashMap<LocalDate, Boolean>();
-                        map.put(studentId, perDay);
+    /**
+     * Get attendance for every course in a grade, one register per course.
+     */
+    @Override
+    public Map<Integer, AttendanceBitmap> findBitmapsByGradeLevel(int gradeLevel, LocalDate start, LocalDate end)
+            throws SQLException {
+        Map<Integer, AttendanceBitmap.Builder> builders = new LinkedHashMap<Integer, AttendanceBitmap.Builder>();
+
+        try (Connection c = DB.get();
+             PreparedStatement ps = c.prepareStatement(SELECT_BY_GRADE_AND_RANGE)) {
+
+            ps.setInt(1, gradeLevel);
+            ps.setDate(2, Date.valueOf(start));
+            ps.setDate(3, Date.valueOf(end));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Integer courseId = Integer.valueOf(rs.getInt("courseId"));
+                    AttendanceBitmap.Builder b = builders.get(courseId);
+                    if (b == null) {
+                        b = new AttendanceBitmap.Builder(start, end);
+                        builders.put(courseId, b);
                     }
-                    perDay.put(date, Boolean.valueOf(present));
+                    b.add(rs.getInt("studentId"), rs.getDate("attendanceDate").toLocalDate(),
+                            rs.getBoolean("present"));
                 }
             }
         }
+
+        Map<Integer, AttendanceBitmap> map = new LinkedHashMap<Integer, AttendanceBitmap>();
+        for (Map.Entry<Integer, AttendanceBitmap.Builder> e : builders.entrySet()) {
+            map.put(e.getKey(), e.getValue().build());
+        }
         return map;
     }
 
@@ -90,4 +137,125 @@ public class UcanaccessAttendanceDAO implements AttendanceDAO {
             }
         }
     }
+
+    /**
+     * Save a whole register in one transaction. Reads what is already stored
+     * for the dates involved, skips cells that did not change, and sends the
+     * rest as one UPDATE batch and one INSERT batch.
+     */
+    @Override
+    public int upsertAll(int courseId, Map<Integer, Map<LocalDate, Boolean>> changes) throws SQLException {
+        if (changes == null || changes.isEmpty()) {
+            return 0;
+        }
+
+        // date range covered by the changes (usually one school week)
+        LocalDate start = null;
+        LocalDate end = null;
+        for (Map<LocalDate, Boolean> perDay : changes.values()) {
+            if (perDay == null) {
+                continue;
+            }
+            for (LocalDate d : perDay.keySet()) {
+                if (d == null) {
+                    continue;
+                }
+                if (start == null || d.isBefore(start)) {
+                    start = d;
+                }
+                if (end == null || d.isAfter(end)) {
+                    end = d;
+                }
+            }
+        }
+        if (start == null) {
+            return 0;
+        }
+
+        try (Connection c = DB.get()) {
+            boolean oldAuto = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                Map<Integer, Map<LocalDate, Boolean>> current = readRange(c, courseId, start, end);
+
+                List<Object[]> updates = new ArrayList<Object[]>(); // {studentId, date, present}
+                List<Object[]> inserts = new ArrayList<Object[]>();
+                for (Map.Entry<Integer, Map<LocalDate, Boolean>> e : changes.entrySet()) {
+                    if (e.getKey() == null || e.getValue() == null) {
+                        continue;
+                    }
+                    Map<LocalDate, Boolean> stored = current.get(e.getKey());
+                    for (Map.Entry<LocalDate, Boolean> d : e.getValue().entrySet()) {
+                        if (d.getKey() == null) {
+                            continue;
+                        }
+                        Boolean present = Boolean.valueOf(Boolean.TRUE.equals(d.getValue()));
+                        Boolean old = (stored == null) ? null : stored.get(d.getKey());
+                        if (old == null) {
+                            inserts.add(new Object[]{e.getKey(), d.getKey(), present});
+                        } else if (!old.equals(present)) {
+                            updates.add(new Object[]{e.getKey(), d.getKey(), present});
+                        }
+                    }
+                }
+
+                if (!updates.isEmpty()) {
+                    try (PreparedStatement ps = c.prepareStatement(UPDATE_ATTENDANCE)) {
+                        for (Object[] row : updates) {
+                            ps.setBoolean(1, ((Boolean) row[2]).booleanValue());
+                            ps.setInt(2, ((Integer) row[0]).intValue());
+                            ps.setInt(3, courseId);
+                            ps.setDate(4, Date.valueOf((LocalDate) row[1]));
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                if (!inserts.isEmpty()) {
+                    try (PreparedStatement ps = c.prepareStatement(INSERT_ATTENDANCE)) {
+                        for (Object[] row : inserts) {
+                            ps.setInt(1, ((Integer) row[0]).intValue());
+                            ps.setInt(2, courseId);
+                            ps.setDate(3, Date.valueOf((LocalDate) row[1]));
+                            ps.setBoolean(4, ((Boolean) row[2]).booleanValue());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+
+                c.commit();
+                c.setAutoCommit(oldAuto);
+                return updates.size() + inserts.size();
+            } catch (SQLException ex) {
+                c.rollback();
+                c.setAutoCommit(oldAuto);
+                throw ex;
+            }
+        }
+    }
+
+    /** Stored attendance for a course between two dates, on an open connection. */
+    private static Map<Integer, Map<LocalDate, Boolean>> readRange(
+            Connection c, int courseId, LocalDate start, LocalDate end) throws SQLException {
+        Map<Integer, Map<LocalDate, Boolean>> map = new HashMap<Integer, Map<LocalDate, Boolean>>();
+        try (PreparedStatement ps = c.prepareStatement(SELECT_BY_COURSE_AND_RANGE)) {
+            ps.setInt(1, courseId);
+            ps.setDate(2, Date.valueOf(start));
+            ps.setDate(3, Date.valueOf(end));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Integer studentId = Integer.valueOf(rs.getInt("studentId"));
+                    Map<LocalDate, Boolean> perDay = map.get(studentId);
+                    if (perDay == null) {
+                        perDay = new HashMap<LocalDate, Boolean>();
+                        map.put(studentId, perDay);
+                    }
+                    perDay.put(rs.getDate("attendanceDate").toLocalDate(),
+                            Boolean.valueOf(rs.getBoolean("present")));
+                }
+            }
+        }
+        return map;
+    }
 }
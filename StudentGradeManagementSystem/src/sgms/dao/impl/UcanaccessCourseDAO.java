@@ -33,6 +33,9 @@ public class UcanaccessCourseDAO implements CourseDAO {
     private static final String UPDATE_COURSE =
             "UPDATE tblCourses SET courseName = ? WHERE courseId = ?";
 
+    private static final String SELECT_NAME_AND_GRADE =
+            "SELECT courseName, gradeLevel FROM tblCourses WHERE courseId = ?";
+
     private static final String DELETE_COURSE =
             "DELETE FROM tblCourses WHERE courseId = ?";
 
@@ -90,17 +93,45 @@ public class UcanaccessCourseDAO implements CourseDAO {
 
     /**
      * Update the course name for an existing course.
+     * Final grades add courses up in name order, so a rename refreshes the
+     * stored final grades for that grade level.
      *
      * @return true if a row changed
      */
     @Override
     public boolean update(Course c) throws SQLException {
         try (Connection conn = DB.get();
+             PreparedStatement psOld = conn.prepareStatement(SELECT_NAME_AND_GRADE);
              PreparedStatement ps = conn.prepareStatement(UPDATE_COURSE)) {
 
-            ps.setString(1, c.getCourseName());
-            ps.setInt(2, c.getCourseId());
-            return ps.executeUpdate() > 0;
+            boolean oldAuto = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                String oldName = null;
+                int gradeLevel = -1;
+                psOld.setInt(1, c.getCourseId());
+                try (ResultSet rs = psOld.executeQuery()) {
+                    if (rs.next()) {
+                        oldName = rs.getString("courseName");
+                        gradeLevel = rs.getInt("gradeLevel");
+                    }
+                }
+
+                ps.setString(1, c.getCourseName());
+                ps.setInt(2, c.getCourseId());
+                boolean updated = ps.executeUpdate() > 0;
+
+                if (updated && oldName != null && !oldName.equals(c.getCourseName())) {
+                    FinalGradeMaterializer.refreshGradeLevel(conn, gradeLevel);
+                }
+                conn.commit();
+                conn.setAutoCommit(oldAuto);
+                return updated;
+            } catch (SQLException ex) {
+                conn.rollback();
+                conn.setAutoCommit(oldAuto);
+                throw ex;
+            }
         }
     }
 
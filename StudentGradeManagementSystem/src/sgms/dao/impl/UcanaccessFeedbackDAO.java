@@ -21,11 +21,11 @@ public class UcanaccessFeedbackDAO implements FeedbackDAO {
             "SELECT studentId, note FROM tblFeedback WHERE courseId = ?";
 
     private static final String UPDATE_FEEDBACK =
-            "UPDATE tblFeedback SET note = ?, entryDate = DATE() " +
+            "UPDATE tblFeedback SET note = ?, entryDate = CURRENT_DATE " +
             "WHERE studentId = ? AND courseId = ?";
 
     private static final String INSERT_FEEDBACK =
-            "INSERT INTO tblFeedback(studentId, courseId, note) VALUES (?,?,?)";
+            "INSERT INTO tblFeedback(studentId, courseId, note, entryDate) VALUES (?,?,?,CURRENT_DATE)";
 
     private static final String DELETE_FEEDBACK =
             "DELETE FROM tblFeedback WHERE studentId = ? AND courseId = ?";
@@ -2,13 +2,21 @@ package sgms.dao.impl;
 
 import sgms.dao.DB;
 import sgms.dao.GradeDAO;
+import sgms.model.GradeMatrix;
+import sgms.model.GradeSaveResult;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Grades DAO using UCanAccess (MS Access).
@@ -30,41 +38,33 @@ public class UcanaccessGradeDAO implements GradeDAO {
     private static final String INSERT_GRADE =
             "INSERT INTO tblGrades(studentId, assignmentId, markAwarded) VALUES (?,?,?)";
 
+    private static final String DELETE_GRADE =
+            "DELETE FROM tblGrades WHERE studentId = ? AND assignmentId = ?";
+
+    // IN list is filled with one ? per assignment (see placeholders)
+    private static final String SELECT_BY_ASSIGNMENTS =
+            "SELECT studentId, assignmentId, markAwarded FROM tblGrades WHERE assignmentId IN ";
+
+    // keep the IN list a sensible size
+    private static final int IN_CHUNK = 100;
+
     /**
-     * Get all grades for one course.
-     * Map layout: studentId -> (assignmentId -> raw mark).
+     * Get all grades for one course as a student x assignment matrix.
      */
     @Override
-    public Map<Integer, Map<Integer, Integer>> findByCourse(int courseId) throws SQLException {
-        Map<Integer, Map<Integer, Integer>> map = new HashMap<Integer, Map<Integer, Integer>>();
-
+    public GradeMatrix findByCourse(int courseId) throws SQLException {
         try (Connection c = DB.get();
              PreparedStatement ps = c.prepareStatement(SELECT_BY_COURSE)) {
 
             ps.setInt(1, courseId);
-
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    int studentId = rs.getInt("studentId");
-                    int assignmentId = rs.getInt("assignmentId");
-                    int mark = rs.getInt("markAwarded");
-
-                    // No computeIfAbsent/lambdas: make the inner map if missing
-                    Map<Integer, Integer> perStudent = map.get(Integer.valueOf(studentId));
-                    if (perStudent == null) {
-                        perStudent = new HashMap<Integer, Integer>();
-                        map.put(Integer.valueOf(studentId), perStudent);
-                    }
-                    perStudent.put(Integer.valueOf(assignmentId), Integer.valueOf(mark));
-                }
-            }
+            return readMarks(ps);
         }
-        return map;
     }
 
     /**
      * Add or update one grade for a student and assignment.
-     * First try update; if no row changes, insert a new row.
+     * First try update; if no row changes, insert a new row. The student's
+     * stored final grades are refreshed in the same transaction.
      */
     @Override
     public void upsert(int studentId, int assignmentId, int mark) throws SQLException {
@@ -72,16 +72,253 @@ public class UcanaccessGradeDAO implements GradeDAO {
              PreparedStatement psUpdate = c.prepareStatement(UPDATE_GRADE);
              PreparedStatement psInsert = c.prepareStatement(INSERT_GRADE)) {
 
-            psUpdate.setInt(1, mark);
-            psUpdate.setInt(2, studentId);
-            psUpdate.setInt(3, assignmentId);
+            boolean oldAuto = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                psUpdate.setInt(1, mark);
+                psUpdate.setInt(2, studentId);
+                psUpdate.setInt(3, assignmentId);
+
+                if (psUpdate.executeUpdate() == 0) {
+                    psInsert.setInt(1, studentId);
+                    psInsert.setInt(2, assignmentId);
+                    psInsert.setInt(3, mark);
+                    psInsert.executeUpdate();
+                }
+
+                FinalGradeMaterializer.refreshStudent(c, studentId);
+                c.commit();
+                c.setAutoCommit(oldAuto);
+            } catch (SQLException ex) {
+                c.rollback();
+                c.setAutoCommit(oldAuto);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Save a whole change set in one transaction.
+     * Current marks are read first so unchanged cells are skipped; the rest go
+     * out as three batches (UPDATE, INSERT, DELETE). If a batch is rejected it
+     * is rolled back to a savepoint and replayed row by row, so one bad cell
+     * is reported as FAILED instead of losing the whole save.
+     */
+    @Override
+    public List<GradeSaveResult> upsertAll(Map<Integer, Map<Integer, Integer>> changes) throws SQLException {
+        List<GradeSaveResult> results = new ArrayList<GradeSaveResult>();
+        if (changes == null || changes.isEmpty()) {
+            return results;
+        }
+
+        // flatten the change set and collect the assignments it touches
+        List<int[]> cells = new ArrayList<int[]>();      // {studentId, assignmentId}
+        List<Integer> marks = new ArrayList<Integer>();  // same order, null = clear
+        Set<Integer> assignmentIds = new LinkedHashSet<Integer>();
+        for (Map.Entry<Integer, Map<Integer, Integer>> e : changes.entrySet()) {
+            if (e.getKey() == null || e.getValue() == null) {
+                continue;
+            }
+            for (Map.Entry<Integer, Integer> m : e.getValue().entrySet()) {
+                if (m.getKey() == null) {
+                    continue;
+                }
+                cells.add(new int[]{e.getKey().intValue(), m.getKey().intValue()});
+                marks.add(m.getValue());
+                assignmentIds.add(m.getKey());
+            }
+        }
+
+        try (Connection c = DB.get()) {
+            boolean oldAuto = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                Map<Long, Integer> current = readCurrent(c, assignmentIds);
+
+                List<Integer> updates = new ArrayList<Integer>();
+                List<Integer> inserts = new ArrayList<Integer>();
+                List<Integer> deletes = new ArrayList<Integer>();
+                for (int i = 0; i < cells.size(); i++) {
+                    int[] cell = cells.get(i);
+                    Long key = Long.valueOf(key(cell[0], cell[1]));
+                    Integer mark = marks.get(i);
+                    boolean exists = current.containsKey(key);
+
+                    if (mark == null) {
+                        if (exists) {
+                            deletes.add(Integer.valueOf(i));
+                        } else {
+                            results.add(result(cell, null, GradeSaveResult.Status.UNCHANGED, null));
+                        }
+                    } else if (!exists) {
+                        inserts.add(Integer.valueOf(i));
+                    } else if (mark.equals(current.get(key))) {
+                        results.add(result(cell, mark, GradeSaveResult.Status.UNCHANGED, null));
+                    } else {
+                        updates.add(Integer.valueOf(i));
+                    }
+                }
+
+                runBatch(c, UPDATE_GRADE, updates, cells, marks, GradeSaveResult.Status.UPDATED, results);
+                runBatch(c, INSERT_GRADE, inserts, cells, marks, GradeSaveResult.Status.INSERTED, results);
+                runBatch(c, DELETE_GRADE, deletes, cells, marks, GradeSaveResult.Status.DELETED, results);
+
+                // stored final grades for every student whose marks changed
+                List<Integer> touched = new ArrayList<Integer>();
+                for (int i = 0; i < results.size(); i++) {
+                    GradeSaveResult r = results.get(i);
+                    if (r.getStatus() != GradeSaveResult.Status.UNCHANGED && !r.isFailed()) {
+                        touched.add(Integer.valueOf(r.getStudentId()));
+                    }
+                }
+                FinalGradeMaterializer.refreshStudents(c, touched);
+
+                c.commit();
+                c.setAutoCommit(oldAuto);
+                return results;
+            } catch (SQLException ex) {
+                c.rollback();
+                c.setAutoCommit(oldAuto);
+                throw ex;
+            }
+        }
+    }
+
+    // --- helpers ---
+
+    /** Run the query and put every row straight into a matrix. */
+    private static GradeMatrix readMarks(PreparedStatement ps) throws SQLException {
+        GradeMatrix.Builder b = new GradeMatrix.Builder();
 
-            if (psUpdate.executeUpdate() == 0) {
-                psInsert.setInt(1, studentId);
-                psInsert.setInt(2, assignmentId);
-                psInsert.setInt(3, mark);
-                psInsert.executeUpdate();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                b.add(rs.getInt("studentId"), rs.getInt("assignmentId"), rs.getInt("markAwarded"));
             }
         }
+        return b.build();
+    }
+
+    /** Current marks for the given assignments, keyed by {@link #key(int, int)}. */
+    private static Map<Long, Integer> readCurrent(Connection c, Set<Integer> assignmentIds) throws SQLException {
+        Map<Long, Integer> current = new HashMap<Long, Integer>();
+        List<Integer> ids = new ArrayList<Integer>(assignmentIds);
+
+        for (int from = 0; from < ids.size(); from += IN_CHUNK) {
+            int to = Math.min(ids.size(), from + IN_CHUNK);
+            try (PreparedStatement ps = c.prepareStatement(SELECT_BY_ASSIGNMENTS + placeholders(to - from))) {
+                for (int i = from; i < to; i++) {
+                    ps.setInt(i - from + 1, ids.get(i).intValue());
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Long key = Long.valueOf(key(rs.getInt("studentId"), rs.getInt("assignmentId")));
+                        current.put(key, (Integer) rs.getObject("markAwarded"));
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Send one kind of change as a batch. On a rejected batch, go back to the
+     * savepoint and send the rows one at a time to find the bad ones.
+     */
+    private static void runBatch(Connection c, String sql, List<Integer> rows,
+                                 List<int[]> cells, List<Integer> marks,
+                                 GradeSaveResult.Status ok, List<GradeSaveResult> results) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        Savepoint sp = c.setSavepoint();
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            for (int i = 0; i < rows.size(); i++) {
+                int n = rows.get(i).intValue();
+                bind(ps, ok, cells.get(n), marks.get(n));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            c.releaseSavepoint(sp);
+
+            for (int i = 0; i < rows.size(); i++) {
+                int n = rows.get(i).intValue();
+                results.add(result(cells.get(n), marks.get(n), ok, null));
+            }
+            return;
+        } catch (SQLException ex) {
+            if (!isBatchFailure(ex)) {
+                throw ex;
+            }
+            c.rollback(sp);
+        }
+
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            for (int i = 0; i < rows.size(); i++) {
+                int n = rows.get(i).intValue();
+                int[] cell = cells.get(n);
+                try {
+                    bind(ps, ok, cell, marks.get(n));
+                    if (ps.executeUpdate() > 0) {
+                        results.add(result(cell, marks.get(n), ok, null));
+                    } else {
+                        results.add(result(cell, marks.get(n), GradeSaveResult.Status.FAILED, "No row changed"));
+                    }
+                } catch (SQLException rowEx) {
+                    results.add(result(cell, marks.get(n), GradeSaveResult.Status.FAILED, rowEx.getMessage()));
+                }
+            }
+        }
+    }
+
+    /** Parameter order of UPDATE_GRADE, INSERT_GRADE and DELETE_GRADE. */
+    private static void bind(PreparedStatement ps, GradeSaveResult.Status kind,
+                             int[] cell, Integer mark) throws SQLException {
+        switch (kind) {
+            case UPDATED:
+                ps.setInt(1, mark.intValue());
+                ps.setInt(2, cell[0]);
+                ps.setInt(3, cell[1]);
+                break;
+            case INSERTED:
+                ps.setInt(1, cell[0]);
+                ps.setInt(2, cell[1]);
+                ps.setInt(3, mark.intValue());
+                break;
+            default:
+                ps.setInt(1, cell[0]);
+                ps.setInt(2, cell[1]);
+                break;
+        }
+    }
+
+    /** UCanAccess wraps the driver's BatchUpdateException in its own exception. */
+    private static boolean isBatchFailure(SQLException ex) {
+        Throwable t = ex;
+        while (t != null) {
+            if (t instanceof BatchUpdateException) {
+                return true;
+            }
+            t = t.getCause();
+        }
+        return false;
+    }
+
+    private static GradeSaveResult result(int[] cell, Integer mark, GradeSaveResult.Status status, String error) {
+        return new GradeSaveResult(cell[0], cell[1], mark, status, error);
+    }
+
+    /** One long per (student, assignment) pair. */
+    private static long key(int studentId, int assignmentId) {
+        return ((long) studentId << 32) | (assignmentId & 0xffffffffL);
+    }
+
+    /** "(?,?,...)" with n markers. */
+    private static String placeholders(int n) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < n; i++) {
+            sb.append(i == 0 ? "?" : ",?");
+        }
+        return sb.append(')').toString();
     }
 }
@@ -1,37 +1,73 @@
 package sgms.dao.impl;
 
+import sgms.dao.ReportQuery;
+import sgms.dao.ReportQuery.RowCallback;
+import sgms.dao.ReportQuery.RowMapper;
+
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 /**
- * DAO providing reporting queries backed by UCanAccess.
+ * DAO providing reporting queries backed by UCanAccess. Rows are handed to
+ * a callback (or read through a statement the caller closes), so no result
+ * set outlives the call that opened it.
  */
 public class UcanaccessReportDAO {
 
-    /**
-     * Executes the term report join for the given term.
-     */
-    public ResultSet queryTermReport(Connection c, int term) throws SQLException {
-        final String sql = """
+    // the grades join sits outside the others so it can see both the
+    // student and the assignment
+    private static final String TERM_REPORT_FROM = """
         SELECT s.studentId, s.firstName, s.lastName,
         c.courseCode,
-        a.title, a.maxMarks,
+        a.title, a.maxMarks, a.term,
         g.markAwarded AS mark,
-        IIF(a.maxMarks > 0, (g.markAwarded * 100.0) / a.maxMarks, NULL) AS pct
-        FROM ((tblStudents AS s
+        CASE WHEN a.maxMarks > 0 THEN (g.markAwarded * 100.0) / a.maxMarks END AS pct
+        FROM (((tblStudents AS s
         INNER JOIN tblStudentCourses AS sc ON s.studentId = sc.studentId)
         INNER JOIN tblCourses AS c ON sc.courseId = c.courseId)
-        INNER JOIN (tblAssignments AS a
+        INNER JOIN tblAssignments AS a ON a.courseId = c.courseId)
         LEFT JOIN tblGrades AS g
-        ON a.assignmentId = g.assignmentId AND g.studentId = s.studentId)
-        ON a.courseId = c.courseId
-        WHERE a.term = ?
-        ORDER BY s.lastName, c.courseCode, a.dueDate;
+        ON g.assignmentId = a.assignmentId AND g.studentId = s.studentId
         """;
-        PreparedStatement ps = c.prepareStatement(sql);
-        ps.setInt(1, term);
-        return ps.executeQuery();
+
+    private static final ReportQuery TERM_REPORT = new ReportQuery(
+            TERM_REPORT_FROM + "WHERE a.term = ? ORDER BY s.lastName, c.courseCode, a.dueDate");
+
+    private static final ReportQuery ALL_TERMS_REPORT = new ReportQuery(
+            TERM_REPORT_FROM + "ORDER BY a.term, s.lastName, c.courseCode, a.dueDate");
+
+    /**
+     * Runs the term report join and passes each row to the callback.
+     *
+     * @param c open connection (not closed)
+     * @param term 1..4, or 0 for every term
+     * @param mapper builds one row object from the columns studentId,
+     *               firstName, lastName, courseCode, title, maxMarks, term,
+     *               mark and pct
+     * @param callback receives the rows in report order
+     * @return number of rows
+     */
+    public <T> int queryTermReport(Connection c, int term, RowMapper<T> mapper,
+                                   RowCallback<? super T> callback) throws SQLException {
+        if (term == 0) {
+            return ALL_TERMS_REPORT.forEach(c, mapper, callback);
+        }
+        return TERM_REPORT.forEach(c, mapper, callback, Integer.valueOf(term));
+    }
+
+    /**
+     * Prepares the term report join for reading large reports a few rows at
+     * a time. The caller runs and closes the statement.
+     *
+     * @param c open connection
+     * @param term 1..4, or 0 for every term
+     * @param fetchSize rows to ask the driver for at a time (0 = driver default)
+     */
+    public PreparedStatement prepareTermReport(Connection c, int term, int fetchSize) throws SQLException {
+        if (term == 0) {
+            return ALL_TERMS_REPORT.withFetchSize(fetchSize).prepare(c);
+        }
+        return TERM_REPORT.withFetchSize(fetchSize).prepare(c, Integer.valueOf(term));
     }
 }
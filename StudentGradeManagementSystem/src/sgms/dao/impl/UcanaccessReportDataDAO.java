@@ -0,0 +1,176 @@
+package sgms.dao.impl;
+
+import sgms.dao.DB;
+import sgms.dao.ReportDataDAO;
+import sgms.model.Assignment;
+import sgms.model.Course;
+import sgms.model.GradeMatrix;
+import sgms.model.ReportData;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Report card data using UCanAccess (MS Access). Four queries on one
+ * connection: courses, assignments, marks and feedback.
+ */
+public class UcanaccessReportDataDAO implements ReportDataDAO {
+
+    private static final String SELECT_COURSES =
+            "SELECT courseId, courseCode, courseName, gradeLevel " +
+            "FROM tblCourses WHERE gradeLevel = ? ORDER BY courseName, courseId";
+
+    private static final String SELECT_ASSIGNMENTS =
+            "SELECT a.assignmentId, a.courseId, a.title, a.maxMarks, a.term, a.dueDate " +
+            "FROM tblAssignments a JOIN tblCourses c ON a.courseId = c.courseId " +
+            "WHERE c.gradeLevel = ? " +
+            "ORDER BY c.courseId, a.assignmentId";
+
+    // one student: start from tblGrades so only their rows are joined
+    private static final String SELECT_STUDENT_MARKS =
+            "SELECT g.studentId, g.assignmentId, g.markAwarded " +
+            "FROM (tblGrades g " +
+            "JOIN tblAssignments a ON g.assignmentId = a.assignmentId) " +
+            "JOIN tblCourses c ON a.courseId = c.courseId " +
+            "WHERE g.studentId = ? AND c.gradeLevel = ?";
+
+    // whole grade: start from tblCourses so the grade filter is applied first
+    private static final String SELECT_GRADE_MARKS =
+            "SELECT g.studentId, g.assignmentId, g.markAwarded " +
+            "FROM (tblCourses c " +
+            "JOIN tblAssignments a ON a.courseId = c.courseId) " +
+            "JOIN tblGrades g ON g.assignmentId = a.assignmentId " +
+            "WHERE c.gradeLevel = ?";
+
+    private static final String SELECT_STUDENT_FEEDBACK =
+            "SELECT f.studentId, f.courseId, f.note " +
+            "FROM tblFeedback f JOIN tblCourses c ON f.courseId = c.courseId " +
+            "WHERE f.studentId = ? AND c.gradeLevel = ?";
+
+    private static final String SELECT_GRADE_FEEDBACK =
+            "SELECT f.studentId, f.courseId, f.note " +
+            "FROM tblCourses c JOIN tblFeedback f ON f.courseId = c.courseId " +
+            "WHERE c.gradeLevel = ?";
+
+    @Override
+    public ReportData findForStudent(int studentId, int gradeLevel) throws SQLException {
+        try (Connection c = DB.get()) {
+            List<Course> courses = readCourses(c, gradeLevel);
+            Map<Integer, List<Assignment>> assignments = readAssignments(c, gradeLevel);
+
+            GradeMatrix marks;
+            try (PreparedStatement ps = c.prepareStatement(SELECT_STUDENT_MARKS)) {
+                ps.setInt(1, studentId);
+                ps.setInt(2, gradeLevel);
+                marks = readMarks(ps);
+            }
+
+            Map<Integer, Map<Integer, String>> feedback;
+            try (PreparedStatement ps = c.prepareStatement(SELECT_STUDENT_FEEDBACK)) {
+                ps.setInt(1, studentId);
+                ps.setInt(2, gradeLevel);
+                feedback = readFeedback(ps);
+            }
+            return new ReportData(gradeLevel, courses, assignments, marks, feedback);
+        }
+    }
+
+    @Override
+    public ReportData findForGradeLevel(int gradeLevel) throws SQLException {
+        try (Connection c = DB.get()) {
+            List<Course> courses = readCourses(c, gradeLevel);
+            Map<Integer, List<Assignment>> assignments = readAssignments(c, gradeLevel);
+
+            GradeMatrix marks;
+            try (PreparedStatement ps = c.prepareStatement(SELECT_GRADE_MARKS)) {
+                ps.setInt(1, gradeLevel);
+                marks = readMarks(ps);
+            }
+
+            Map<Integer, Map<Integer, String>> feedback;
+            try (PreparedStatement ps = c.prepareStatement(SELECT_GRADE_FEEDBACK)) {
+                ps.setInt(1, gradeLevel);
+                feedback = readFeedback(ps);
+            }
+            return new ReportData(gradeLevel, courses, assignments, marks, feedback);
+        }
+    }
+
+    // --- helpers ---
+
+    private static List<Course> readCourses(Connection c, int gradeLevel) throws SQLException {
+        List<Course> list = new ArrayList<Course>();
+        try (PreparedStatement ps = c.prepareStatement(SELECT_COURSES)) {
+            ps.setInt(1, gradeLevel);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    list.add(new Course(
+                            rs.getInt("courseId"),
+                            rs.getString("courseCode"),
+                            rs.getString("courseName"),
+                            rs.getInt("gradeLevel")));
+                }
+            }
+        }
+        return list;
+    }
+
+    /** courseId -> assignments in ID order (the same order as the grades table). */
+    private static Map<Integer, List<Assignment>> readAssignments(Connection c, int gradeLevel) throws SQLException {
+        Map<Integer, List<Assignment>> map = new HashMap<Integer, List<Assignment>>();
+        try (PreparedStatement ps = c.prepareStatement(SELECT_ASSIGNMENTS)) {
+            ps.setInt(1, gradeLevel);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Assignment a = new Assignment(
+                            rs.getInt("assignmentId"),
+                            rs.getInt("courseId"),
+                            rs.getString("title"),
+                            (Integer) rs.getObject("maxMarks"), // may be null
+                            rs.getInt("term"),
+                            rs.getDate("dueDate"));
+
+                    List<Assignment> list = map.get(Integer.valueOf(a.getCourseId()));
+                    if (list == null) {
+                        list = new ArrayList<Assignment>();
+                        map.put(Integer.valueOf(a.getCourseId()), list);
+                    }
+                    list.add(a);
+                }
+            }
+        }
+        return map;
+    }
+
+    private static GradeMatrix readMarks(PreparedStatement ps) throws SQLException {
+        GradeMatrix.Builder b = new GradeMatrix.Builder();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                b.add(rs.getInt("studentId"), rs.getInt("assignmentId"), rs.getInt("markAwarded"));
+            }
+        }
+        return b.build();
+    }
+
+    private static Map<Integer, Map<Integer, String>> readFeedback(PreparedStatement ps) throws SQLException {
+        Map<Integer, Map<Integer, String>> map = new HashMap<Integer, Map<Integer, String>>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Integer studentId = Integer.valueOf(rs.getInt("studentId"));
+                Map<Integer, String> perStudent = map.get(studentId);
+                if (perStudent == null) {
+                    perStudent = new HashMap<Integer, String>();
+                    map.put(studentId, perStudent);
+                }
+                perStudent.put(Integer.valueOf(rs.getInt("courseId")), rs.getString("note"));
+            }
+        }
+        return map;
+    }
+}
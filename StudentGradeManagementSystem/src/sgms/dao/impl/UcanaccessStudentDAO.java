@@ -6,13 +6,14 @@ import sgms.model.Course;
 import sgms.model.Student;
 
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Student DAO using UCanAccess (MS Access).
@@ -57,19 +58,15 @@ public class UcanaccessStudentDAO implements StudentDAO {
             "WHERE sc.courseId = ? " +
             "ORDER BY s.lastName";
 
+    private static final String SELECT_ENROLMENTS =
+            "SELECT sc.courseId, s.studentId " +
+            "FROM tblStudents s " +
+            "JOIN tblStudentCourses sc ON s.studentId = sc.studentId " +
+            "ORDER BY sc.courseId";
+
     private static final String DELETE_ENROLLMENT =
             "DELETE FROM tblStudentCourses WHERE studentId = ? AND courseId = ?";
 
-    // Create the link table if it does not exist
-    private static final String CREATE_ENROLL_TABLE =
-            "CREATE TABLE tblStudentCourses (" +
-            "  studentId INTEGER NOT NULL, " +
-            "  courseId  INTEGER NOT NULL, " +
-            "  PRIMARY KEY (studentId, courseId), " +
-            "  FOREIGN KEY (studentId) REFERENCES tblStudents(studentId), " +
-            "  FOREIGN KEY (courseId)  REFERENCES tblCourses(courseId)" +
-            ")";
-
     private static final String DELETE_ATTENDANCE =
             "DELETE FROM tblAttendance WHERE studentId=?";
     private static final String DELETE_GRADES =
@@ -100,17 +97,44 @@ public class UcanaccessStudentDAO implements StudentDAO {
         }
     }
 
-    /** Update one student. */
+    /**
+     * Update one student. Moving the student to another grade changes which
+     * courses count, so the stored final grades are refreshed too.
+     */
     @Override
     public boolean update(Student s) throws SQLException {
         try (Connection c = DB.get();
+             PreparedStatement psOld = c.prepareStatement(SELECT_STUDENT_BY_ID);
              PreparedStatement ps = c.prepareStatement(UPDATE_STUDENT)) {
 
-            ps.setString(1, s.getFirstName());
-            ps.setString(2, s.getLastName());
-            ps.setInt(3, s.getGradeLevel());
-            ps.setInt(4, s.getStudentId());
-            return ps.executeUpdate() == 1;
+            boolean oldAuto = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try {
+                boolean gradeChanged = false;
+                psOld.setInt(1, s.getStudentId());
+                try (ResultSet rs = psOld.executeQuery()) {
+                    if (rs.next()) {
+                        gradeChanged = rs.getInt("gradeLevel") != s.getGradeLevel();
+                    }
+                }
+
+                ps.setString(1, s.getFirstName());
+                ps.setString(2, s.getLastName());
+                ps.setInt(3, s.getGradeLevel());
+                ps.setInt(4, s.getStudentId());
+                boolean updated = ps.executeUpdate() == 1;
+
+                if (updated && gradeChanged) {
+                    FinalGradeMaterializer.refreshStudent(c, s.getStudentId());
+                }
+                c.commit();
+                c.setAutoCommit(oldAuto);
+                return updated;
+            } catch (SQLException ex) {
+                c.rollback();
+                c.setAutoCommit(oldAuto);
+                throw ex;
+            }
         }
     }
 
@@ -129,8 +153,6 @@ public class UcanaccessStudentDAO implements StudentDAO {
              PreparedStatement psEnroll  = c.prepareStatement(DELETE_ENROLLMENTS);
              PreparedStatement psStudent = c.prepareStatement(DELETE_STUDENT)) {
 
-            ensureEnrollmentTableExists(c);
-
             boolean oldAuto = c.getAutoCommit();
             c.setAutoCommit(false);
             try {
@@ -244,8 +266,6 @@ public class UcanaccessStudentDAO implements StudentDAO {
     public boolean enrollStudentInCourse(int studentId, int courseId) throws SQLException {
         try (Connection c = DB.get();
              PreparedStatement ps = c.prepareStatement(ENROLL_STUDENT)) {
-
-            ensureEnrollmentTableExists(c);
             ps.setInt(1, studentId);
             ps.setInt(2, courseId);
             return ps.executeUpdate() == 1;
@@ -257,8 +277,6 @@ public class UcanaccessStudentDAO implements StudentDAO {
     public List<Student> findByCourse(int courseId) throws SQLException {
         try (Connection c = DB.get();
              PreparedStatement ps = c.prepareStatement(SELECT_STUDENTS_BY_COURSE)) {
-
-            ensureEnrollmentTableExists(c);
             ps.setInt(1, courseId);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -271,13 +289,32 @@ public class UcanaccessStudentDAO implements StudentDAO {
         }
     }
 
+    /** Every enrolment, grouped by course. */
+    @Override
+    public Map<Integer, List<Integer>> findEnrolments() throws SQLException {
+        try (Connection c = DB.get();
+             PreparedStatement ps = c.prepareStatement(SELECT_ENROLMENTS);
+             ResultSet rs = ps.executeQuery()) {
+
+            Map<Integer, List<Integer>> byCourse = new HashMap<Integer, List<Integer>>();
+            while (rs.next()) {
+                Integer courseId = Integer.valueOf(rs.getInt("courseId"));
+                List<Integer> ids = byCourse.get(courseId);
+                if (ids == null) {
+                    ids = new ArrayList<Integer>();
+                    byCourse.put(courseId, ids);
+                }
+                ids.add(Integer.valueOf(rs.getInt("studentId")));
+            }
+            return byCourse;
+        }
+    }
+
     /** Unenrol a student from a course. */
     @Override
     public boolean removeStudentFromCourse(int studentId, int courseId) throws SQLException {
         try (Connection c = DB.get();
              PreparedStatement ps = c.prepareStatement(DELETE_ENROLLMENT)) {
-
-            ensureEnrollmentTableExists(c);
             ps.setInt(1, studentId);
             ps.setInt(2, courseId);
             return ps.executeUpdate() == 1;
@@ -295,38 +332,4 @@ public class UcanaccessStudentDAO implements StudentDAO {
                 rs.getInt("gradeLevel")
         );
     }
-
-    /**
-     * Make sure the link table exists.
-     * We check the metadata first; if missing, we create it.
-     */
-    private static void ensureEnrollmentTableExists(Connection c) throws SQLException {
-        if (hasTable(c, "tblStudentCourses")) {
-            return; // already there
-        }
-        try (Statement stmt = c.createStatement()) {
-            stmt.executeUpdate(CREATE_ENROLL_TABLE);
-        }
-    }
-
-    /** Check if a table name exists (case-insensitive). */
-    private static boolean hasTable(Connection c, String tableName) throws SQLException {
-        DatabaseMetaData meta = c.getMetaData();
-        ResultSet rs = null;
-        try {
-            rs = meta.getTables(null, null, null, new String[] { "TABLE" });
-            while (rs.next()) {
-                String name = rs.getString("TABLE_NAME");
-                if (name != null && name.equalsIgnoreCase(tableName)) {
-                    return true;
-                }
-            }
-            return false;
-        } finally {
-            // close ResultSet explicitly (not try-with-resources because of older drivers)
-            if (rs != null) {
-                try { rs.close(); } catch (SQLException ignore) { }
-            }
-        }
-    }
 }
@@ -1,12 +1,14 @@
 package sgms.main;
 
 import com.formdev.flatlaf.themes.FlatMacLightLaf;
+import java.lang.management.ManagementFactory;
 import javax.swing.UIManager;
+import sgms.dao.DB;
 import sgms.ui.LoginPage;
 
 /**
- * Entry point for the Student Grade Management System application. Sets the UI theme and
- * launches the login page.
+ * Entry point for the Student Grade Management System application. Starts opening the
+ * database in the background, sets the UI theme and launches the login page.
  */
 public class StudentGradeManagementSystem {
 
@@ -16,16 +18,23 @@ public class StudentGradeManagementSystem {
      * @param args Command line arguments (not used).
      */
     public static void main(String[] args) {
+        // the database loads while the theme and login window are set up
+        DB.warmUp();
+
+        long start = System.nanoTime();
         try {
             UIManager.setLookAndFeel(new FlatMacLightLaf());
         } catch (Exception ex) {
             // Ignore exceptions related to look and feel initialization
         }
+        System.err.printf("[startup] look and feel %d ms%n", (System.nanoTime() - start) / 1000000L);
 
         java.awt.EventQueue.invokeLater(new Runnable() {
             @Override
             public void run() {
                 new LoginPage().setVisible(true);
+                System.err.printf("[startup] login window shown %d ms after launch%n",
+                        ManagementFactory.getRuntimeMXBean().getUptime());
             }
         });
     }
@@ -0,0 +1,332 @@
+package sgms.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Attendance for one course over a range of school days (Mon–Fri).
+ * Each student (row) has two bit sets indexed by school day: one for days
+ * that have a record and one for days the student was present. Looking up a
+ * day is plain arithmetic, and rates over a range are worked out with
+ * {@link Long#bitCount(long)}, so nothing is boxed.
+ */
+public final class AttendanceBitmap {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final LocalDate firstDay;  // first school day in range
+    private final long originEpochDay; // Monday of the first day's week
+    private final int offset;          // school days from the origin to firstDay
+    private final int dayCount;
+    private final int words;           // longs per row
+
+    private final int[] studentIds;    // row -> studentId
+    private final long[] recorded;     // row * words + word
+    private final long[] present;
+
+    private final IdIndex rowIndex;    // studentId -> row
+
+    /**
+     * Make an empty register (no records).
+     *
+     * @param studentIds row order
+     * @param first first date in range (moved to Monday if on a weekend)
+     * @param last last date in range (moved back to Friday if on a weekend)
+     */
+    public AttendanceBitmap(int[] studentIds, LocalDate first, LocalDate last) {
+        LocalDate start = nextSchoolDay(first);
+        LocalDate end = previousSchoolDay(last);
+
+        this.firstDay = start;
+        this.originEpochDay = start.toEpochDay() - (start.getDayOfWeek().getValue() - 1);
+        this.offset = start.getDayOfWeek().getValue() - 1;
+        this.dayCount = end.isBefore(start) ? 0 : rawIndex(end) - offset + 1;
+        this.words = (dayCount + 63) >>> 6;
+
+        this.studentIds = (studentIds == null) ? EMPTY : studentIds.clone();
+        this.recorded = new long[this.studentIds.length * words];
+        this.present = new long[this.studentIds.length * words];
+
+        this.rowIndex = new IdIndex(this.studentIds);
+    }
+
+    // --- days ---
+
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    public LocalDate getFirstDay() {
+        return firstDay;
+    }
+
+    /** Last school day in range (the day before the first one if empty). */
+    public LocalDate getLastDay() {
+        return dateAt(dayCount - 1);
+    }
+
+    /** School-day index of a date, or -1 for weekends and dates out of range. */
+    public int dayIndexOf(LocalDate date) {
+        if (date == null || isWeekend(date)) {
+            return -1;
+        }
+        int day = rawIndex(date) - offset;
+        return (day >= 0 && day < dayCount) ? day : -1;
+    }
+
+    /** Date of a school-day index. */
+    public LocalDate dateAt(int day) {
+        int raw = day + offset;
+        return LocalDate.ofEpochDay(originEpochDay + (long) Math.floorDiv(raw, 5) * 7 + Math.floorMod(raw, 5));
+    }
+
+    // --- rows ---
+
+    public int getRowCount() {
+        return studentIds.length;
+    }
+
+    public int getStudentIdAt(int row) {
+        return studentIds[row];
+    }
+
+    /** Row for a student, or -1 if the student is not in the register. */
+    public int rowOf(int studentId) {
+        return rowIndex.find(studentId);
+    }
+
+    // --- cells ---
+
+    public boolean isRecorded(int row, int day) {
+        int w = word(row, day);
+        return (recorded[w] & (1L << day)) != 0;
+    }
+
+    /** True only if a record exists and says present. */
+    public boolean isPresent(int row, int day) {
+        int w = word(row, day);
+        return (present[w] & (1L << day)) != 0;
+    }
+
+    public void set(int row, int day, boolean isPresent) {
+        int w = word(row, day);
+        long bit = 1L << day;
+        recorded[w] |= bit;
+        if (isPresent) {
+            present[w] |= bit;
+        } else {
+            present[w] &= ~bit;
+        }
+    }
+
+    /** Remove the record for a day. */
+    public void clear(int row, int day) {
+        int w = word(row, day);
+        long bit = ~(1L << day);
+        recorded[w] &= bit;
+        present[w] &= bit;
+    }
+
+    // --- counts and rates ---
+
+    /** Days with a record between two indexes (both included). */
+    public int countRecorded(int row, int fromDay, int toDay) {
+        return count(recorded, row, fromDay, toDay);
+    }
+
+    /** Days marked present between two indexes (both included). */
+    public int countPresent(int row, int fromDay, int toDay) {
+        return count(present, row, fromDay, toDay);
+    }
+
+    /** Present days as a percentage of recorded days, or null if none recorded. */
+    public Double ratePercent(int row, int fromDay, int toDay) {
+        int days = countRecorded(row, fromDay, toDay);
+        if (days == 0) {
+            return null;
+        }
+        return Double.valueOf(countPresent(row, fromDay, toDay) * 100.0 / days);
+    }
+
+    /** Same as {@link #ratePercent(int, int, int)} for a date range (e.g. a term). */
+    public Double ratePercent(int row, LocalDate from, LocalDate to) {
+        return ratePercent(row, ceilDay(from), floorDay(to));
+    }
+
+    /** Rate over the whole register. */
+    public Double ratePercent(int row) {
+        return ratePercent(row, 0, dayCount - 1);
+    }
+
+    /**
+     * Rate for one student over several registers (e.g. every course in a
+     * grade), or null if none of them has a record for the student.
+     */
+    public static Double ratePercent(Collection<AttendanceBitmap> registers, int studentId,
+                                     LocalDate from, LocalDate to) {
+        int days = 0;
+        int here = 0;
+        for (AttendanceBitmap b : registers) {
+            int row = b.rowOf(studentId);
+            if (row < 0) {
+                continue;
+            }
+            int lo = b.ceilDay(from);
+            int hi = b.floorDay(to);
+            days += b.countRecorded(row, lo, hi);
+            here += b.countPresent(row, lo, hi);
+        }
+        return (days == 0) ? null : Double.valueOf(here * 100.0 / days);
+    }
+
+    // --- reshaping ---
+
+    /**
+     * Copy the records into a register with the given rows (same days).
+     * Students not in this register get empty rows.
+     */
+    public AttendanceBitmap reshape(int[] newStudentIds) {
+        AttendanceBitmap out = new AttendanceBitmap(newStudentIds, firstDay, getLastDay());
+        for (int r = 0; r < out.studentIds.length; r++) {
+            int src = rowOf(out.studentIds[r]);
+            if (src >= 0) {
+                System.arraycopy(recorded, src * words, out.recorded, r * words, words);
+                System.arraycopy(present, src * words, out.present, r * words, words);
+            }
+        }
+        return out;
+    }
+
+    // --- helpers ---
+
+    private int word(int row, int day) {
+        if (row < 0 || row >= studentIds.length || day < 0 || day >= dayCount) {
+            throw new IndexOutOfBoundsException("cell " + row + "," + day);
+        }
+        return row * words + (day >>> 6);
+    }
+
+    private int count(long[] bits, int row, int fromDay, int toDay) {
+        if (row < 0 || row >= studentIds.length) {
+            throw new IndexOutOfBoundsException("row " + row);
+        }
+        int lo = Math.max(0, fromDay);
+        int hi = Math.min(dayCount - 1, toDay);
+        if (lo > hi) {
+            return 0;
+        }
+        int base = row * words;
+        int first = lo >>> 6;
+        int last = hi >>> 6;
+        long headMask = -1L << lo;                 // drop bits below lo
+        long tailMask = -1L >>> (63 - (hi & 63));  // drop bits above hi
+
+        if (first == last) {
+            return Long.bitCount(bits[base + first] & headMask & tailMask);
+        }
+        int n = Long.bitCount(bits[base + first] & headMask);
+        for (int w = first + 1; w < last; w++) {
+            n += Long.bitCount(bits[base + w]);
+        }
+        return n + Long.bitCount(bits[base + last] & tailMask);
+    }
+
+    /** Index of the first school day on or after a date (may be past the end). */
+    private int ceilDay(LocalDate date) {
+        if (date == null) {
+            return 0;
+        }
+        return rawIndex(nextSchoolDay(date)) - offset;
+    }
+
+    /** Index of the last school day on or before a date (may be before 0). */
+    private int floorDay(LocalDate date) {
+        if (date == null) {
+            return dayCount - 1;
+        }
+        return rawIndex(previousSchoolDay(date)) - offset;
+    }
+
+    /** School days from the origin Monday to a weekday. */
+    private int rawIndex(LocalDate weekday) {
+        long days = weekday.toEpochDay() - originEpochDay;
+        return (int) (Math.floorDiv(days, 7L) * 5 + Math.floorMod(days, 7L));
+    }
+
+    private static boolean isWeekend(LocalDate d) {
+        DayOfWeek dow = d.getDayOfWeek();
+        return dow == DayOfWeek.SATURDAY || dow == DayOfWeek.SUNDAY;
+    }
+
+    private static LocalDate nextSchoolDay(LocalDate d) {
+        DayOfWeek dow = d.getDayOfWeek();
+        if (dow == DayOfWeek.SATURDAY) return d.plusDays(2);
+        if (dow == DayOfWeek.SUNDAY) return d.plusDays(1);
+        return d;
+    }
+
+    private static LocalDate previousSchoolDay(LocalDate d) {
+        DayOfWeek dow = d.getDayOfWeek();
+        if (dow == DayOfWeek.SATURDAY) return d.minusDays(1);
+        if (dow == DayOfWeek.SUNDAY) return d.minusDays(2);
+        return d;
+    }
+
+    /**
+     * Collects (student, date, present) rows, e.g. straight from a ResultSet,
+     * and turns them into a register. Rows come out in ascending student ID
+     * order; weekend and out-of-range dates are skipped.
+     */
+    public static final class Builder {
+        private final LocalDate first;
+        private final LocalDate last;
+        private final AttendanceBitmap days; // only used for date -> index
+        private int[] studentIds = new int[64];
+        private int[] dayIndexes = new int[64];
+        private boolean[] flags = new boolean[64];
+        private int size;
+
+        public Builder(LocalDate first, LocalDate last) {
+            this.first = first;
+            this.last = last;
+            this.days = new AttendanceBitmap(EMPTY, first, last);
+        }
+
+        public Builder add(int studentId, LocalDate date, boolean isPresent) {
+            int day = days.dayIndexOf(date);
+            if (day < 0) {
+                return this;
+            }
+            if (size == flags.length) {
+                int cap = size * 2;
+                studentIds = Arrays.copyOf(studentIds, cap);
+                dayIndexes = Arrays.copyOf(dayIndexes, cap);
+                flags = Arrays.copyOf(flags, cap);
+            }
+            studentIds[size] = studentId;
+            dayIndexes[size] = day;
+            flags[size] = isPresent;
+            size++;
+            return this;
+        }
+
+        public AttendanceBitmap build() {
+            int[] sorted = Arrays.copyOf(studentIds, size);
+            Arrays.sort(sorted);
+            int k = 0;
+            for (int i = 0; i < size; i++) {
+                if (k == 0 || sorted[k - 1] != sorted[i]) {
+                    sorted[k++] = sorted[i];
+                }
+            }
+
+            AttendanceBitmap b = new AttendanceBitmap(Arrays.copyOf(sorted, k), first, last);
+            for (int i = 0; i < size; i++) {
+                b.set(b.rowOf(studentIds[i]), dayIndexes[i], flags[i]);
+            }
+            return b;
+        }
+    }
+}
@@ -6,6 +6,7 @@ package sgms.model;
  */
 public class FinalGrade {
 
+    private int studentId;      // 0 when not known
     private String firstName;
     private String lastName;
     private Integer term1;      // percent 0-100 or null
@@ -18,6 +19,14 @@ public class FinalGrade {
     public FinalGrade(String firstName, String lastName,
                       Integer term1, Integer term2, Integer term3,
                       Integer term4, Integer finalGrade) {
+        this(0, firstName, lastName, term1, term2, term3, term4, finalGrade);
+    }
+
+    /** Make a row with the student's ID, name and marks. */
+    public FinalGrade(int studentId, String firstName, String lastName,
+                      Integer term1, Integer term2, Integer term3,
+                      Integer term4, Integer finalGrade) {
+        this.studentId = studentId;
         this.firstName = firstName;
         this.lastName = lastName;
         this.term1 = term1;
@@ -29,6 +38,10 @@ public class FinalGrade {
 
     // --- getters ---
 
+    public int getStudentId() {
+        return studentId;
+    }
+
     public String getFirstName() {
         return firstName;
     }
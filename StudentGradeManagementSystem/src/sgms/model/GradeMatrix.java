@@ -0,0 +1,299 @@
+package sgms.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Raw marks for a set of students (rows) and assignments (columns).
+ * Marks are kept in one flat {@code int[]}; a missing mark is
+ * {@link #NO_MARK}. Student and assignment IDs are looked up through
+ * sorted copies of the ID arrays, so nothing is boxed.
+ */
+public final class GradeMatrix {
+
+    /** Stored in a cell that has no mark. */
+    public static final int NO_MARK = Integer.MIN_VALUE;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final int[] studentIds;   // row -> studentId
+    private int[] assignmentIds;      // column -> assignmentId
+    private int[] marks;              // row * columns + column
+
+    private final IdIndex rowIndex;   // studentId -> row
+    private IdIndex columnIndex;       // assignmentId -> column
+
+    /**
+     * Make an empty matrix (every cell {@link #NO_MARK}).
+     *
+     * @param studentIds row order
+     * @param assignmentIds column order
+     */
+    public GradeMatrix(int[] studentIds, int[] assignmentIds) {
+        this.studentIds = (studentIds == null) ? EMPTY : studentIds.clone();
+        this.assignmentIds = (assignmentIds == null) ? EMPTY : assignmentIds.clone();
+        this.marks = new int[this.studentIds.length * this.assignmentIds.length];
+        Arrays.fill(this.marks, NO_MARK);
+
+        this.rowIndex = new IdIndex(this.studentIds);
+        reindexColumns();
+    }
+
+    // --- size and IDs ---
+
+    public int getRowCount() {
+        return studentIds.length;
+    }
+
+    public int getColumnCount() {
+        return assignmentIds.length;
+    }
+
+    public int getStudentIdAt(int row) {
+        return studentIds[row];
+    }
+
+    public int getAssignmentIdAt(int column) {
+        return assignmentIds[column];
+    }
+
+    /** Row for a student, or -1 if the student is not in the matrix. */
+    public int rowOf(int studentId) {
+        return rowIndex.find(studentId);
+    }
+
+    /** Column for an assignment, or -1 if it is not in the matrix. */
+    public int columnOf(int assignmentId) {
+        return columnIndex.find(assignmentId);
+    }
+
+    // --- cells ---
+
+    /** Raw mark at a cell, or {@link #NO_MARK}. */
+    public int get(int row, int column) {
+        return marks[offset(row, column)];
+    }
+
+    public boolean hasMark(int row, int column) {
+        return marks[offset(row, column)] != NO_MARK;
+    }
+
+    /** Store a raw mark. Passing {@link #NO_MARK} clears the cell. */
+    public void set(int row, int column, int mark) {
+        marks[offset(row, column)] = mark;
+    }
+
+    public void clear(int row, int column) {
+        marks[offset(row, column)] = NO_MARK;
+    }
+
+    /** Raw mark by IDs, or {@link #NO_MARK} if missing or unknown. */
+    public int getMark(int studentId, int assignmentId) {
+        int row = rowOf(studentId);
+        int column = columnOf(assignmentId);
+        if (row < 0 || column < 0) {
+            return NO_MARK;
+        }
+        return marks[row * assignmentIds.length + column];
+    }
+
+    /** Number of cells that hold a mark. */
+    public int getMarkCount() {
+        int n = 0;
+        for (int i = 0; i < marks.length; i++) {
+            if (marks[i] != NO_MARK) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    // --- reshaping ---
+
+    /**
+     * Copy the marks into a new matrix with the given row and column order.
+     * Students or assignments not in this matrix get empty cells.
+     */
+    public GradeMatrix reshape(int[] newStudentIds, int[] newAssignmentIds) {
+        GradeMatrix out = new GradeMatrix(newStudentIds, newAssignmentIds);
+        int cols = out.assignmentIds.length;
+
+        // map each target column to a source column once
+        int[] srcCol = new int[cols];
+        for (int c = 0; c < cols; c++) {
+            srcCol[c] = columnOf(out.assignmentIds[c]);
+        }
+
+        for (int r = 0; r < out.studentIds.length; r++) {
+            int srcRow = rowOf(out.studentIds[r]);
+            if (srcRow < 0) {
+                continue;
+            }
+            int srcBase = srcRow * assignmentIds.length;
+            int dstBase = r * cols;
+            for (int c = 0; c < cols; c++) {
+                if (srcCol[c] >= 0) {
+                    out.marks[dstBase + c] = marks[srcBase + srcCol[c]];
+                }
+            }
+        }
+        return out;
+    }
+
+    /** Add an empty column at the end. */
+    public void addColumn(int assignmentId) {
+        int rows = studentIds.length;
+        int oldCols = assignmentIds.length;
+        int newCols = oldCols + 1;
+
+        int[] grown = new int[rows * newCols];
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(marks, r * oldCols, grown, r * newCols, oldCols);
+            grown[r * newCols + oldCols] = NO_MARK;
+        }
+        marks = grown;
+
+        assignmentIds = Arrays.copyOf(assignmentIds, newCols);
+        assignmentIds[oldCols] = assignmentId;
+        reindexColumns();
+    }
+
+    /** Remove a column and its marks. */
+    public void removeColumn(int column) {
+        int rows = studentIds.length;
+        int oldCols = assignmentIds.length;
+        if (column < 0 || column >= oldCols) {
+            throw new IndexOutOfBoundsException("column " + column);
+        }
+        int newCols = oldCols - 1;
+
+        int[] shrunk = new int[rows * newCols];
+        for (int r = 0; r < rows; r++) {
+            int src = r * oldCols;
+            int dst = r * newCols;
+            System.arraycopy(marks, src, shrunk, dst, column);
+            System.arraycopy(marks, src + column + 1, shrunk, dst + column, newCols - column);
+        }
+        marks = shrunk;
+
+        int[] ids = new int[newCols];
+        System.arraycopy(assignmentIds, 0, ids, 0, column);
+        System.arraycopy(assignmentIds, column + 1, ids, column, newCols - column);
+        assignmentIds = ids;
+        reindexColumns();
+    }
+
+    /** Independent copy of this matrix. */
+    public GradeMatrix copy() {
+        GradeMatrix out = new GradeMatrix(studentIds, assignmentIds);
+        System.arraycopy(marks, 0, out.marks, 0, marks.length);
+        return out;
+    }
+
+    // --- conversion to and from the old map layout ---
+
+    /** Marks as studentId -> (assignmentId -> raw mark). Only students with marks appear. */
+    public Map<Integer, Map<Integer, Integer>> toMap() {
+        Map<Integer, Map<Integer, Integer>> map = new HashMap<Integer, Map<Integer, Integer>>();
+        int cols = assignmentIds.length;
+        for (int r = 0; r < studentIds.length; r++) {
+            Map<Integer, Integer> perStudent = null;
+            for (int c = 0; c < cols; c++) {
+                int mark = marks[r * cols + c];
+                if (mark == NO_MARK) {
+                    continue;
+                }
+                if (perStudent == null) {
+                    perStudent = map.get(Integer.valueOf(studentIds[r]));
+                    if (perStudent == null) {
+                        perStudent = new HashMap<Integer, Integer>();
+                        map.put(Integer.valueOf(studentIds[r]), perStudent);
+                    }
+                }
+                perStudent.put(Integer.valueOf(assignmentIds[c]), Integer.valueOf(mark));
+            }
+        }
+        return map;
+    }
+
+    /** Build a matrix from studentId -> (assignmentId -> raw mark). */
+    public static GradeMatrix fromMap(Map<Integer, Map<Integer, Integer>> map) {
+        Builder b = new Builder();
+        if (map != null) {
+            for (Map.Entry<Integer, Map<Integer, Integer>> e : map.entrySet()) {
+                if (e.getKey() == null || e.getValue() == null) {
+                    continue;
+                }
+                int studentId = e.getKey().intValue();
+                for (Map.Entry<Integer, Integer> m : e.getValue().entrySet()) {
+                    if (m.getKey() != null && m.getValue() != null) {
+                        b.add(studentId, m.getKey().intValue(), m.getValue().intValue());
+                    }
+                }
+            }
+        }
+        return b.build();
+    }
+
+    // --- helpers ---
+
+    private int offset(int row, int column) {
+        if (row < 0 || row >= studentIds.length || column < 0 || column >= assignmentIds.length) {
+            throw new IndexOutOfBoundsException("cell " + row + "," + column);
+        }
+        return row * assignmentIds.length + column;
+    }
+
+    private void reindexColumns() {
+        columnIndex = new IdIndex(assignmentIds);
+    }
+
+    /**
+     * Collects (student, assignment, mark) rows, e.g. straight from a
+     * ResultSet, and turns them into a matrix. Rows and columns come out in
+     * ascending ID order; a repeated cell keeps the last mark.
+     */
+    public static final class Builder {
+        private int[] studentIds = new int[64];
+        private int[] assignmentIds = new int[64];
+        private int[] marks = new int[64];
+        private int size;
+
+        public Builder add(int studentId, int assignmentId, int mark) {
+            if (size == marks.length) {
+                int cap = size * 2;
+                studentIds = Arrays.copyOf(studentIds, cap);
+                assignmentIds = Arrays.copyOf(assignmentIds, cap);
+                marks = Arrays.copyOf(marks, cap);
+            }
+            studentIds[size] = studentId;
+            assignmentIds[size] = assignmentId;
+            marks[size] = mark;
+            size++;
+            return this;
+        }
+
+        public GradeMatrix build() {
+            GradeMatrix m = new GradeMatrix(distinct(studentIds, size), distinct(assignmentIds, size));
+            for (int i = 0; i < size; i++) {
+                int row = m.rowOf(studentIds[i]);
+                int column = m.columnOf(assignmentIds[i]);
+                m.marks[row * m.assignmentIds.length + column] = marks[i];
+            }
+            return m;
+        }
+
+        private static int[] distinct(int[] ids, int n) {
+            int[] sorted = Arrays.copyOf(ids, n);
+            Arrays.sort(sorted);
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                if (k == 0 || sorted[k - 1] != sorted[i]) {
+                    sorted[k++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, k);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package sgms.model;
+
+/**
+ * What happened to one cell (student + assignment) during a bulk grade save.
+ */
+public class GradeSaveResult {
+
+    /** Outcome of saving one mark. */
+    public enum Status {
+        INSERTED,   // new row in tblGrades
+        UPDATED,    // existing row got a new mark
+        DELETED,    // mark was cleared
+        UNCHANGED,  // database already had this value; nothing sent
+        FAILED      // database rejected the change (see the error message)
+    }
+
+    private final int studentId;
+    private final int assignmentId;
+    private final Integer mark;   // null when the mark was cleared
+    private final Status status;
+    private final String error;   // only set when FAILED
+
+    public GradeSaveResult(int studentId, int assignmentId, Integer mark,
+                           Status status, String error) {
+        this.studentId = studentId;
+        this.assignmentId = assignmentId;
+        this.mark = mark;
+        this.status = status;
+        this.error = error;
+    }
+
+    // --- getters ---
+
+    public int getStudentId() {
+        return studentId;
+    }
+
+    public int getAssignmentId() {
+        return assignmentId;
+    }
+
+    public Integer getMark() {
+        return mark;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isFailed() {
+        return status == Status.FAILED;
+    }
+}
@@ -0,0 +1,43 @@
+package sgms.model;
+
+import java.util.Arrays;
+
+/**
+ * Finds the position of an ID in an {@code int[]} of IDs (e.g. the row of a
+ * student) by binary search over a sorted copy, without boxing. Used by
+ * {@link GradeMatrix} and {@link AttendanceBitmap}.
+ */
+final class IdIndex {
+
+    private final int[] keys; // sorted IDs
+    private final int[] pos;  // position each key came from
+
+    /** Index the IDs as they are now; later changes to the array are not seen. */
+    IdIndex(int[] ids) {
+        long[] packed = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            packed[i] = ((long) ids[i] << 32) | i;
+        }
+        // sorts by ID, then by position, so ties keep the lowest position first
+        Arrays.sort(packed);
+
+        keys = new int[ids.length];
+        pos = new int[ids.length];
+        for (int i = 0; i < packed.length; i++) {
+            keys[i] = (int) (packed[i] >> 32);
+            pos[i] = (int) packed[i];
+        }
+    }
+
+    /** Position of the ID (the first one if it is repeated), or -1. */
+    int find(int id) {
+        int i = Arrays.binarySearch(keys, id);
+        if (i < 0) {
+            return -1;
+        }
+        while (i > 0 && keys[i - 1] == id) {
+            i--;
+        }
+        return pos[i];
+    }
+}
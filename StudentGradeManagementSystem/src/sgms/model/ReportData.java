@@ -0,0 +1,54 @@
+package sgms.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything a report card needs for one grade level: its courses, their
+ * assignments, the raw marks and the feedback notes. It can hold one student
+ * (a single card) or the whole grade (a batch of cards).
+ */
+public final class ReportData {
+
+    private final int gradeLevel;
+    private final List<Course> courses;                          // by course name
+    private final Map<Integer, List<Assignment>> assignments;    // courseId -> by assignmentId
+    private final GradeMatrix marks;
+    private final Map<Integer, Map<Integer, String>> feedback;   // studentId -> (courseId -> note)
+
+    public ReportData(int gradeLevel, List<Course> courses, Map<Integer, List<Assignment>> assignments,
+                      GradeMatrix marks, Map<Integer, Map<Integer, String>> feedback) {
+        this.gradeLevel = gradeLevel;
+        this.courses = (courses == null) ? new ArrayList<Course>() : courses;
+        this.assignments = (assignments == null) ? new HashMap<Integer, List<Assignment>>() : assignments;
+        this.marks = (marks == null) ? new GradeMatrix(null, null) : marks;
+        this.feedback = (feedback == null) ? new HashMap<Integer, Map<Integer, String>>() : feedback;
+    }
+
+    public int getGradeLevel() {
+        return gradeLevel;
+    }
+
+    public List<Course> getCourses() {
+        return courses;
+    }
+
+    /** Assignments of one course in ID order (empty if none). */
+    public List<Assignment> getAssignments(int courseId) {
+        List<Assignment> list = assignments.get(Integer.valueOf(courseId));
+        return (list == null) ? Collections.<Assignment>emptyList() : list;
+    }
+
+    public GradeMatrix getMarks() {
+        return marks;
+    }
+
+    /** Feedback note for a student in a course, or null. */
+    public String getFeedback(int studentId, int courseId) {
+        Map<Integer, String> perStudent = feedback.get(Integer.valueOf(studentId));
+        return (perStudent == null) ? null : perStudent.get(Integer.valueOf(courseId));
+    }
+}
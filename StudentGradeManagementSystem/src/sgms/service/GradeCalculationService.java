@@ -0,0 +1,71 @@
+package sgms.service;
+
+import sgms.model.Assignment;
+import sgms.model.GradeMatrix;
+import sgms.util.GradeCalculator;
+
+import java.util.List;
+
+/**
+ * Term and final percentages worked out straight from assignments and raw
+ * marks, without a table model. Marks are added in the order of the
+ * assignment list. The grades table uses these methods too, so reports
+ * match the screen exactly.
+ */
+public final class GradeCalculationService {
+
+    private GradeCalculationService() {
+        // no objects of this class
+    }
+
+    /**
+     * Average percentage of one student's marks in a term.
+     *
+     * @param assignments one course's assignments, in table order
+     * @param marks raw marks (may hold other students and courses)
+     * @param studentId the student
+     * @param term 1..4
+     * @return average percent, or null if the student has no marks that term
+     */
+    public static Double termPercent(List<Assignment> assignments, GradeMatrix marks, int studentId, int term) {
+        int row = marks.rowOf(studentId);
+        if (row < 0) {
+            return null;
+        }
+
+        double sumPct = 0.0;
+        int count = 0;
+        for (int i = 0; i < assignments.size(); i++) {
+            Assignment a = assignments.get(i);
+            if (a.getTerm() != term) {
+                continue;
+            }
+            int column = marks.columnOf(a.getAssignmentId());
+            if (column < 0) {
+                continue;
+            }
+            int raw = marks.get(row, column);
+            if (raw != GradeMatrix.NO_MARK) {
+                sumPct += GradeCalculator.assignmentPercent(raw, a.getMaxMarks());
+                count++;
+            }
+        }
+
+        if (count == 0) return null;
+        return Double.valueOf(sumPct / count);
+    }
+
+    /** T1..T4 percentages for one student in one course (entries may be null). */
+    public static Double[] termPercents(List<Assignment> assignments, GradeMatrix marks, int studentId) {
+        Double[] terms = new Double[4];
+        for (int t = 1; t <= 4; t++) {
+            terms[t - 1] = termPercent(assignments, marks, studentId, t);
+        }
+        return terms;
+    }
+
+    /** Weighted final from four term percentages (see {@link GradeCalculator}). */
+    public static Double finalPercent(Double[] terms) {
+        return GradeCalculator.calculateFinalGrade(terms[0], terms[1], terms[2], terms[3]);
+    }
+}
@@ -0,0 +1,525 @@
+package sgms.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import sgms.dao.StudentDAO;
+import sgms.dao.StudentListener;
+import sgms.dao.impl.CachingStudentDAO;
+import sgms.dao.impl.UcanaccessStudentDAO;
+import sgms.model.Course;
+import sgms.model.Student;
+
+/**
+ * School-wide learner lookup by name, student ID or course, tolerant of small
+ * typos ("Mclarn" finds McLaren) and of half-typed words ("mcl").
+ * <p>
+ * Every learner, course and enrolment is read into memory on the first
+ * search (three queries, run outside the lock so student writes never wait
+ * for them). The first search therefore takes a moment; call it off the
+ * Swing event thread. The distinct
+ * words (first and last names, IDs, course codes and names) are indexed by
+ * their three-letter pieces (trigrams), so each search term is only compared
+ * with the few words that share a piece with it. Matching words are scored
+ * (exact, then prefix, then within one or two edits) and the learners with
+ * the best total are returned; every term has to match something.
+ * <p>
+ * From the first search on, the index is kept up to date through
+ * {@link CachingStudentDAO} writes. Call {@link #invalidate()} after changes
+ * made some other way (e.g. a course was renamed), and {@link #close()} when
+ * done with the service.
+ */
+public class LearnerSearchService implements StudentListener {
+
+    /** Scores for one word match; a course word counts half. */
+    private static final double EXACT = 1.0;
+    private static final double PREFIX = 0.85;
+    private static final double FUZZY = 0.7;
+    private static final double FUZZY_PREFIX = 0.55;
+    private static final double COURSE_WEIGHT = 0.5;
+
+    /** One search result. */
+    public static final class Match {
+        private final Student student;
+        private final double score;
+
+        Match(Student student, double score) {
+            this.student = student;
+            this.score = score;
+        }
+
+        public Student getStudent() {
+            return student;
+        }
+
+        /** Higher is better; about 1.0 per exactly matched term. */
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return student + " (" + Math.round(score * 100) / 100.0 + ")";
+        }
+    }
+
+    /** A distinct word and who it belongs to. */
+    private static final class Word {
+        final String text;
+        final Set<Integer> students = new HashSet<Integer>(); // name/ID words
+        final Set<Integer> courses = new HashSet<Integer>();  // course code/name words
+
+        Word(String text) {
+            this.text = text;
+        }
+
+        boolean isUnused() {
+            return students.isEmpty() && courses.isEmpty();
+        }
+    }
+
+    private final StudentDAO studentDAO;
+
+    // guarded by this
+    private boolean listening;
+    private boolean closed;
+    private boolean loaded;
+    private long changes; // listener calls so far; a change during a read means the read is stale
+    private final Map<Integer, Student> students = new HashMap<Integer, Student>();
+    private final Map<Integer, String[]> studentWords = new HashMap<Integer, String[]>();
+    private final Map<Integer, Set<Integer>> enrolled = new HashMap<Integer, Set<Integer>>(); // course -> students (all in students)
+    private final Map<String, Word> words = new HashMap<String, Word>();
+    private final Map<String, Set<Word>> trigrams = new HashMap<String, Set<Word>>();
+
+    public LearnerSearchService() {
+        this(new UcanaccessStudentDAO());
+    }
+
+    /**
+     * @param studentDAO where learners, courses and enrolments are read from
+     */
+    public LearnerSearchService(StudentDAO studentDAO) {
+        this.studentDAO = studentDAO;
+    }
+
+    /** Stop following student changes and drop the index. Searches fail after this. */
+    public synchronized void close() {
+        closed = true;
+        if (listening) {
+            CachingStudentDAO.removeListener(this);
+            listening = false;
+        }
+        clear();
+    }
+
+    /** Forget the index; the next search reads everything again. */
+    public synchronized void invalidate() {
+        changes++; // a read already under way is stale too
+        loaded = false;
+    }
+
+    /**
+     * Find the learners that best match the query. The first call (and the
+     * first after {@link #invalidate()}) reads the database, so do not call
+     * it on the Swing event thread.
+     *
+     * @param query names, student ID and/or course words, in any order
+     * @param limit most results to return
+     * @return best match first (empty if nothing matches)
+     * @throws Exception if the index has to be (re)built and the read fails
+     */
+    public List<Match> search(String query, int limit) throws Exception {
+        ensureLoaded();
+        return find(split(query), limit);
+    }
+
+    private synchronized List<Match> find(String[] terms, int limit) {
+        if (terms.length == 0 || limit <= 0) {
+            return new ArrayList<Match>();
+        }
+
+        // total score per student; only students matching every term so far
+        Map<Integer, Double> totals = null;
+        for (int t = 0; t < terms.length; t++) {
+            Map<Integer, Double> best = scoreTerm(terms[t]);
+            if (totals == null) {
+                totals = best;
+            } else {
+                Map<Integer, Double> next = new HashMap<Integer, Double>();
+                for (Map.Entry<Integer, Double> e : totals.entrySet()) {
+                    Double s = best.get(e.getKey());
+                    if (s != null) {
+                        next.put(e.getKey(), e.getValue() + s);
+                    }
+                }
+                totals = next;
+            }
+            if (totals.isEmpty()) {
+                break;
+            }
+        }
+
+        // top K with a small heap (worst kept match on top)
+        PriorityQueue<Match> top = new PriorityQueue<Match>(limit + 1, new java.util.Comparator<Match>() {
+            @Override
+            public int compare(Match a, Match b) {
+                return -rank(a, b);
+            }
+        });
+        for (Map.Entry<Integer, Double> e : totals.entrySet()) {
+            top.add(new Match(students.get(e.getKey()), e.getValue()));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        List<Match> out = new ArrayList<Match>(top);
+        Collections.sort(out, new java.util.Comparator<Match>() {
+            @Override
+            public int compare(Match a, Match b) {
+                return rank(a, b);
+            }
+        });
+        return out;
+    }
+
+    // ----------------- StudentListener -----------------
+
+    @Override
+    public synchronized void studentSaved(Student s) {
+        changes++;
+        if (!loaded) {
+            return; // read fresh on the next search anyway
+        }
+        removeStudentWords(s.getStudentId());
+        addStudent(new Student(s.getStudentId(), s.getFirstName(), s.getLastName(), s.getGradeLevel()));
+    }
+
+    @Override
+    public synchronized void studentDeleted(int studentId) {
+        changes++;
+        if (!loaded) {
+            return;
+        }
+        removeStudentWords(studentId);
+        students.remove(Integer.valueOf(studentId));
+        for (Set<Integer> ids : enrolled.values()) {
+            ids.remove(Integer.valueOf(studentId));
+        }
+    }
+
+    @Override
+    public synchronized void enrolmentChanged(int studentId, int courseId, boolean isEnrolled) {
+        changes++;
+        if (!loaded) {
+            return;
+        }
+        Set<Integer> ids = enrolled.get(Integer.valueOf(courseId));
+        if (ids == null) {
+            loaded = false; // a course we have not seen: read everything again
+            return;
+        }
+        if (isEnrolled) {
+            if (!students.containsKey(Integer.valueOf(studentId))) {
+                loaded = false; // a learner we have not seen: read everything again
+                return;
+            }
+            ids.add(Integer.valueOf(studentId));
+        } else {
+            ids.remove(Integer.valueOf(studentId));
+        }
+    }
+
+    // ----------------- building -----------------
+
+    private void ensureLoaded() throws Exception {
+        long seen;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Learner search is closed");
+            }
+            if (loaded) {
+                return;
+            }
+            if (!listening) {
+                CachingStudentDAO.addListener(this);
+                listening = true;
+            }
+            seen = changes;
+        }
+
+        List<Student> all = studentDAO.findAll();
+        List<Course> courses = studentDAO.findCourses();
+        Map<Integer, List<Integer>> enrolments = studentDAO.findEnrolments();
+
+        synchronized (this) {
+            if (loaded || closed) {
+                return; // another search built it meanwhile, or close() dropped it
+            }
+            clear();
+            for (int i = 0; i < all.size(); i++) {
+                addStudent(all.get(i));
+            }
+            for (int i = 0; i < courses.size(); i++) {
+                Course c = courses.get(i);
+                Integer id = Integer.valueOf(c.getCourseId());
+                Set<Integer> ids = new HashSet<Integer>();
+                List<Integer> in = enrolments.get(id);
+                if (in != null) {
+                    for (int j = 0; j < in.size(); j++) {
+                        // learners added after findAll() are left out until the next read
+                        if (students.containsKey(in.get(j))) {
+                            ids.add(in.get(j));
+                        }
+                    }
+                }
+                enrolled.put(id, ids);
+                for (String w : split(c.getCourseCode() + " " + c.getCourseName())) {
+                    word(w).courses.add(id);
+                }
+            }
+            // use it now, but read again next time if a write came in meanwhile
+            loaded = (changes == seen);
+        }
+    }
+
+    private void clear() {
+        loaded = false;
+        students.clear();
+        studentWords.clear();
+        enrolled.clear();
+        words.clear();
+        trigrams.clear();
+    }
+
+    private void addStudent(Student s) {
+        Integer id = Integer.valueOf(s.getStudentId());
+        Set<String> mine = new HashSet<String>();
+        Collections.addAll(mine, split(s.getFirstName() + " " + s.getLastName() + " " + s.getStudentId()));
+        for (String w : mine) {
+            word(w).students.add(id);
+        }
+        students.put(id, s);
+        studentWords.put(id, mine.toArray(new String[0]));
+    }
+
+    private void removeStudentWords(int studentId) {
+        String[] mine = studentWords.remove(Integer.valueOf(studentId));
+        if (mine == null) {
+            return;
+        }
+        for (String text : mine) {
+            Word w = words.get(text);
+            if (w != null) {
+                w.students.remove(Integer.valueOf(studentId));
+                if (w.isUnused()) {
+                    words.remove(text);
+                    for (String g : grams(text)) {
+                        Set<Word> set = trigrams.get(g);
+                        if (set != null && set.remove(w) && set.isEmpty()) {
+                            trigrams.remove(g);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** The word entry for the text, creating and indexing it if new. */
+    private Word word(String text) {
+        Word w = words.get(text);
+        if (w == null) {
+            w = new Word(text);
+            words.put(text, w);
+            for (String g : grams(text)) {
+                Set<Word> set = trigrams.get(g);
+                if (set == null) {
+                    set = new HashSet<Word>();
+                    trigrams.put(g, set);
+                }
+                set.add(w);
+            }
+        }
+        return w;
+    }
+
+    // ----------------- scoring -----------------
+
+    /** Best score per student for one search term. */
+    private Map<Integer, Double> scoreTerm(String term) {
+        Map<Integer, Double> best = new HashMap<Integer, Double>();
+
+        // candidate words share at least one trigram with the term
+        Set<Word> candidates = new HashSet<Word>();
+        for (String g : grams(term)) {
+            Set<Word> set = trigrams.get(g);
+            if (set != null) {
+                candidates.addAll(set);
+            }
+        }
+
+        for (Word w : candidates) {
+            double s = similarity(term, w.text);
+            if (s <= 0) {
+                continue;
+            }
+            for (Integer id : w.students) {
+                keepBest(best, id, s);
+            }
+            for (Integer courseId : w.courses) {
+                Set<Integer> ids = enrolled.get(courseId);
+                if (ids != null) {
+                    for (Integer id : ids) {
+                        keepBest(best, id, s * COURSE_WEIGHT);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private static void keepBest(Map<Integer, Double> best, Integer id, double s) {
+        Double old = best.get(id);
+        if (old == null || old.doubleValue() < s) {
+            best.put(id, Double.valueOf(s));
+        }
+    }
+
+    /** How well a typed term matches a word (0 = not at all). */
+    static double similarity(String term, String word) {
+        if (term.equals(word)) {
+            return EXACT;
+        }
+        if (word.startsWith(term)) {
+            return PREFIX;
+        }
+        int max = maxEdits(term);
+        if (max == 0) {
+            return 0;
+        }
+        int d = distance(term, word, max);
+        if (d <= max) {
+            return FUZZY - 0.1 * (d - 1);
+        }
+        if (word.length() > term.length()) {
+            // a typo in a half-typed word: compare with the start of the word
+            d = distance(term, word.substring(0, term.length()), max);
+            if (d <= max) {
+                return FUZZY_PREFIX - 0.1 * (d - 1);
+            }
+        }
+        return 0;
+    }
+
+    /** Typos allowed for a term: none for very short ones, then one, then two. */
+    private static int maxEdits(String term) {
+        if (term.length() <= 2) {
+            return 0;
+        }
+        return (term.length() <= 5) ? 1 : 2;
+    }
+
+    /**
+     * Edit distance with swaps of neighbouring letters counted as one edit.
+     * Gives up early and returns max + 1 once the distance must exceed max.
+     */
+    static int distance(String a, String b, int max) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > max) {
+            return max + 1;
+        }
+        int[] prev2 = new int[m + 1];
+        int[] prev = new int[m + 1];
+        int[] cur = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            cur[0] = i;
+            int rowMin = cur[0];
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                char cb = b.charAt(j - 1);
+                int cost = (ca == cb) ? 0 : 1;
+                int v = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                    v = Math.min(v, prev2[j - 2] + 1);
+                }
+                cur[j] = v;
+                rowMin = Math.min(rowMin, v);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] t = prev2;
+            prev2 = prev;
+            prev = cur;
+            cur = t;
+        }
+        return prev[m];
+    }
+
+    /** Best score first, then by last name, first name. */
+    private static int rank(Match a, Match b) {
+        int c = Double.compare(b.score, a.score);
+        if (c != 0) {
+            return c;
+        }
+        c = String.CASE_INSENSITIVE_ORDER.compare(nz(a.student.getLastName()), nz(b.student.getLastName()));
+        if (c != 0) {
+            return c;
+        }
+        c = String.CASE_INSENSITIVE_ORDER.compare(nz(a.student.getFirstName()), nz(b.student.getFirstName()));
+        return (c != 0) ? c : Integer.compare(a.student.getStudentId(), b.student.getStudentId());
+    }
+
+    private static String nz(String s) {
+        return (s == null) ? "" : s;
+    }
+
+    // ----------------- text -----------------
+
+    /** Lowercase words; anything but letters, digits, ' and - separates them. */
+    static String[] split(String s) {
+        if (s == null) {
+            return new String[0];
+        }
+        String x = s.toLowerCase(Locale.ROOT);
+        List<String> out = new ArrayList<String>();
+        int start = -1;
+        for (int i = 0; i <= x.length(); i++) {
+            boolean part = i < x.length() && isWordChar(x.charAt(i));
+            if (part && start < 0) {
+                start = i;
+            } else if (!part && start >= 0) {
+                out.add(x.substring(start, i));
+                start = -1;
+            }
+        }
+        return out.toArray(new String[0]);
+    }
+
+    private static boolean isWordChar(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '\'' || ch == '-';
+    }
+
+    /**
+     * Trigrams of the word padded with '$' at both ends, so short words and
+     * word starts get pieces of their own ("mcl" -> $$m, $mc, mcl, cl$, l$$).
+     */
+    private static List<String> grams(String w) {
+        String p = "$$" + w + "$$";
+        List<String> out = new ArrayList<String>(p.length() - 2);
+        for (int i = 0; i + 3 <= p.length(); i++) {
+            out.add(p.substring(i, i + 3));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,511 @@
+package sgms.service;
+
+import sgms.model.ReportData;
+import sgms.model.Student;
+import sgms.util.DocxTemplate;
+import sgms.util.ReportCardGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes report cards for many students at once (e.g. a whole grade) and
+ * writes one .docx per student into a folder.
+ * <p>
+ * Each student runs on its own virtual thread through four stages: fetch
+ * (database reads), build (merge fields), render (DOCX bytes) and write
+ * (file). The data for a grade is read once, by the first student of that
+ * grade to reach the fetch stage, and shared by every card in the grade.
+ * Each stage has its own limit, so database work never needs more
+ * connections than the pool has, rendering uses about one thread per core,
+ * and only a bounded number of cards is in memory at any time.
+ * <p>
+ * {@link #runMerged} instead puts every card into a single .docx, one card
+ * after another, so the cards can be printed in one go.
+ * <p>
+ * A batch is stopped through {@link Listener#isCancelled()}, which is asked
+ * before every stage. Worker threads are never interrupted: an interrupt
+ * closes the database file channel under UCanAccess.
+ */
+public class ReportCardBatchService {
+
+    /** Stage names used in failures. */
+    public static final String FETCH = "fetch";
+    public static final String RENDER = "render";
+    public static final String WRITE = "write";
+
+    /** Told about every finished student; called from worker threads. */
+    public interface Listener {
+        void progress(Progress p);
+
+        /** True once the batch should stop; asked from worker threads. */
+        boolean isCancelled();
+    }
+
+    /** Snapshot of how far a batch has got. */
+    public static final class Progress {
+        private final int total;
+        private final int done;
+        private final int failed;
+        private final long elapsedMillis;
+        private final Student last;
+
+        Progress(int total, int done, int failed, long elapsedMillis, Student last) {
+            this.total = total;
+            this.done = done;
+            this.failed = failed;
+            this.elapsedMillis = elapsedMillis;
+            this.last = last;
+        }
+
+        public int getTotal() { return total; }
+        /** Students finished so far, including failures. */
+        public int getDone() { return done; }
+        public int getFailed() { return failed; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        /** Student that just finished. */
+        public Student getLast() { return last; }
+
+        /** Cards finished per second so far. */
+        public double getCardsPerSecond() {
+            return (elapsedMillis <= 0) ? 0.0 : done * 1000.0 / elapsedMillis;
+        }
+    }
+
+    /** One student whose card could not be made. */
+    public static final class Failure {
+        private final Student student;
+        private final String stage;
+        private final String message;
+
+        Failure(Student student, String stage, String message) {
+            this.student = student;
+            this.stage = stage;
+            this.message = message;
+        }
+
+        public Student getStudent() { return student; }
+        /** {@link #FETCH}, {@link #RENDER} or {@link #WRITE}. */
+        public String getStage() { return stage; }
+        public String getMessage() { return message; }
+    }
+
+    /** What a finished batch produced. */
+    public static final class Result {
+        private final List<Path> files;
+        private final List<Failure> failures;
+        private final boolean cancelled;
+        private final long elapsedMillis;
+        private final long fetchMillis;
+        private final long renderMillis;
+        private final long writeMillis;
+
+        Result(List<Path> files, List<Failure> failures, boolean cancelled, long elapsedMillis,
+               long fetchMillis, long renderMillis, long writeMillis) {
+            this.files = files;
+            this.failures = failures;
+            this.cancelled = cancelled;
+            this.elapsedMillis = elapsedMillis;
+            this.fetchMillis = fetchMillis;
+            this.renderMillis = renderMillis;
+            this.writeMillis = writeMillis;
+        }
+
+        public List<Path> getFiles() { return files; }
+        /** True if the batch was stopped early; no file is written after it returns. */
+        public boolean isCancelled() { return cancelled; }
+        public List<Failure> getFailures() { return failures; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        /** Time spent in each stage, added up over all students. */
+        public long getFetchMillis() { return fetchMillis; }
+        public long getRenderMillis() { return renderMillis; }
+        public long getWriteMillis() { return writeMillis; }
+
+        public double getCardsPerSecond() {
+            return (elapsedMillis <= 0) ? 0.0 : files.size() * 1000.0 / elapsedMillis;
+        }
+    }
+
+    private final ReportService reports;
+    private final int fetchWorkers;
+    private final int renderWorkers;
+    private final int writeWorkers;
+
+    /** Defaults: fetch = DB pool size, render = CPU cores, write = 2. */
+    public ReportCardBatchService() {
+        this(new ReportService(),
+                Integer.getInteger("sgms.db.poolSize", 4).intValue(),
+                Runtime.getRuntime().availableProcessors(),
+                2);
+    }
+
+    public ReportCardBatchService(ReportService reports, int fetchWorkers, int renderWorkers, int writeWorkers) {
+        this.reports = reports;
+        this.fetchWorkers = Math.max(1, fetchWorkers);
+        this.renderWorkers = Math.max(1, renderWorkers);
+        this.writeWorkers = Math.max(1, writeWorkers);
+    }
+
+    /**
+     * Make a card for every student. Failures are collected per student and
+     * do not stop the batch. When it is cancelled, no new students are
+     * started and this waits for the ones already running, so every file it
+     * writes has been written by the time it returns.
+     *
+     * @param students who to make cards for
+     * @param outDir folder for the .docx files (created if missing)
+     * @param listener progress and cancel callback, or null
+     * @return files written and failures
+     * @throws IOException if the template or the folder cannot be used
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public Result run(List<Student> students, Path outDir, Listener listener)
+            throws IOException, InterruptedException {
+        Files.createDirectories(outDir);
+        DocxTemplate template = ReportCardGenerator.loadTemplate();
+        return run(students, template, outDir, listener);
+    }
+
+    /** Same as above with a template that was already compiled. */
+    public Result run(List<Student> students, DocxTemplate template, Path outDir, Listener listener)
+            throws InterruptedException {
+        final int total = students.size();
+        final long start = System.nanoTime();
+
+        final Semaphore fetch = new Semaphore(fetchWorkers);
+        final Semaphore render = new Semaphore(renderWorkers);
+        final Semaphore write = new Semaphore(writeWorkers);
+        // cards in memory at once: enough to keep every stage busy
+        final Semaphore inFlight = new Semaphore(fetchWorkers + renderWorkers + writeWorkers * 2);
+
+        final List<Path> files = Collections.synchronizedList(new ArrayList<Path>());
+        final List<Failure> failures = Collections.synchronizedList(new ArrayList<Failure>());
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicLong fetchNanos = new AtomicLong();
+        final AtomicLong renderNanos = new AtomicLong();
+        final AtomicLong writeNanos = new AtomicLong();
+        int started = 0; // students handed to a thread
+        final Semaphore finished = new Semaphore(0);
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final ConcurrentMap<Integer, FutureTask<ReportData>> grades
+                = new ConcurrentHashMap<Integer, FutureTask<ReportData>>();
+
+        ThreadFactory threads = Thread.ofVirtual().name("sgms-report-", 0).factory();
+
+        for (int i = 0; i < total && !isCancelled(cancelled, listener); i++) {
+            final Student s = students.get(i);
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException ex) {
+                cancelled.set(true); // students already started stop at their next stage
+                awaitStarted(finished, started);
+                throw ex;
+            }
+            if (isCancelled(cancelled, listener)) {
+                inFlight.release();
+                break;
+            }
+            started++;
+
+            threads.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    String stage = FETCH;
+                    try {
+                        checkCancelled(cancelled, listener);
+
+                        // 1) fetch + 2) build merge fields (database bound)
+                        Map<String, String> data;
+                        long t0 = System.nanoTime();
+                        fetch.acquire();
+                        try {
+                            ReportData grade = gradeData(grades, s.getGradeLevel());
+                            data = reports.buildReportCardData(s, grade, template.getKeys());
+                        } finally {
+                            fetch.release();
+                        }
+                        long t1 = System.nanoTime();
+                        fetchNanos.addAndGet(t1 - t0);
+
+                        // 3) render (CPU bound)
+                        stage = RENDER;
+                        checkCancelled(cancelled, listener);
+                        ByteArrayOutputStream docx = new ByteArrayOutputStream(64 * 1024);
+                        render.acquire();
+                        try {
+                            template.render(data, docx);
+                        } finally {
+                            render.release();
+                        }
+                        long t2 = System.nanoTime();
+                        renderNanos.addAndGet(t2 - t1);
+
+                        // 4) write (disk bound)
+                        stage = WRITE;
+                        Path file = outDir.resolve(fileName(s));
+                        write.acquire();
+                        try {
+                            // checked with the permit held: no write starts after a cancel
+                            checkCancelled(cancelled, listener);
+                            Files.write(file, docx.toByteArray());
+                        } finally {
+                            write.release();
+                        }
+                        writeNanos.addAndGet(System.nanoTime() - t2);
+                        files.add(file);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        failures.add(new Failure(s, stage, "Cancelled"));
+                    } catch (Exception ex) {
+                        String msg = (ex.getMessage() != null) ? ex.getMessage() : ex.toString();
+                        failures.add(new Failure(s, stage, msg));
+                    } finally {
+                        int n = done.incrementAndGet();
+                        try {
+                            if (listener != null) {
+                                listener.progress(new Progress(total, n, failures.size(),
+                                        (System.nanoTime() - start) / 1000000L, s));
+                            }
+                        } finally {
+                            inFlight.release();
+                            finished.release();
+                        }
+                    }
+                }
+            }).start();
+        }
+
+        try {
+            finished.acquire(started);
+        } catch (InterruptedException ex) {
+            cancelled.set(true);
+            awaitStarted(finished, started);
+            throw ex;
+        }
+        return new Result(new ArrayList<Path>(files), new ArrayList<Failure>(failures),
+                cancelled.get(), (System.nanoTime() - start) / 1000000L,
+                fetchNanos.get() / 1000000L, renderNanos.get() / 1000000L, writeNanos.get() / 1000000L);
+    }
+
+    /**
+     * Put every student's card into one .docx, each card starting on a new
+     * page. Cards are built one at a time while the document is written, so
+     * memory does not grow with the number of students. A student whose data
+     * cannot be read is left out and listed as a failure. When it is
+     * cancelled, the cards are checked between students and no file is kept.
+     *
+     * @param students who to make cards for, in page order
+     * @param outFile the .docx to write (replaced if it exists)
+     * @param listener progress and cancel callback, or null
+     * @return the file written (or none if every student failed or it was
+     *         cancelled) and failures
+     * @throws IOException if the template or the file cannot be used
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public Result runMerged(List<Student> students, Path outFile, Listener listener)
+            throws IOException, InterruptedException {
+        DocxTemplate template = ReportCardGenerator.loadTemplate();
+        return runMerged(students, template, outFile, listener);
+    }
+
+    /** Same as above with a template that was already compiled. */
+    public Result runMerged(List<Student> students, DocxTemplate template, Path outFile, Listener listener)
+            throws IOException, InterruptedException {
+        final long start = System.nanoTime();
+        Path dir = outFile.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+
+        CardIterator cards = new CardIterator(students, template.getKeys(), listener, start);
+        List<Path> files = new ArrayList<Path>();
+        long renderNanos = 0L;
+
+        // write next to the target, then move, so a failed run leaves no half file
+        Path tmp = Files.createTempFile(dir, "sgms-cards-", ".docx");
+        try {
+            if (cards.hasNext()) {
+                long t0 = System.nanoTime();
+                long fetched = cards.fetchNanos;
+                try (OutputStream out = Files.newOutputStream(tmp)) {
+                    template.renderMerged(cards, out);
+                }
+                // rendering and writing are one stream here; count both as render
+                renderNanos = System.nanoTime() - t0 - (cards.fetchNanos - fetched);
+            }
+            if (cards.cancelled && Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            if (cards.written > 0 && !cards.cancelled) {
+                Files.move(tmp, outFile, StandardCopyOption.REPLACE_EXISTING);
+                files.add(outFile);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        return new Result(files, cards.failures, cards.cancelled, (System.nanoTime() - start) / 1000000L,
+                cards.fetchNanos / 1000000L, renderNanos / 1000000L, 0L);
+    }
+
+    /**
+     * Builds merge data for one student at a time as the document asks for
+     * it, skipping students whose data cannot be read.
+     */
+    private final class CardIterator implements Iterator<Map<String, String>> {
+        private final List<Student> students;
+        private final Set<String> keys;
+        private final Listener listener;
+        private final long start;
+        private final ConcurrentMap<Integer, FutureTask<ReportData>> grades
+                = new ConcurrentHashMap<Integer, FutureTask<ReportData>>();
+        final List<Failure> failures = new ArrayList<Failure>();
+
+        private int index;
+        private Map<String, String> next;
+        private Student nextStudent;
+        private Student lastStudent;
+        int written;
+        long fetchNanos;
+        boolean cancelled;
+
+        CardIterator(List<Student> students, Set<String> keys, Listener listener, long start) {
+            this.students = students;
+            this.keys = keys;
+            this.listener = listener;
+            this.start = start;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && index < students.size() && !cancelled) {
+                if (Thread.currentThread().isInterrupted()
+                        || (listener != null && listener.isCancelled())) {
+                    cancelled = true;
+                    break;
+                }
+                Student s = students.get(index++);
+                long t0 = System.nanoTime();
+                try {
+                    ReportData grade = gradeData(grades, s.getGradeLevel());
+                    next = reports.buildReportCardData(s, grade, keys);
+                    nextStudent = s;
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    cancelled = true;
+                } catch (Exception ex) {
+                    String msg = (ex.getMessage() != null) ? ex.getMessage() : ex.toString();
+                    failures.add(new Failure(s, FETCH, msg));
+                    report(s);
+                } finally {
+                    fetchNanos += System.nanoTime() - t0;
+                }
+            }
+            if (next == null && lastStudent != null) {
+                report(lastStudent); // the last card has been written
+                lastStudent = null;
+            }
+            return next != null;
+        }
+
+        @Override
+        public Map<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            // asking for a card means the one before it is in the document
+            if (lastStudent != null) {
+                report(lastStudent);
+            }
+            Map<String, String> card = next;
+            lastStudent = nextStudent;
+            next = null;
+            nextStudent = null;
+            return card;
+        }
+
+        private void report(Student s) {
+            if (s == lastStudent) {
+                written++;
+            }
+            if (listener != null) {
+                listener.progress(new Progress(students.size(), written + failures.size(), failures.size(),
+                        (System.nanoTime() - start) / 1000000L, s));
+            }
+        }
+    }
+
+    /** Read a grade once; later callers wait for the same result. */
+    private ReportData gradeData(ConcurrentMap<Integer, FutureTask<ReportData>> grades, final int gradeLevel)
+            throws Exception {
+        FutureTask<ReportData> task = grades.get(Integer.valueOf(gradeLevel));
+        if (task == null) {
+            FutureTask<ReportData> mine = new FutureTask<ReportData>(new Callable<ReportData>() {
+                @Override
+                public ReportData call() throws Exception {
+                    return reports.prefetchGrade(gradeLevel);
+                }
+            });
+            task = grades.putIfAbsent(Integer.valueOf(gradeLevel), mine);
+            if (task == null) {
+                task = mine;
+                mine.run();
+            }
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw (cause instanceof Exception) ? (Exception) cause : ex;
+        }
+    }
+
+    private static boolean isCancelled(AtomicBoolean cancelled, Listener listener) {
+        if (!cancelled.get() && listener != null && listener.isCancelled()) {
+            cancelled.set(true);
+        }
+        return cancelled.get();
+    }
+
+    private static void checkCancelled(AtomicBoolean cancelled, Listener listener) throws InterruptedException {
+        if (isCancelled(cancelled, listener)) {
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * After the calling thread was interrupted, wait for the students already
+     * started (they stop at their next stage) before the interrupt is passed on.
+     */
+    private static void awaitStarted(Semaphore finished, int started) {
+        finished.acquireUninterruptibly(started);
+    }
+
+    /** e.g. Grade10_Smith_Anna_42.docx (unsafe characters become _). */
+    static String fileName(Student s) {
+        String name = "Grade" + s.getGradeLevel() + "_" + s.getLastName() + "_" + s.getFirstName()
+                + "_" + s.getStudentId();
+        return name.replaceAll("[^A-Za-z0-9_-]", "_") + ".docx";
+    }
+}
@@ -1,23 +1,21 @@
 package sgms.service;
 
 import sgms.dao.DB;
-import sgms.dao.AssignmentDAO;
-import sgms.dao.CourseDAO;
-import sgms.dao.FeedbackDAO;
-import sgms.dao.GradeDAO;
-import sgms.dao.impl.UcanaccessAssignmentDAO;
-import sgms.dao.impl.UcanaccessCourseDAO;
-import sgms.dao.impl.UcanaccessFeedbackDAO;
-import sgms.dao.impl.UcanaccessGradeDAO;
+import sgms.dao.ReportDataDAO;
+import sgms.dao.ReportQuery.RowCallback;
+import sgms.dao.ReportQuery.RowMapper;
 import sgms.dao.impl.UcanaccessReportDAO;
-import sgms.model.Assignment;
+import sgms.dao.impl.UcanaccessReportDataDAO;
 import sgms.model.Course;
+import sgms.model.ReportData;
 import sgms.model.Student;
-import sgms.ui.StudentGradesTableModel;
-import sgms.util.GradeCalculator;
 import sgms.util.Grades;
+import sgms.util.TermReportWriter;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
@@ -26,6 +24,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Makes report data for the app and for the DOCX report card.
@@ -41,6 +40,7 @@ public class ReportService {
         private String courseCode;
         private String assignmentTitle;
         private int maxMarks;
+        private int term;
         private Integer mark;      // raw mark (can be null)
         private Double percentage; // 0..100 or null
 
@@ -54,6 +54,8 @@ public class ReportService {
         public void setAssignmentTitle(String assignmentTitle) { this.assignmentTitle = assignmentTitle; }
         public int getMaxMarks() { return maxMarks; }
         public void setMaxMarks(int maxMarks) { this.maxMarks = maxMarks; }
+        public int getTerm() { return term; }
+        public void setTerm(int term) { this.term = term; }
         public Integer getMark() { return mark; }
         public void setMark(Integer mark) { this.mark = mark; }
         public Double getPercentage() { return percentage; }
@@ -67,74 +69,177 @@ public class ReportService {
                     ", courseCode='" + courseCode + '\'' +
                     ", assignmentTitle='" + assignmentTitle + '\'' +
                     ", maxMarks=" + maxMarks +
+                    ", term=" + term +
                     ", mark=" + mark +
                     ", percentage=" + percentage +
                     '}';
         }
     }
 
-    /**
-     * Load rows for one term (uses a single SQL query).
-     */
-    public ArrayList<ReportRow> termReport(int term) throws SQLException {
-        ArrayList<ReportRow> list = new ArrayList<ReportRow>();
-        UcanaccessReportDAO dao = new UcanaccessReportDAO();
+    /** Rows the driver is asked for at a time when streaming the term report. */
+    private static final int FETCH_SIZE = Integer.getInteger("sgms.report.fetchSize", 500).intValue();
 
-        try (Connection c = DB.get();
-             ResultSet rs = dao.queryTermReport(c, term)) {
+    /** Builds a {@link ReportRow} from one row of the term report query. */
+    static final RowMapper<ReportRow> TERM_ROW = new RowMapper<ReportRow>() {
+        @Override
+        public ReportRow map(ResultSet rs) throws SQLException {
+            ReportRow row = new ReportRow();
+            row.setStudentId(rs.getInt("studentId"));
 
-            while (rs.next()) {
-                ReportRow row = new ReportRow();
-                row.setStudentId(rs.getInt("studentId"));
+            String first = rs.getString("firstName");
+            String last  = rs.getString("lastName");
+            row.setFullName(first + " " + last);
 
-                String first = rs.getString("firstName");
-                String last  = rs.getString("lastName");
-                row.setFullName(first + " " + last);
+            row.setCourseCode(rs.getString("courseCode"));
+            row.setAssignmentTitle(rs.getString("title"));
+            row.setMaxMarks(rs.getInt("maxMarks"));
+            row.setTerm(rs.getInt("term"));
 
-                row.setCourseCode(rs.getString("courseCode"));
-                row.setAssignmentTitle(rs.getString("title"));
-                row.setMaxMarks(rs.getInt("maxMarks"));
+            int mark = rs.getInt("mark");
+            if (rs.wasNull()) {
+                row.setMark(null);
+            } else {
+                row.setMark(Integer.valueOf(mark));
+            }
 
-                int mark = rs.getInt("mark");
-                if (rs.wasNull()) {
-                    row.setMark(null);
-                } else {
-                    row.setMark(Integer.valueOf(mark));
-                }
+            double pct = rs.getDouble("pct");
+            if (rs.wasNull()) {
+                row.setPercentage(null);
+            } else {
+                row.setPercentage(Double.valueOf(pct));
+            }
+            return row;
+        }
+    };
 
-                double pct = rs.getDouble("pct");
-                if (rs.wasNull()) {
-                    row.setPercentage(null);
-                } else {
-                    row.setPercentage(Double.valueOf(pct));
+    /**
+     * Load rows for one term (uses a single SQL query). For large reports use
+     * {@link #openTermReport(int)} or one of the export methods instead.
+     */
+    public ArrayList<ReportRow> termReport(int term) throws SQLException {
+        final ArrayList<ReportRow> list = new ArrayList<ReportRow>();
+        UcanaccessReportDAO dao = new UcanaccessReportDAO();
+        try (Connection c = DB.get()) {
+            dao.queryTermReport(c, term, TERM_ROW, new RowCallback<ReportRow>() {
+                @Override
+                public void row(ReportRow row) {
+                    list.add(row);
                 }
+            });
+        }
+        return list;
+    }
 
-                list.add(row);
+    /**
+     * Open the term report as a cursor that reads rows as they are needed.
+     * The fetch size comes from {@code sgms.report.fetchSize} (default 500).
+     * It is only a hint: the in-process UCanAccess/HSQLDB engine ignores it
+     * and reads the whole result before the first row is returned.
+     *
+     * @param term 1..4, or 0 for every term
+     * @return an open cursor; the caller must close it
+     */
+    public TermReportCursor openTermReport(int term) throws SQLException {
+        return openTermReport(term, FETCH_SIZE);
+    }
+
+    /** Same as above with an explicit fetch size (0 = driver default). */
+    public TermReportCursor openTermReport(int term, int fetchSize) throws SQLException {
+        UcanaccessReportDAO dao = new UcanaccessReportDAO();
+        Connection c = DB.get();
+        PreparedStatement ps = null;
+        try {
+            ps = dao.prepareTermReport(c, term, fetchSize);
+            return new TermReportCursor(c, ps, ps.executeQuery());
+        } catch (SQLException ex) {
+            try {
+                if (ps != null) ps.close();
+            } finally {
+                c.close();
             }
+            throw ex;
+        }
+    }
+
+    /**
+     * Write the term report as CSV straight from the database.
+     *
+     * @param term 1..4, or 0 for every term
+     * @param out where the CSV goes (not closed)
+     * @return number of rows written
+     */
+    public int exportTermReportCsv(int term, OutputStream out) throws SQLException, IOException {
+        try (TermReportCursor rows = openTermReport(term)) {
+            return TermReportWriter.writeCsv(rows, out);
+        }
+    }
+
+    /**
+     * Write the term report as an Excel workbook (.xlsx) straight from the
+     * database.
+     *
+     * @param term 1..4, or 0 for every term
+     * @param out where the workbook goes (not closed)
+     * @return number of rows written
+     */
+    public int exportTermReportXlsx(int term, OutputStream out) throws SQLException, IOException {
+        try (TermReportCursor rows = openTermReport(term)) {
+            return TermReportWriter.writeXlsx(rows, out);
         }
-        return list;
     }
 
     /**
      * Build merge fields for one student's DOCX report card.
-     * Uses the same math as the grades table so results match.
+     * Reads only this student's marks and feedback (four queries in total).
      */
     public Map<String, String> buildReportCardData(Student s) throws Exception {
-        CourseDAO courseDAO       = new UcanaccessCourseDAO();
-        AssignmentDAO assignmentDAO = new UcanaccessAssignmentDAO();
-        GradeDAO gradeDAO         = new UcanaccessGradeDAO();
-        FeedbackDAO feedbackDAO   = new UcanaccessFeedbackDAO();
+        return buildReportCardData(s, (Set<String>) null);
+    }
+
+    /**
+     * Same as above, but only fills the given keys (e.g. the ones the
+     * template uses); null means all of them.
+     */
+    public Map<String, String> buildReportCardData(Student s, Set<String> keys) throws Exception {
+        ReportDataDAO dao = new UcanaccessReportDataDAO();
+        return buildReportCardData(s, dao.findForStudent(s.getStudentId(), s.getGradeLevel()), keys);
+    }
+
+    /**
+     * Read report card data for a whole grade once, for making many cards with
+     * {@link #buildReportCardData(Student, ReportData)}.
+     */
+    public ReportData prefetchGrade(int gradeLevel) throws Exception {
+        ReportDataDAO dao = new UcanaccessReportDataDAO();
+        return dao.findForGradeLevel(gradeLevel);
+    }
+
+    /**
+     * Build merge fields for one student from data that is already loaded
+     * (no database access). Uses the same math as the grades table so
+     * results match.
+     */
+    public Map<String, String> buildReportCardData(Student s, ReportData report) {
+        return buildReportCardData(s, report, null);
+    }
 
+    /**
+     * Same as above, but only fills the given keys; null means all of them.
+     * Courses with no key in the set are skipped without working out their
+     * marks.
+     */
+    public Map<String, String> buildReportCardData(Student s, ReportData report, Set<String> keys) {
         Map<String, String> data = new HashMap<String, String>();
-        data.put("First_Name", s.getFirstName());
-        data.put("Last_Name",  s.getLastName());
-        data.put("Grade",      String.valueOf(s.getGradeLevel()));
+        put(data, keys, "First_Name", s.getFirstName());
+        put(data, keys, "Last_Name",  s.getLastName());
+        put(data, keys, "Grade",      String.valueOf(s.getGradeLevel()));
 
         LocalDate now = LocalDate.now();
-        data.put("Year", String.valueOf(now.getYear()));
-        data.put("Date", now.toString());
+        put(data, keys, "Year", String.valueOf(now.getYear()));
+        put(data, keys, "Date", now.toString());
+        boolean wantFeedback = keys == null || keys.contains("Feedback");
 
-        List<Course> courses = courseDAO.findByGrade(s.getGradeLevel());
+        List<Course> courses = report.getCourses();
 
         // Subjects expected in the template (keeps placeholders from showing)
         String[] names = {
@@ -146,17 +251,17 @@ public class ReportService {
             String name = names[i];
             String base = name.replace(' ', '_');
             for (int t = 1; t <= 4; t++) {
-                data.put(base + "_T" + t, "");
+                put(data, keys, base + "_T" + t, "");
             }
-            data.put(base + "_Final", "");
-            data.put(base + "_Feedback", "");
+            put(data, keys, base + "_Final", "");
+            put(data, keys, base + "_Feedback", "");
             normalised.put(normalize(name), name);
         }
 
         int studentId = s.getStudentId();
         StringBuilder feedback = new StringBuilder();
 
-        // Go through the student’s courses and fill term/final values
+        // Go through the grade's courses and fill term/final values
         for (int i = 0; i < courses.size(); i++) {
             Course c = courses.get(i);
 
@@ -176,40 +281,32 @@ public class ReportService {
             }
 
             String base = name.replace(' ', '_');
+            boolean wantMarks = wantsMarks(keys, base);
+            if (!wantMarks && !wantFeedback && !wants(keys, base + "_Feedback")) {
+                continue; // nothing from this course is on the card
+            }
 
-            // Read assignments and marks for this course
-            List<Assignment> assigns = assignmentDAO.findByCourse(c.getCourseId());
-            Map<Integer, Map<Integer, Integer>> gradesByStudent =
-                    gradeDAO.findByCourse(c.getCourseId());
-
-            // Reuse the table model to calculate term averages as percentages
-            List<Student> only = new ArrayList<Student>();
-            only.add(s);
-            StudentGradesTableModel model =
-                    new StudentGradesTableModel(only, assigns, gradesByStudent);
-
-            Double[] termAvg = new Double[4];
-            for (int t = 1; t <= 4; t++) {
-                String key = base + "_T" + t;
-                Double avg = model.getTermAveragePercent(studentId, t);
-                termAvg[t - 1] = avg;
-                if (avg != null) {
-                    data.put(key, String.valueOf(Math.round(avg.doubleValue())));
+            // Term averages as percentages, then the weighted final (12.5, 25, 12.5, 50)
+            if (wantMarks) {
+                Double[] termAvg = GradeCalculationService.termPercents(
+                        report.getAssignments(c.getCourseId()), report.getMarks(), studentId);
+                for (int t = 1; t <= 4; t++) {
+                    Double avg = termAvg[t - 1];
+                    if (avg != null) {
+                        put(data, keys, base + "_T" + t, String.valueOf(Math.round(avg.doubleValue())));
+                    }
                 }
-            }
 
-            // Final = weighted by term (12.5, 25, 12.5, 50)
-            Double finalAvg = GradeCalculator.calculateFinalGrade(
-                    termAvg[0], termAvg[1], termAvg[2], termAvg[3]);
-            if (finalAvg != null) {
-                int rounded = (int) Math.round(finalAvg.doubleValue());
-                data.put(base + "_Final", String.valueOf(rounded));
-                data.put(base + "_Grade", String.valueOf(Grades.symbolFor(rounded)));
+                Double finalAvg = GradeCalculationService.finalPercent(termAvg);
+                if (finalAvg != null) {
+                    int rounded = (int) Math.round(finalAvg.doubleValue());
+                    put(data, keys, base + "_Final", String.valueOf(rounded));
+                    put(data, keys, base + "_Grade", String.valueOf(Grades.symbolFor(rounded)));
+                }
             }
 
             // Feedback note for this course (optional)
-            Map<Integer, String> fb = feedbackDAO.findByCourse(c.getCourseId());
-            String note = fb.get(studentId);
+            String note = report.getFeedback(studentId, c.getCourseId());
             if (note != null) {
                 note = note.trim();
                 if (note.length() > 0) {
@@ -217,17 +314,40 @@ public class ReportService {
                         feedback.append('\n');
                     }
                     feedback.append(note);
-                    data.put(base + "_Feedback", note);
+                    put(data, keys, base + "_Feedback", note);
                 }
             }
         }
 
-        data.put("Feedback", feedback.toString().trim());
+        put(data, keys, "Feedback", feedback.toString().trim());
         return data;
     }
 
     // --- small helpers ---
 
+    private static boolean wants(Set<String> keys, String key) {
+        return keys == null || keys.contains(key);
+    }
+
+    /** True if any term, final or grade key of the subject is wanted. */
+    private static boolean wantsMarks(Set<String> keys, String base) {
+        if (keys == null) {
+            return true;
+        }
+        for (int t = 1; t <= 4; t++) {
+            if (keys.contains(base + "_T" + t)) {
+                return true;
+            }
+        }
+        return keys.contains(base + "_Final") || keys.contains(base + "_Grade");
+    }
+
+    private static void put(Map<String, String> data, Set<String> keys, String key, String value) {
+        if (wants(keys, key)) {
+            data.put(key, value);
+        }
+    }
+
     private static String normalize(String s) {
         return s.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "");
     }
@@ -0,0 +1,86 @@
+package sgms.service;
+
+import sgms.service.ReportService.ReportRow;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads the term report one row at a time instead of building a list of
+ * {@link ReportRow}s. The in-process UCanAccess/HSQLDB engine still holds the
+ * whole result set in memory, so this saves the row objects, not the
+ * driver's copy. It holds a database connection until it is closed, so
+ * always use it in try-with-resources:
+ * <pre>
+ * try (TermReportCursor rows = service.openTermReport(0)) {
+ *     while (rows.next()) {
+ *         ReportRow row = rows.getRow();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public final class TermReportCursor implements AutoCloseable {
+
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private final ResultSet rs;
+    private ReportRow row;
+    private int count;
+    private boolean closed;
+
+    TermReportCursor(Connection connection, PreparedStatement statement, ResultSet rs) {
+        this.connection = connection;
+        this.statement = statement;
+        this.rs = rs;
+    }
+
+    /**
+     * Move to the next row.
+     *
+     * @return false when there are no more rows
+     * @throws SQLException if the read fails
+     */
+    public boolean next() throws SQLException {
+        if (closed || !rs.next()) {
+            row = null;
+            return false;
+        }
+        row = ReportService.TERM_ROW.map(rs);
+        count++;
+        return true;
+    }
+
+    /** The current row (a new object for every row, so it can be kept). */
+    public ReportRow getRow() {
+        if (row == null) {
+            throw new IllegalStateException("No current row; call next() first.");
+        }
+        return row;
+    }
+
+    /** Rows read so far. */
+    public int getRowCount() {
+        return count;
+    }
+
+    /** Close the query and give the connection back. Safe to call twice. */
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            rs.close();
+        } finally {
+            try {
+                statement.close();
+            } finally {
+                connection.close();
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package sgms.ui;
 
+import sgms.model.AttendanceBitmap;
 import sgms.model.Student;
 
 import java.time.LocalDate;
@@ -12,19 +13,26 @@ import java.util.Map;
 import javax.swing.table.AbstractTableModel;
 
 /**
- * Table model for attendance over one school week (Mon–Fri).
+ * Table model for attendance over one school week (Mon–Fri), plus each
+ * student's attendance rate over the whole loaded register (e.g. the year
+ * so far). Cells are read from an {@link AttendanceBitmap}, so the rate is a
+ * popcount and stays live while the week is edited.
  */
 public class AttendanceTableModel extends AbstractTableModel {
 
     private final List<Student> students;
     private final LocalDate[] weekDays; // Monday..Friday
-    // studentId -> (date -> present)
-    private final Map<Integer, Map<LocalDate, Boolean>> attendance;
+    private final AttendanceBitmap register; // row = student row
+    private final int[] weekIndex;           // weekday -> day index in register, or -1
     // only the cells changed in the UI, for saving
     private final Map<Integer, Map<LocalDate, Boolean>> changes = new HashMap<Integer, Map<LocalDate, Boolean>>();
 
-    public AttendanceTableModel(List<Student> students, LocalDate startOfWeek,
-                                Map<Integer, Map<LocalDate, Boolean>> attendance) {
+    /**
+     * @param students rows
+     * @param startOfWeek Monday of the week shown
+     * @param register attendance records; may cover more than the week
+     */
+    public AttendanceTableModel(List<Student> students, LocalDate startOfWeek, AttendanceBitmap register) {
         this.students = new ArrayList<Student>(students);
 
         this.weekDays = new LocalDate[5];
@@ -32,19 +40,25 @@ public class AttendanceTableModel extends AbstractTableModel {
             this.weekDays[i] = startOfWeek.plusDays(i);
         }
 
-        // make a copy per student; avoid getOrDefault/emptyMap for simplicity
-        this.attendance = new HashMap<Integer, Map<LocalDate, Boolean>>();
-        for (int i = 0; i < students.size(); i++) {
-            Student s = students.get(i);
-            Map<LocalDate, Boolean> src = attendance != null
-                    ? attendance.get(Integer.valueOf(s.getStudentId()))
-                    : null;
-            Map<LocalDate, Boolean> copy = new HashMap<LocalDate, Boolean>();
-            if (src != null) {
-                copy.putAll(src);
-            }
-            this.attendance.put(Integer.valueOf(s.getStudentId()), copy);
+        int[] ids = new int[this.students.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = this.students.get(i).getStudentId();
         }
+        AttendanceBitmap src = (register != null)
+                ? register
+                : new AttendanceBitmap(null, weekDays[0], weekDays[4]);
+        this.register = src.reshape(ids);
+
+        this.weekIndex = new int[5];
+        for (int i = 0; i < 5; i++) {
+            this.weekIndex[i] = this.register.dayIndexOf(weekDays[i]);
+        }
+    }
+
+    /** Week only, from the studentId -> (date -> present) layout. */
+    public AttendanceTableModel(List<Student> students, LocalDate startOfWeek,
+                                Map<Integer, Map<LocalDate, Boolean>> attendance) {
+        this(students, startOfWeek, toBitmap(startOfWeek, attendance));
     }
 
     // Backward-compatible constructor (DAO is ignored)
@@ -54,6 +68,23 @@ public class AttendanceTableModel extends AbstractTableModel {
         this(students, startOfWeek, attendance);
     }
 
+    private static AttendanceBitmap toBitmap(LocalDate startOfWeek, Map<Integer, Map<LocalDate, Boolean>> attendance) {
+        AttendanceBitmap.Builder b = new AttendanceBitmap.Builder(startOfWeek, startOfWeek.plusDays(4));
+        if (attendance != null) {
+            for (Map.Entry<Integer, Map<LocalDate, Boolean>> e : attendance.entrySet()) {
+                if (e.getKey() == null || e.getValue() == null) {
+                    continue;
+                }
+                for (Map.Entry<LocalDate, Boolean> d : e.getValue().entrySet()) {
+                    if (d.getValue() != null) {
+                        b.add(e.getKey().intValue(), d.getKey(), d.getValue().booleanValue());
+                    }
+                }
+            }
+        }
+        return b.build();
+    }
+
     @Override
     public int getRowCount() {
         return students.size();
@@ -61,12 +92,13 @@ public class AttendanceTableModel extends AbstractTableModel {
 
     @Override
     public int getColumnCount() {
-        return 1 + weekDays.length;
+        return 2 + weekDays.length;
     }
 
     @Override
     public String getColumnName(int column) {
         if (column == 0) return "Student";
+        if (column == rateColumn()) return "Attendance %";
         LocalDate d = weekDays[column - 1];
         String day = d.getDayOfWeek().getDisplayName(TextStyle.SHORT, Locale.getDefault());
         return day + " " + d.getDayOfMonth();
@@ -74,7 +106,9 @@ public class AttendanceTableModel extends AbstractTableModel {
 
     @Override
     public Class<?> getColumnClass(int columnIndex) {
-        return columnIndex == 0 ? String.class : Boolean.class;
+        if (columnIndex == 0) return String.class;
+        if (columnIndex == rateColumn()) return Integer.class;
+        return Boolean.class;
     }
 
     @Override
@@ -83,33 +117,31 @@ public class AttendanceTableModel extends AbstractTableModel {
         if (columnIndex == 0) {
             return s.getLastName() + ", " + s.getFirstName();
         }
-        LocalDate d = weekDays[columnIndex - 1];
-        Map<LocalDate, Boolean> perStudent = attendance.get(Integer.valueOf(s.getStudentId()));
-        if (perStudent == null) return Boolean.FALSE;
-        Boolean val = perStudent.get(d);
-        return val != null ? val : Boolean.FALSE;
+        if (columnIndex == rateColumn()) {
+            Double rate = register.ratePercent(rowIndex);
+            return (rate == null) ? null : Integer.valueOf((int) Math.round(rate.doubleValue()));
+        }
+        int day = weekIndex[columnIndex - 1];
+        return Boolean.valueOf(day >= 0 && register.isPresent(rowIndex, day));
     }
 
     @Override
     public boolean isCellEditable(int rowIndex, int columnIndex) {
-        return columnIndex > 0;
+        return columnIndex > 0 && columnIndex < rateColumn() && weekIndex[columnIndex - 1] >= 0;
     }
 
     @Override
     public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
+        if (!isCellEditable(rowIndex, columnIndex)) {
+            return;
+        }
         Student s = students.get(rowIndex);
         LocalDate d = weekDays[columnIndex - 1];
         boolean present = Boolean.TRUE.equals(aValue);
 
-        Integer key = Integer.valueOf(s.getStudentId());
-
-        Map<LocalDate, Boolean> perStudent = attendance.get(key);
-        if (perStudent == null) {
-            perStudent = new HashMap<LocalDate, Boolean>();
-            attendance.put(key, perStudent);
-        }
-        perStudent.put(d, Boolean.valueOf(present));
+        register.set(rowIndex, weekIndex[columnIndex - 1], present);
 
+        Integer key = Integer.valueOf(s.getStudentId());
         Map<LocalDate, Boolean> changed = changes.get(key);
         if (changed == null) {
             changed = new HashMap<LocalDate, Boolean>();
@@ -118,6 +150,7 @@ public class AttendanceTableModel extends AbstractTableModel {
         changed.put(d, Boolean.valueOf(present));
 
         fireTableCellUpdated(rowIndex, columnIndex);
+        fireTableCellUpdated(rowIndex, rateColumn());
     }
 
     /** Returns only the cells changed by the user. */
@@ -133,4 +166,13 @@ public class AttendanceTableModel extends AbstractTableModel {
     public LocalDate[] getWeekDays() {
         return weekDays;
     }
+
+    /** Attendance records behind the table (rows follow the table rows). */
+    public AttendanceBitmap getRegister() {
+        return register;
+    }
+
+    private int rateColumn() {
+        return 1 + weekDays.length;
+    }
 }
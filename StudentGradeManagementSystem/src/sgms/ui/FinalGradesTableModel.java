@@ -1,33 +1,63 @@
 package sgms.ui;
 
-import sgms.model.Student;
+import sgms.model.AttendanceBitmap;
+import sgms.model.FinalGrade;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import javax.swing.table.AbstractTableModel;
 
 /**
  * Final grades view for a selected grade across all courses.
- * Columns: First Name | Last Name | T1 | T2 | T3 | T4 | Final %
- * Reads data from StudentGradesTableModel and shows percentages.
+ * Columns: First Name | Last Name | T1 | T2 | T3 | T4 | Final % | Attendance %
+ * Shows the rows stored in tblFinalGrades (see FinalGradeDAO).
  */
 public class FinalGradesTableModel extends AbstractTableModel {
 
     private static final String[] COLS = {
-            "First Name", "Last Name", "T1", "T2", "T3", "T4", "Final %"
+            "First Name", "Last Name", "T1", "T2", "T3", "T4", "Final %", "Attendance %"
     };
 
-    private final List<Student> students;          // rows
-    private final StudentGradesTableModel backing; // provides term/final % helpers
+    private final List<FinalGrade> stored; // rows read from tblFinalGrades
+    private int[] attendance;              // row -> rounded %, or -1 if unknown
 
-    public FinalGradesTableModel(List<Student> students, StudentGradesTableModel backing) {
-        this.students = (students == null) ? new ArrayList<Student>() : new ArrayList<Student>(students);
-        this.backing = backing;
+    /** Rows that are already worked out (e.g. from FinalGradeDAO). */
+    public FinalGradesTableModel(List<FinalGrade> rows) {
+        this.stored = (rows == null) ? new ArrayList<FinalGrade>() : new ArrayList<FinalGrade>(rows);
+        this.attendance = blankAttendance(this.stored.size());
+    }
+
+    /**
+     * Fill the Attendance % column from course registers (e.g. every course
+     * in the grade). Each row is worked out once here.
+     */
+    public void setAttendance(Collection<AttendanceBitmap> registers, LocalDate from, LocalDate to) {
+        int[] out = blankAttendance(getRowCount());
+        if (registers != null) {
+            for (int i = 0; i < out.length; i++) {
+                int studentId = stored.get(i).getStudentId();
+                Double rate = AttendanceBitmap.ratePercent(registers, studentId, from, to);
+                if (rate != null) {
+                    out[i] = (int) Math.round(rate.doubleValue());
+                }
+            }
+        }
+        attendance = out;
+        fireTableDataChanged();
+    }
+
+    private static int[] blankAttendance(int rows) {
+        int[] a = new int[rows];
+        Arrays.fill(a, -1);
+        return a;
     }
 
     @Override
     public int getRowCount() {
-        return students.size();
+        return stored.size();
     }
 
     @Override
@@ -54,19 +84,19 @@ public class FinalGradesTableModel extends AbstractTableModel {
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        Student s = students.get(rowIndex);
-        if (columnIndex == 0) return s.getFirstName();
-        if (columnIndex == 1) return s.getLastName();
-
-        // T1..T4
-        if (columnIndex >= 2 && columnIndex <= 5) {
-            int term = (columnIndex - 2) + 1; // 2->1, 3->2, 4->3, 5->4
-            Double t = (backing == null) ? null : backing.getTermAveragePercent(s.getStudentId(), term);
-            return (t == null) ? null : Integer.valueOf((int) Math.round(t.doubleValue()));
+        if (columnIndex == 7) {
+            int pct = attendance[rowIndex];
+            return (pct < 0) ? null : Integer.valueOf(pct);
+        }
+        FinalGrade f = stored.get(rowIndex);
+        switch (columnIndex) {
+            case 0: return f.getFirstName();
+            case 1: return f.getLastName();
+            case 2: return f.getTerm1();
+            case 3: return f.getTerm2();
+            case 4: return f.getTerm3();
+            case 5: return f.getTerm4();
+            default: return f.getFinalGrade();
         }
-
-        // Final %
-        Double fin = (backing == null) ? null : backing.getFinalPercent(s.getStudentId());
-        return (fin == null) ? null : Integer.valueOf((int) Math.round(fin.doubleValue()));
     }
 }
@@ -0,0 +1,151 @@
+package sgms.ui;
+
+import java.awt.Component;
+import java.awt.Cursor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+/**
+ * Loads the data for the main grid off the Swing event thread.
+ * <p>
+ * Each {@link #load} call starts a new request and supersedes the one before
+ * it. The fetch runs on a virtual thread; only the result of the latest
+ * request is handed to the UI (on the event thread), older results are
+ * dropped. A superseded request that has not started yet is skipped.
+ * One that is already reading is left to finish and its result thrown away:
+ * the thread is never interrupted, because an interrupt closes the database
+ * file channel under UCanAccess.
+ * <p>
+ * While the latest request is running the grid shows a wait cursor, but the
+ * window stays usable, so the user can pick something else straight away.
+ * All methods except the fetch itself must be called on the event thread.
+ */
+final class GridLoader {
+
+    /** Reads the data; runs on a background thread, must not touch Swing. */
+    interface Fetch<T> {
+        T fetch() throws Exception;
+    }
+
+    /** Shows the data; runs on the event thread. */
+    interface Apply<T> {
+        void apply(T data) throws Exception;
+    }
+
+    private final Component owner;
+    private final Component busyTarget;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong latest = new AtomicLong();
+
+    // event thread only
+    private Future<?> running;
+    private Runnable pending;
+
+    /**
+     * @param owner parent for error dialogs
+     * @param busyTarget component that shows the wait cursor
+     */
+    GridLoader(Component owner, Component busyTarget) {
+        this.owner = owner;
+        this.busyTarget = busyTarget;
+    }
+
+    /**
+     * Start a request, superseding any request still in flight.
+     *
+     * @param again issues the same request again (e.g. with a new combo
+     *              value); see {@link #reloadPending()}
+     * @param what shown in the error message ("Unable to load " + what)
+     * @param fetch reads the data in the background
+     * @param apply puts the data into the grid if this is still the latest request
+     */
+    <T> void load(Runnable again, final String what, final Fetch<T> fetch, final Apply<T> apply) {
+        final long id = supersede();
+        pending = again;
+        busyTarget.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+
+        running = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (id != latest.get()) {
+                    return; // superseded while queued
+                }
+                T data = null;
+                Exception error = null;
+                try {
+                    data = fetch.fetch();
+                } catch (Exception ex) {
+                    error = ex;
+                }
+                final T result = data;
+                final Exception failure = error;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        finish(id, what, result, failure, apply);
+                    }
+                });
+            }
+        });
+    }
+
+    /** Drop whatever is in flight, e.g. before the grid is filled some other way. */
+    void cancel() {
+        supersede();
+        done();
+    }
+
+    /**
+     * If a request is still in flight, issue it again and return true. The
+     * view is decided when a request starts, but the grid models are only
+     * set when it finishes, so a combo change or a reload in between has to
+     * go through here.
+     */
+    boolean reloadPending() {
+        if (pending == null) {
+            return false;
+        }
+        pending.run();
+        return true;
+    }
+
+    boolean isLoading() {
+        return pending != null;
+    }
+
+    private long supersede() {
+        if (running != null) {
+            running.cancel(false); // never interrupt a database read
+            running = null;
+        }
+        return latest.incrementAndGet();
+    }
+
+    private <T> void finish(long id, String what, T data, Exception error, Apply<T> apply) {
+        if (id != latest.get()) {
+            return; // a newer request owns the grid
+        }
+        done();
+        if (error == null) {
+            try {
+                apply.apply(data);
+            } catch (Exception ex) {
+                error = ex;
+            }
+        }
+        if (error != null) {
+            JOptionPane.showMessageDialog(owner, "Unable to load " + what + ": " + error.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void done() {
+        running = null;
+        pending = null;
+        busyTarget.setCursor(Cursor.getDefaultCursor());
+    }
+}
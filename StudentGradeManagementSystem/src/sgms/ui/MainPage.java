@@ -9,19 +9,27 @@ import javax.swing.JOptionPane;
 import sgms.dao.DB;
 import sgms.dao.AssignmentDAO;
 import sgms.dao.GradeDAO;
+import sgms.dao.FinalGradeDAO;
 import sgms.dao.StudentDAO;
 import sgms.dao.AttendanceDAO;
 import sgms.dao.FeedbackDAO;
 import sgms.dao.CourseDAO;
+import sgms.dao.impl.CachingAssignmentDAO;
+import sgms.dao.impl.CachingCourseDAO;
+import sgms.dao.impl.CachingStudentDAO;
 import sgms.dao.impl.UcanaccessAssignmentDAO;
 import sgms.dao.impl.UcanaccessGradeDAO;
+import sgms.dao.impl.UcanaccessFinalGradeDAO;
 import sgms.dao.impl.UcanaccessStudentDAO;
 import sgms.dao.impl.UcanaccessAttendanceDAO;
 import sgms.dao.impl.UcanaccessFeedbackDAO;
 import sgms.dao.impl.UcanaccessCourseDAO;
 import sgms.model.Assignment;
 import sgms.model.Course;
+import sgms.model.GradeMatrix;
+import sgms.model.GradeSaveResult;
 import sgms.model.Student;
+import sgms.service.ReportCardBatchService;
 import sgms.service.ValidationService;
 
 /**
@@ -31,8 +39,8 @@ import sgms.service.ValidationService;
  */
 public class MainPage extends javax.swing.JFrame {
 
-    private final StudentDAO studentDAO = new UcanaccessStudentDAO();
-    private final CourseDAO courseDAO = new UcanaccessCourseDAO();
+    private final StudentDAO studentDAO = new CachingStudentDAO(new UcanaccessStudentDAO());
+    private final CourseDAO courseDAO = new CachingCourseDAO(new UcanaccessCourseDAO());
     private StudentTableModel studentTableModel;
     private StudentSelectionTableModel studentSelectionModel;
     private StudentGradesTableModel studentGradesModel;
@@ -53,8 +61,13 @@ public class MainPage extends javax.swing.JFrame {
     private boolean selectionMode = false;
     private int attendanceTodayColumn = -1;
     private final FeedbackDAO feedbackDAO = new UcanaccessFeedbackDAO();
-    private final AssignmentDAO assignmentDAO = new UcanaccessAssignmentDAO();
+    private final AttendanceDAO attendanceDAO = new UcanaccessAttendanceDAO();
+    private final AssignmentDAO assignmentDAO = new CachingAssignmentDAO(new UcanaccessAssignmentDAO());
     private final GradeDAO gradeDAO = new UcanaccessGradeDAO();
+    private final FinalGradeDAO finalGradeDAO = new UcanaccessFinalGradeDAO();
+    private final sgms.service.LearnerSearchService learnerSearch = new sgms.service.LearnerSearchService(studentDAO);
+    private int learnerSearchRun; // only the newest school-wide search shows its result
+    private final GridLoader gridLoader;
     private javax.swing.JButton lastActionButton;
 
     private void setActiveButton(javax.swing.JButton active) {
@@ -159,6 +172,13 @@ public class MainPage extends javax.swing.JFrame {
                             c.setBackground(java.awt.Color.RED);
                             colored = true;
                         }
+                    } else if (studentGradesModel != null) {
+                        int modelRow = convertRowIndexToModel(row);
+                        int modelCol = convertColumnIndexToModel(column);
+                        if (studentGradesModel.isDirtyAt(modelRow, modelCol) && !isRowSelected(row)) {
+                            c.setBackground(new java.awt.Color(255, 220, 160)); // unsaved mark
+                            colored = true;
+                        }
                     } else if (studentTableModel != null && studentDeleteMode) {
                         int modelRow = convertRowIndexToModel(row);
                         if (studentTableModel.isMarkedForDeletion(modelRow) && !isRowSelected(row)) {
@@ -181,6 +201,7 @@ public class MainPage extends javax.swing.JFrame {
 
         jScrollPane.setViewportView(jTable);
         jTable.setModel(new javax.swing.table.DefaultTableModel());
+        gridLoader = new GridLoader(this, jScrollPane); // grids are read in the background
         jTable.setAutoCreateRowSorter(true);
         jTable.getTableHeader().setFont(jTable.getTableHeader().getFont().deriveFont(java.awt.Font.BOLD));
 
@@ -952,7 +973,9 @@ public class MainPage extends javax.swing.JFrame {
     }//GEN-LAST:event_jButtonDeleteActionPerformed
 
     private void jComboBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jComboBoxActionPerformed
-        if (studentTableModel != null) {
+        if (gridLoader.reloadPending()) {
+            // a view is still loading: ask again with the new selection
+        } else if (studentTableModel != null) {
             loadStudentsForSelectedCourse();
         } else if (studentGradesModel != null) {
             loadStudentGradesForSelectedCourse();
@@ -970,7 +993,7 @@ public class MainPage extends javax.swing.JFrame {
     }//GEN-LAST:event_jComboBoxActionPerformed
 
     private void jTextFieldSearchActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jTextFieldSearchActionPerformed
-        sgms.util.SearchUtil.applySmartSearch(jTable, jTextFieldSearch.getText());
+        searchTable();
     }//GEN-LAST:event_jTextFieldSearchActionPerformed
 
     private void jButtonHelpActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonHelpActionPerformed
@@ -1023,6 +1046,8 @@ public class MainPage extends javax.swing.JFrame {
     }//GEN-LAST:event_jButtonHelpActionPerformed
 
     private void jButtonLogoutActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonLogoutActionPerformed
+        gridLoader.cancel();
+        learnerSearch.close();
         LoginPage loginPage = new LoginPage();
         loginPage.setVisible(true);
         dispose();
@@ -1078,6 +1103,57 @@ public class MainPage extends javax.swing.JFrame {
             return;
         }
 
+        // ───────────────── STUDENT GRADES ─────────────────
+        if (studentGradesModel != null) {
+            try {
+                if (!studentGradesModel.hasChanges()) {
+                    return; // nothing typed since the last load/save
+                }
+                // only the edited cells, in one transaction
+                List<GradeSaveResult> results = gradeDAO.upsertAll(studentGradesModel.getChanges());
+
+                int failed = 0;
+                String firstError = null;
+                for (GradeSaveResult r : results) {
+                    if (r.isFailed()) {
+                        failed++;
+                        if (firstError == null) {
+                            firstError = r.getError();
+                        }
+                    }
+                }
+                if (failed > 0) {
+                    // saved cells go clean; failed ones stay highlighted to fix
+                    studentGradesModel.markSaved(results);
+                    JOptionPane.showMessageDialog(this, failed + " mark(s) could not be saved: " + firstError,
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                reloadCurrentGrid();
+            } catch (Exception ex) {
+                JOptionPane.showMessageDialog(this, "Unable to save grades: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            return;
+        }
+
+        // ───────────────── ATTENDANCE ─────────────────
+        if (attendanceModel != null) {
+            try {
+                if (attendanceModel.getChanges().isEmpty()) {
+                    return;
+                }
+                // the whole register in one transaction
+                attendanceDAO.upsertAll(getSelectedCourseId(), attendanceModel.getChanges());
+                attendanceModel.clearChanges();
+                reloadCurrentGrid();
+            } catch (Exception ex) {
+                JOptionPane.showMessageDialog(this, "Unable to save attendance: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            return;
+        }
+
         // ───────────────── COURSES ─────────────────
         if (courseModel != null) {
             try {
@@ -1298,7 +1374,7 @@ public class MainPage extends javax.swing.JFrame {
     }//GEN-LAST:event_jButtonEditActionPerformed
 
     private void jButtonSearchActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonSearchActionPerformed
-        sgms.util.SearchUtil.applySmartSearch(jTable, jTextFieldSearch.getText());
+        searchTable();
     }//GEN-LAST:event_jButtonSearchActionPerformed
 
     private void jButtonViewFinalGradesActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonViewFinalGradesActionPerformed
@@ -1437,6 +1513,25 @@ public class MainPage extends javax.swing.JFrame {
     }//GEN-LAST:event_jButtonManageAssignmentsActionPerformed
 
     private void jButtonCreateReportCardActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonCreateReportCardActionPerformed
+        // Batch: a whole grade (Final Grades view) or a whole course (no row picked)
+        try {
+            if (finalGradesModel != null) {
+                int grade = getSelectedGradeLevel();
+                createReportCardBatch(studentDAO.findByGradeLevel(grade), "Grade " + grade);
+                return;
+            }
+            if (studentTableModel != null && !selectionMode && jTable.getSelectedRow() < 0
+                    && getSelectedCourseId() > 0) {
+                createReportCardBatch(studentDAO.findByCourse(getSelectedCourseId()),
+                        String.valueOf(jComboBox.getSelectedItem()));
+                return;
+            }
+        } catch (Exception ex) {
+            JOptionPane.showMessageDialog(this, "Unable to load students: " + ex.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
         final Student selected = getSelectedStudent();
         if (selected == null) {
             return; // no row selected
@@ -1474,6 +1569,202 @@ public class MainPage extends javax.swing.JFrame {
         }.execute();
     }//GEN-LAST:event_jButtonCreateReportCardActionPerformed
 
+    /**
+     * Asks for a folder and writes one report card per student into it, with
+     * a progress dialog that can cancel the run.
+     */
+    private void createReportCardBatch(final List<Student> students, String label) {
+        if (students == null || students.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "There are no students in " + label + ".");
+            return;
+        }
+        int answer = JOptionPane.showConfirmDialog(this,
+                "Create " + students.size() + " report cards for " + label + "?",
+                "Report Cards", JOptionPane.OK_CANCEL_OPTION);
+        if (answer != JOptionPane.OK_OPTION) {
+            return;
+        }
+
+        Object[] options = {"Separate files", "One document"};
+        int layout = JOptionPane.showOptionDialog(this,
+                "Save one file per student, or all cards in one document for printing?",
+                "Report Cards", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE,
+                null, options, options[0]);
+        if (layout == 1) {
+            createMergedReportCard(students, label);
+            return;
+        }
+        if (layout != 0) {
+            return;
+        }
+
+        javax.swing.JFileChooser chooser = new javax.swing.JFileChooser();
+        chooser.setDialogTitle("Save report cards to");
+        chooser.setFileSelectionMode(javax.swing.JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showSaveDialog(this) != javax.swing.JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        final java.nio.file.Path dir = chooser.getSelectedFile().toPath();
+
+        runReportCardBatch(label, students.size(), new ReportCardBatch() {
+            @Override
+            public ReportCardBatchService.Result run(ReportCardBatchService service,
+                                                     ReportCardBatchService.Listener listener) throws Exception {
+                return service.run(students, dir, listener);
+            }
+
+            @Override
+            public void finished(ReportCardBatchService.Result r) throws Exception {
+                StringBuilder msg = new StringBuilder();
+                msg.append(String.format("Created %d report cards in %.1f s (%.1f cards/s).",
+                        r.getFiles().size(), r.getElapsedMillis() / 1000.0, r.getCardsPerSecond()));
+                if (!r.getFailures().isEmpty()) {
+                    msg.append("\n\n").append(r.getFailures().size()).append(" failed:");
+                    appendFailures(msg, r.getFailures());
+                }
+                JOptionPane.showMessageDialog(MainPage.this, msg.toString(), "Report Cards",
+                        r.getFailures().isEmpty() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+                if (!r.getFiles().isEmpty()) {
+                    sgms.util.ReportCardGenerator.openFile(dir.toFile());
+                }
+            }
+        });
+    }
+
+    /**
+     * Asks for a file name and writes every student's report card into one
+     * document, each card on its own page.
+     */
+    private void createMergedReportCard(final List<Student> students, String label) {
+        javax.swing.JFileChooser chooser = new javax.swing.JFileChooser();
+        chooser.setDialogTitle("Save report cards as");
+        chooser.setSelectedFile(new java.io.File(label.replaceAll("[^A-Za-z0-9_ -]", "_") + ".docx"));
+        if (chooser.showSaveDialog(this) != javax.swing.JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        java.io.File chosen = chooser.getSelectedFile();
+        if (!chosen.getName().toLowerCase().endsWith(".docx")) {
+            chosen = new java.io.File(chosen.getParentFile(), chosen.getName() + ".docx");
+        }
+        final java.nio.file.Path file = chosen.toPath();
+
+        runReportCardBatch(label, students.size(), new ReportCardBatch() {
+            @Override
+            public ReportCardBatchService.Result run(ReportCardBatchService service,
+                                                     ReportCardBatchService.Listener listener) throws Exception {
+                return service.runMerged(students, file, listener);
+            }
+
+            @Override
+            public void finished(ReportCardBatchService.Result r) throws Exception {
+                if (!r.getFailures().isEmpty()) {
+                    StringBuilder msg = new StringBuilder();
+                    msg.append(r.getFailures().size()).append(" report cards were left out:");
+                    appendFailures(msg, r.getFailures());
+                    JOptionPane.showMessageDialog(MainPage.this, msg.toString(), "Report Cards",
+                            JOptionPane.WARNING_MESSAGE);
+                }
+                if (!r.getFiles().isEmpty()) {
+                    sgms.util.ReportCardGenerator.openFile(r.getFiles().get(0));
+                }
+            }
+        });
+    }
+
+    /** What differs between report card batches: the service call and what to do with its result. */
+    private interface ReportCardBatch {
+        ReportCardBatchService.Result run(ReportCardBatchService service,
+                                          ReportCardBatchService.Listener listener) throws Exception;
+
+        /** Called on the event thread when the batch was not cancelled. */
+        void finished(ReportCardBatchService.Result result) throws Exception;
+    }
+
+    /**
+     * Runs a report card batch in the background behind a progress dialog.
+     * Cancel sets a flag the batch checks between cards; the worker thread is
+     * not interrupted (an interrupt closes the database file channel under
+     * UCanAccess), and the batch returns once it has stopped writing.
+     */
+    private void runReportCardBatch(String label, int total, final ReportCardBatch batch) {
+        final javax.swing.ProgressMonitor monitor = new javax.swing.ProgressMonitor(
+                this, "Creating report cards for " + label, "", 0, total);
+        monitor.setMillisToDecideToPopup(0);
+        monitor.setMillisToPopup(0);
+        jButtonCreateReportCard.setEnabled(false);
+
+        // set on the event thread, read by the batch's worker threads
+        final java.util.concurrent.atomic.AtomicBoolean stop = new java.util.concurrent.atomic.AtomicBoolean();
+        final javax.swing.Timer cancelWatch = new javax.swing.Timer(200, new java.awt.event.ActionListener() {
+            @Override
+            public void actionPerformed(java.awt.event.ActionEvent e) {
+                if (monitor.isCanceled()) {
+                    stop.set(true);
+                }
+            }
+        });
+        cancelWatch.start();
+
+        new javax.swing.SwingWorker<ReportCardBatchService.Result, ReportCardBatchService.Progress>() {
+            @Override
+            protected ReportCardBatchService.Result doInBackground() throws Exception {
+                return batch.run(new ReportCardBatchService(), new ReportCardBatchService.Listener() {
+                    @Override
+                    public void progress(ReportCardBatchService.Progress p) {
+                        publish(p);
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return stop.get();
+                    }
+                });
+            }
+
+            @Override
+            protected void process(List<ReportCardBatchService.Progress> chunks) {
+                ReportCardBatchService.Progress p = chunks.get(chunks.size() - 1);
+                monitor.setProgress(p.getDone());
+                monitor.setNote(String.format("%d of %d (%.1f cards/s, %d failed)",
+                        p.getDone(), p.getTotal(), p.getCardsPerSecond(), p.getFailed()));
+            }
+
+            @Override
+            protected void done() {
+                cancelWatch.stop();
+                monitor.close();
+                jButtonCreateReportCard.setEnabled(true);
+                try {
+                    ReportCardBatchService.Result r = get();
+                    if (r.isCancelled()) {
+                        // the batch has stopped writing by now
+                        JOptionPane.showMessageDialog(MainPage.this, "Report cards cancelled ("
+                                + r.getFiles().size() + " files were already saved).");
+                        return;
+                    }
+                    batch.finished(r);
+                } catch (Exception ex) {
+                    JOptionPane.showMessageDialog(MainPage.this,
+                            "Unable to create report cards: " + ex.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    /** Adds up to ten failed students, one per line. */
+    private static void appendFailures(StringBuilder msg, List<ReportCardBatchService.Failure> failed) {
+        for (int i = 0; i < failed.size() && i < 10; i++) {
+            ReportCardBatchService.Failure f = failed.get(i);
+            msg.append("\n").append(f.getStudent().getLastName()).append(", ")
+                    .append(f.getStudent().getFirstName())
+                    .append(" (").append(f.getStage()).append("): ").append(f.getMessage());
+        }
+        if (failed.size() > 10) {
+            msg.append("\n...");
+        }
+    }
+
     /**
      * @param args the command line arguments
      */
@@ -1651,75 +1942,87 @@ public class MainPage extends javax.swing.JFrame {
      * Courses table.
      */
     private void loadCoursesForSelectedGrade() {
-        try {
-            // 1) Read grade from combo and fetch matching courses
-            int grade = getSelectedGradeLevel();
-            List<Course> courses = courseDAO.findByGrade(grade);
-
-            // 2) Build and attach the table model
-            courseModel = new CourseTableModel(courses);
-            jTable.setModel(courseModel);
-
-            // 3) Enable sorting for this model
-            jTable.setRowSorter(new javax.swing.table.TableRowSorter<javax.swing.table.TableModel>(courseModel));
-
-            // 4) Left-align table header text (only if the default renderer is a DefaultTableCellRenderer)
-            java.awt.Component hdrRend = jTable.getTableHeader().getDefaultRenderer()
-                    .getTableCellRendererComponent(jTable, "", false, false, -1, -1);
-            if (hdrRend instanceof javax.swing.table.DefaultTableCellRenderer) {
-                ((javax.swing.table.DefaultTableCellRenderer) jTable.getTableHeader().getDefaultRenderer())
-                        .setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+        // 1) Read grade from combo; the courses are fetched in the background
+        final int grade = getSelectedGradeLevel();
+        gridLoader.load(new Runnable() {
+            @Override
+            public void run() {
+                loadCoursesForSelectedGrade();
             }
+        }, "courses", new GridLoader.Fetch<CourseTableModel>() {
+            @Override
+            public CourseTableModel fetch() throws Exception {
+                return new CourseTableModel(courseDAO.findByGrade(grade));
+            }
+        }, new GridLoader.Apply<CourseTableModel>() {
+            @Override
+            public void apply(CourseTableModel model) {
+                showCourses(model);
+            }
+        });
+    }
 
-            // 5) Editors/renderers: left-aligned checkbox for Boolean; left-aligned text for others
-            javax.swing.JCheckBox editorCheckBox = new javax.swing.JCheckBox();
-            editorCheckBox.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
-            jTable.setDefaultEditor(Boolean.class, new javax.swing.DefaultCellEditor(editorCheckBox));
-
-            for (int i = 0; i < jTable.getColumnCount(); i++) {
-                javax.swing.table.TableColumn column = jTable.getColumnModel().getColumn(i);
-                if (jTable.getColumnClass(i) == Boolean.class) {
-                    column.setCellRenderer(new javax.swing.table.TableCellRenderer() {
-                        final javax.swing.JCheckBox cb = new javax.swing.JCheckBox();
-
-                        {
-                            cb.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
-                            cb.setOpaque(true);
-                        }
+    /**
+     * Attaches fetched courses to the Manage Courses table.
+     */
+    private void showCourses(CourseTableModel model) {
+        // 2) Attach the table model
+        courseModel = model;
+        jTable.setModel(courseModel);
+
+        // 3) Enable sorting for this model
+        jTable.setRowSorter(new javax.swing.table.TableRowSorter<javax.swing.table.TableModel>(courseModel));
+
+        // 4) Left-align table header text (only if the default renderer is a DefaultTableCellRenderer)
+        java.awt.Component hdrRend = jTable.getTableHeader().getDefaultRenderer()
+                .getTableCellRendererComponent(jTable, "", false, false, -1, -1);
+        if (hdrRend instanceof javax.swing.table.DefaultTableCellRenderer) {
+            ((javax.swing.table.DefaultTableCellRenderer) jTable.getTableHeader().getDefaultRenderer())
+                    .setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+        }
+
+        // 5) Editors/renderers: left-aligned checkbox for Boolean; left-aligned text for others
+        javax.swing.JCheckBox editorCheckBox = new javax.swing.JCheckBox();
+        editorCheckBox.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+        jTable.setDefaultEditor(Boolean.class, new javax.swing.DefaultCellEditor(editorCheckBox));
+
+        for (int i = 0; i < jTable.getColumnCount(); i++) {
+            javax.swing.table.TableColumn column = jTable.getColumnModel().getColumn(i);
+            if (jTable.getColumnClass(i) == Boolean.class) {
+                column.setCellRenderer(new javax.swing.table.TableCellRenderer() {
+                    final javax.swing.JCheckBox cb = new javax.swing.JCheckBox();
+
+                    {
+                        cb.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+                        cb.setOpaque(true);
+                    }
 
-                        @Override
-                        public java.awt.Component getTableCellRendererComponent(
-                                javax.swing.JTable table, Object value, boolean isSelected,
-                                boolean hasFocus, int row, int col) {
-                            cb.setSelected(Boolean.TRUE.equals(value));
-                            if (isSelected) {
-                                cb.setBackground(table.getSelectionBackground());
-                                cb.setForeground(table.getSelectionForeground());
-                            } else {
-                                cb.setBackground(table.getBackground());
-                                cb.setForeground(table.getForeground());
-                            }
-                            return cb;
+                    @Override
+                    public java.awt.Component getTableCellRendererComponent(
+                            javax.swing.JTable table, Object value, boolean isSelected,
+                            boolean hasFocus, int row, int col) {
+                        cb.setSelected(Boolean.TRUE.equals(value));
+                        if (isSelected) {
+                            cb.setBackground(table.getSelectionBackground());
+                            cb.setForeground(table.getSelectionForeground());
+                        } else {
+                            cb.setBackground(table.getBackground());
+                            cb.setForeground(table.getForeground());
                         }
-                    });
-                } else {
-                    javax.swing.table.DefaultTableCellRenderer left = new javax.swing.table.DefaultTableCellRenderer();
-                    left.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
-                    column.setCellRenderer(left);
-                }
+                        return cb;
+                    }
+                });
+            } else {
+                javax.swing.table.DefaultTableCellRenderer left = new javax.swing.table.DefaultTableCellRenderer();
+                left.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+                column.setCellRenderer(left);
             }
-
-            // Show/hide the Delete column based on courseDeleteMode
-            javax.swing.table.TableColumn[] ref = {courseDeleteColumn};
-            applyDeleteVisibility(ref, courseDeleteMode);
-            courseDeleteColumn = ref[0];
-
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this,
-                    "Unable to load courses: " + ex.getMessage(),
-                    "Error",
-                    JOptionPane.ERROR_MESSAGE);
         }
+
+        // Show/hide the Delete column based on courseDeleteMode
+        javax.swing.table.TableColumn[] ref = {courseDeleteColumn};
+        applyDeleteVisibility(ref, courseDeleteMode);
+        courseDeleteColumn = ref[0];
     }
 
     /**
@@ -1727,132 +2030,139 @@ public class MainPage extends javax.swing.JFrame {
      * Students table.
      */
     private void loadStudentsForSelectedCourse() {
-        try {
-            int courseId = getSelectedCourseId();
-
-            // 1) Fetch students for the current filter
-            java.util.List<sgms.model.Student> students;
-            if (courseId > 0) {
-                students = studentDAO.findByCourse(courseId);
-            } else {
-                students = studentDAO.findAll();
+        // 1) Fetch students for the current filter (in the background)
+        final int courseId = getSelectedCourseId();
+        gridLoader.load(new Runnable() {
+            @Override
+            public void run() {
+                loadStudentsForSelectedCourse();
             }
-
-            // 2) Clear other modes/models so the table behaves like a plain “students” grid
-            studentGradesModel = null;
-            finalGradesModel = null;
-            selectionMode = false;
-            studentSelectionModel = null;
-
-            // 3) Reuse the existing StudentTableModel if present, otherwise create a new one
-            if (jTable.getModel() instanceof sgms.ui.StudentTableModel) {
-                studentTableModel = (sgms.ui.StudentTableModel) jTable.getModel();
-                studentTableModel.clearDeleted();
-                studentTableModel.setRows(students);
-            } else {
-                studentTableModel = new sgms.ui.StudentTableModel(students);
-                jTable.setModel(studentTableModel);
+        }, "students", new GridLoader.Fetch<List<Student>>() {
+            @Override
+            public List<Student> fetch() throws Exception {
+                if (courseId > 0) {
+                    return studentDAO.findByCourse(courseId);
+                }
+                return studentDAO.findAll();
             }
-
-            // 4) Fresh TableRowSorter for this model (so comparators/keys apply reliably)
-            javax.swing.table.TableRowSorter<javax.swing.table.TableModel> sorter
-                    = new javax.swing.table.TableRowSorter<javax.swing.table.TableModel>(jTable.getModel());
-            jTable.setRowSorter(sorter);
-
-            // Use a case/diacritics-insensitive Collator for First/Last name sorting
-            java.text.Collator coll = java.text.Collator.getInstance(java.util.Locale.ROOT);
-            coll.setStrength(java.text.Collator.PRIMARY);
-            sorter.setComparator(2, coll); // First Name
-            sorter.setComparator(3, coll); // Last Name
-
-            // Default sort order: Grade ↑, Last Name ↑, First Name ↑
-            java.util.List<javax.swing.RowSorter.SortKey> keys
-                    = new java.util.ArrayList<javax.swing.RowSorter.SortKey>();
-            keys.add(new javax.swing.RowSorter.SortKey(4, javax.swing.SortOrder.ASCENDING));
-            keys.add(new javax.swing.RowSorter.SortKey(3, javax.swing.SortOrder.ASCENDING));
-            keys.add(new javax.swing.RowSorter.SortKey(2, javax.swing.SortOrder.ASCENDING));
-            sorter.setSortKeys(keys);
-            sorter.sort();
-
-            // 5) Header and cell alignment: left for everything, with a left-aligned checkbox editor
-            java.awt.Component hdrRend = jTable.getTableHeader().getDefaultRenderer()
-                    .getTableCellRendererComponent(jTable, "", false, false, -1, -1);
-            if (hdrRend instanceof javax.swing.table.DefaultTableCellRenderer) {
-                ((javax.swing.table.DefaultTableCellRenderer) jTable.getTableHeader().getDefaultRenderer())
-                        .setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+        }, new GridLoader.Apply<List<Student>>() {
+            @Override
+            public void apply(List<Student> students) {
+                showStudents(students);
             }
+        });
+    }
 
-            javax.swing.JCheckBox editorCheckBox = new javax.swing.JCheckBox();
-            editorCheckBox.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
-            jTable.setDefaultEditor(Boolean.class, new javax.swing.DefaultCellEditor(editorCheckBox));
-
-            for (int i = 0; i < jTable.getColumnCount(); i++) {
-                javax.swing.table.TableColumn column = jTable.getColumnModel().getColumn(i);
-                if (jTable.getColumnClass(i) == Boolean.class) {
-                    column.setCellRenderer(new javax.swing.table.TableCellRenderer() {
-                        final javax.swing.JCheckBox cb = new javax.swing.JCheckBox();
+    /**
+     * Displays fetched students in the View Students table.
+     */
+    private void showStudents(List<Student> students) {
+        // 2) Clear other modes/models so the table behaves like a plain “students” grid
+        studentGradesModel = null;
+        finalGradesModel = null;
+        selectionMode = false;
+        studentSelectionModel = null;
 
-                        {
-                            cb.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
-                            cb.setOpaque(true);
-                        }
+        // 3) Reuse the existing StudentTableModel if present, otherwise create a new one
+        if (jTable.getModel() instanceof sgms.ui.StudentTableModel) {
+            studentTableModel = (sgms.ui.StudentTableModel) jTable.getModel();
+            studentTableModel.clearDeleted();
+            studentTableModel.setRows(students);
+        } else {
+            studentTableModel = new sgms.ui.StudentTableModel(students);
+            jTable.setModel(studentTableModel);
+        }
+
+        // 4) Fresh TableRowSorter for this model (so comparators/keys apply reliably)
+        javax.swing.table.TableRowSorter<javax.swing.table.TableModel> sorter
+                = new javax.swing.table.TableRowSorter<javax.swing.table.TableModel>(jTable.getModel());
+        jTable.setRowSorter(sorter);
+
+        // Use a case/diacritics-insensitive Collator for First/Last name sorting
+        java.text.Collator coll = java.text.Collator.getInstance(java.util.Locale.ROOT);
+        coll.setStrength(java.text.Collator.PRIMARY);
+        sorter.setComparator(2, coll); // First Name
+        sorter.setComparator(3, coll); // Last Name
+
+        // Default sort order: Grade ↑, Last Name ↑, First Name ↑
+        java.util.List<javax.swing.RowSorter.SortKey> keys
+                = new java.util.ArrayList<javax.swing.RowSorter.SortKey>();
+        keys.add(new javax.swing.RowSorter.SortKey(4, javax.swing.SortOrder.ASCENDING));
+        keys.add(new javax.swing.RowSorter.SortKey(3, javax.swing.SortOrder.ASCENDING));
+        keys.add(new javax.swing.RowSorter.SortKey(2, javax.swing.SortOrder.ASCENDING));
+        sorter.setSortKeys(keys);
+        sorter.sort();
+
+        // 5) Header and cell alignment: left for everything, with a left-aligned checkbox editor
+        java.awt.Component hdrRend = jTable.getTableHeader().getDefaultRenderer()
+                .getTableCellRendererComponent(jTable, "", false, false, -1, -1);
+        if (hdrRend instanceof javax.swing.table.DefaultTableCellRenderer) {
+            ((javax.swing.table.DefaultTableCellRenderer) jTable.getTableHeader().getDefaultRenderer())
+                    .setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+        }
+
+        javax.swing.JCheckBox editorCheckBox = new javax.swing.JCheckBox();
+        editorCheckBox.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+        jTable.setDefaultEditor(Boolean.class, new javax.swing.DefaultCellEditor(editorCheckBox));
+
+        for (int i = 0; i < jTable.getColumnCount(); i++) {
+            javax.swing.table.TableColumn column = jTable.getColumnModel().getColumn(i);
+            if (jTable.getColumnClass(i) == Boolean.class) {
+                column.setCellRenderer(new javax.swing.table.TableCellRenderer() {
+                    final javax.swing.JCheckBox cb = new javax.swing.JCheckBox();
+
+                    {
+                        cb.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+                        cb.setOpaque(true);
+                    }
 
-                        @Override
-                        public java.awt.Component getTableCellRendererComponent(
-                                javax.swing.JTable table, Object value, boolean isSelected,
-                                boolean hasFocus, int row, int col) {
-                            cb.setSelected(Boolean.TRUE.equals(value));
-                            if (isSelected) {
-                                cb.setBackground(table.getSelectionBackground());
-                                cb.setForeground(table.getSelectionForeground());
-                            } else {
-                                cb.setBackground(table.getBackground());
-                                cb.setForeground(table.getForeground());
-                            }
-                            return cb;
+                    @Override
+                    public java.awt.Component getTableCellRendererComponent(
+                            javax.swing.JTable table, Object value, boolean isSelected,
+                            boolean hasFocus, int row, int col) {
+                        cb.setSelected(Boolean.TRUE.equals(value));
+                        if (isSelected) {
+                            cb.setBackground(table.getSelectionBackground());
+                            cb.setForeground(table.getSelectionForeground());
+                        } else {
+                            cb.setBackground(table.getBackground());
+                            cb.setForeground(table.getForeground());
                         }
-                    });
-                } else {
-                    javax.swing.table.DefaultTableCellRenderer left = new javax.swing.table.DefaultTableCellRenderer();
-                    left.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
-                    column.setCellRenderer(left);
-                }
-            }
-
-            // Show/hide the Delete column based on studentDeleteMode
-            javax.swing.table.TableColumn[] ref = {studentDeleteColumn};
-            applyDeleteVisibility(ref, studentDeleteMode);
-            studentDeleteColumn = ref[0];
-
-            // 7) Basic column width distribution so the table looks balanced
-            int cols = jTable.getColumnModel().getColumnCount();
-            int w = 0;
-            java.awt.Container parent = jTable.getParent();
-            if (parent != null) {
-                w = parent.getWidth();
-            }
-            if (w <= 0) {
-                w = jTable.getWidth();
-            }
-            int per = (cols > 0 && w > 0) ? Math.max(60, w / cols) : 100;
-            for (int i = 0; i < cols; i++) {
-                jTable.getColumnModel().getColumn(i).setPreferredWidth(per);
+                        return cb;
+                    }
+                });
+            } else {
+                javax.swing.table.DefaultTableCellRenderer left = new javax.swing.table.DefaultTableCellRenderer();
+                left.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+                column.setCellRenderer(left);
             }
-            jTable.doLayout();
+        }
 
-            // 8) Refresh visuals
-            jTable.clearSelection();
-            jTable.revalidate();
-            jTable.repaint();
+        // Show/hide the Delete column based on studentDeleteMode
+        javax.swing.table.TableColumn[] ref = {studentDeleteColumn};
+        applyDeleteVisibility(ref, studentDeleteMode);
+        studentDeleteColumn = ref[0];
 
-        } catch (Exception ex) {
-            javax.swing.JOptionPane.showMessageDialog(
-                    this,
-                    "Unable to load students: " + ex.getMessage(),
-                    "Error",
-                    javax.swing.JOptionPane.ERROR_MESSAGE
-            );
+        // 7) Basic column width distribution so the table looks balanced
+        int cols = jTable.getColumnModel().getColumnCount();
+        int w = 0;
+        java.awt.Container parent = jTable.getParent();
+        if (parent != null) {
+            w = parent.getWidth();
+        }
+        if (w <= 0) {
+            w = jTable.getWidth();
+        }
+        int per = (cols > 0 && w > 0) ? Math.max(60, w / cols) : 100;
+        for (int i = 0; i < cols; i++) {
+            jTable.getColumnModel().getColumn(i).setPreferredWidth(per);
         }
+        jTable.doLayout();
+
+        // 8) Refresh visuals
+        jTable.clearSelection();
+        jTable.revalidate();
+        jTable.repaint();
     }
 
     /**
@@ -1860,6 +2170,7 @@ public class MainPage extends javax.swing.JFrame {
      * selected course).
      */
     private void startEnrollmentEdit() {
+        gridLoader.cancel(); // this grid replaces whatever was loading
         try {
             int courseId = getSelectedCourseId();
 
@@ -1952,184 +2263,168 @@ public class MainPage extends javax.swing.JFrame {
      * assignment).
      */
     private void loadStudentGradesForSelectedCourse() {
-        try {
-            int courseId = getSelectedCourseId();
-            if (courseId <= 0) {
-                return; // no course picked
-            }
-
-            // Fetch rows and columns
-            List<Student> students = studentDAO.findByCourse(courseId);
-            List<Assignment> assignments = assignmentDAO.findByCourse(courseId);
-            Map<Integer, Map<Integer, Integer>> grades = gradeDAO.findByCourse(courseId);
+        final int courseId = getSelectedCourseId();
+        if (courseId <= 0) {
+            gridLoader.cancel();
+            return; // no course picked
+        }
 
-            // Build model and detach other modes
-            studentGradesModel = new StudentGradesTableModel(students, assignments, grades);
-            finalGradesModel = null;
-            studentTableModel = null;
-            studentDeleteColumn = null;
-            studentDeleteMode = false;
-            selectionMode = false;
-            studentSelectionModel = null;
+        // Fetch rows and columns and build the model in the background
+        gridLoader.load(new Runnable() {
+            @Override
+            public void run() {
+                loadStudentGradesForSelectedCourse();
+            }
+        }, "grades", new GridLoader.Fetch<StudentGradesTableModel>() {
+            @Override
+            public StudentGradesTableModel fetch() throws Exception {
+                List<Student> students = studentDAO.findByCourse(courseId);
+                List<Assignment> assignments = assignmentDAO.findByCourse(courseId);
+                GradeMatrix grades = gradeDAO.findByCourse(courseId);
+                return new StudentGradesTableModel(students, assignments, grades);
+            }
+        }, new GridLoader.Apply<StudentGradesTableModel>() {
+            @Override
+            public void apply(StudentGradesTableModel model) {
+                showStudentGrades(model);
+            }
+        });
+    }
 
-            jTable.setModel(studentGradesModel);
+    /**
+     * Attaches a fetched “Student Grades” model to the table.
+     */
+    private void showStudentGrades(StudentGradesTableModel model) {
+        // Detach other modes
+        studentGradesModel = model;
+        finalGradesModel = null;
+        studentTableModel = null;
+        studentDeleteColumn = null;
+        studentDeleteMode = false;
+        selectionMode = false;
+        studentSelectionModel = null;
 
-            // Fresh sorter; default by student name ascending
-            javax.swing.table.TableRowSorter<javax.swing.table.TableModel> sorter
-                    = new javax.swing.table.TableRowSorter<javax.swing.table.TableModel>(jTable.getModel());
-            jTable.setRowSorter(sorter);
+        jTable.setModel(studentGradesModel);
 
-            java.util.List<javax.swing.RowSorter.SortKey> keys
-                    = new java.util.ArrayList<javax.swing.RowSorter.SortKey>();
-            keys.add(new javax.swing.RowSorter.SortKey(0, javax.swing.SortOrder.ASCENDING));
-            sorter.setSortKeys(keys);
-            sorter.sort();
+        // Fresh sorter; default by student name ascending
+        javax.swing.table.TableRowSorter<javax.swing.table.TableModel> sorter
+                = new javax.swing.table.TableRowSorter<javax.swing.table.TableModel>(jTable.getModel());
+        jTable.setRowSorter(sorter);
 
-            // Left-align header text safely
-            java.awt.Component hdr = jTable.getTableHeader().getDefaultRenderer()
-                    .getTableCellRendererComponent(jTable, "", false, false, -1, -1);
-            if (hdr instanceof javax.swing.table.DefaultTableCellRenderer) {
-                ((javax.swing.table.DefaultTableCellRenderer) jTable.getTableHeader().getDefaultRenderer())
-                        .setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
-            }
+        java.util.List<javax.swing.RowSorter.SortKey> keys
+                = new java.util.ArrayList<javax.swing.RowSorter.SortKey>();
+        keys.add(new javax.swing.RowSorter.SortKey(0, javax.swing.SortOrder.ASCENDING));
+        sorter.setSortKeys(keys);
+        sorter.sort();
 
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Unable to load grades: " + ex.getMessage(),
-                    "Error", JOptionPane.ERROR_MESSAGE);
+        // Left-align header text safely
+        java.awt.Component hdr = jTable.getTableHeader().getDefaultRenderer()
+                .getTableCellRendererComponent(jTable, "", false, false, -1, -1);
+        if (hdr instanceof javax.swing.table.DefaultTableCellRenderer) {
+            ((javax.swing.table.DefaultTableCellRenderer) jTable.getTableHeader().getDefaultRenderer())
+                    .setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
         }
     }
 
     /**
-     * Builds the “Final Grades” view for a grade level: - pulls all students in
-     * that grade - merges all assignments from all courses in that grade -
-     * merges raw marks by student - uses StudentGradesTableModel helpers to get
-     * T1..T4% and a weighted final
+     * Builds the “Final Grades” view for a grade level from the stored final
+     * grades (T1..T4% and the weighted final are kept up to date by the DAOs
+     * whenever marks change), plus year-to-date attendance across the grade.
      */
     private void loadFinalGradesForSelectedGrade() {
-        try {
-            int gradeLevel = getSelectedGradeLevel();
-
-            // 1) Students in this grade
-            java.util.List<sgms.model.Student> all = studentDAO.findAll();
-            java.util.List<sgms.model.Student> students = new java.util.ArrayList<sgms.model.Student>();
-            for (int i = 0; i < all.size(); i++) {
-                sgms.model.Student s = all.get(i);
-                if (s.getGradeLevel() == gradeLevel) {
-                    students.add(s);
-                }
+        final int gradeLevel = getSelectedGradeLevel();
+        gridLoader.load(new Runnable() {
+            @Override
+            public void run() {
+                loadFinalGradesForSelectedGrade();
             }
-
-            // 2) Merge assignments + grades from ALL courses in the grade
-            java.util.List<sgms.model.Assignment> assignments = new java.util.ArrayList<sgms.model.Assignment>();
-            java.util.Map<Integer, java.util.Map<Integer, Integer>> mergedGrades
-                    = new java.util.HashMap<Integer, java.util.Map<Integer, Integer>>();
-
-            java.util.List<sgms.model.Course> courses = courseDAO.findByGrade(gradeLevel);
-            for (int ci = 0; ci < courses.size(); ci++) {
-                sgms.model.Course c = courses.get(ci);
-
-                // collect assignments
-                java.util.List<sgms.model.Assignment> assigns = assignmentDAO.findByCourse(c.getCourseId());
-                for (int j = 0; j < assigns.size(); j++) {
-                    assignments.add(assigns.get(j));
-                }
-
-                // merge grades into mergedGrades (studentId -> (assignmentId -> raw mark))
-                java.util.Map<Integer, java.util.Map<Integer, Integer>> gByStu = gradeDAO.findByCourse(c.getCourseId());
-                java.util.Iterator<java.util.Map.Entry<Integer, java.util.Map<Integer, Integer>>> it = gByStu.entrySet().iterator();
-                while (it.hasNext()) {
-                    java.util.Map.Entry<Integer, java.util.Map<Integer, Integer>> e = it.next();
-                    Integer studentId = e.getKey();
-                    java.util.Map<Integer, Integer> src = e.getValue();
-
-                    java.util.Map<Integer, Integer> dest = mergedGrades.get(studentId);
-                    if (dest == null) {
-                        dest = new java.util.HashMap<Integer, Integer>();
-                        mergedGrades.put(studentId, dest);
-                    }
-                    java.util.Iterator<java.util.Map.Entry<Integer, Integer>> it2 = src.entrySet().iterator();
-                    while (it2.hasNext()) {
-                        java.util.Map.Entry<Integer, Integer> g = it2.next();
-                        dest.put(g.getKey(), g.getValue());
-                    }
-                }
+        }, "final grades", new GridLoader.Fetch<FinalGradesTableModel>() {
+            @Override
+            public FinalGradesTableModel fetch() throws Exception {
+                // One row per student in the grade (blank if no marks yet)
+                java.util.List<sgms.model.FinalGrade> rows = finalGradeDAO.findByGradeLevel(gradeLevel);
+                FinalGradesTableModel model = new FinalGradesTableModel(rows);
+
+                // Attendance % for the year so far, over every course in the grade
+                java.time.LocalDate today = java.time.LocalDate.now();
+                java.time.LocalDate yearStart = java.time.LocalDate.of(today.getYear(), 1, 1);
+                model.setAttendance(
+                        attendanceDAO.findBitmapsByGradeLevel(gradeLevel, yearStart, today).values(),
+                        yearStart, today);
+                return model;
+            }
+        }, new GridLoader.Apply<FinalGradesTableModel>() {
+            @Override
+            public void apply(FinalGradesTableModel model) {
+                showFinalGrades(model);
             }
+        });
+    }
+
+    /**
+     * Attaches a fetched “Final Grades” model to the table.
+     */
+    private void showFinalGrades(FinalGradesTableModel model) {
+        // Apply to table and clear other modes
+        finalGradesModel = model;
+        studentGradesModel = null;
+        studentTableModel = null;
+        studentDeleteColumn = null;
+        studentDeleteMode = false;
+        selectionMode = false;
+        studentSelectionModel = null;
 
-            // 3) Backing grid (provides the term % helpers)
-            sgms.ui.StudentGradesTableModel backing
-                    = new sgms.ui.StudentGradesTableModel(students, assignments, mergedGrades);
+        jTable.setModel(finalGradesModel);
 
-            // 4) Final summary model (T1..T4 + weighted final)
-            finalGradesModel = new sgms.ui.FinalGradesTableModel(students, backing);
+        // Sort: Final % ↓, Last Name ↑, First Name ↑
+        jTable.setAutoCreateRowSorter(true);
+        javax.swing.RowSorter<?> rs = jTable.getRowSorter();
+        if (rs instanceof javax.swing.table.TableRowSorter) {
+            @SuppressWarnings("unchecked")
+            javax.swing.table.TableRowSorter<javax.swing.table.TableModel> sorter
+                    = (javax.swing.table.TableRowSorter<javax.swing.table.TableModel>) rs;
 
-            // Apply to table and clear other modes
-            studentGradesModel = null;
-            studentTableModel = null;
-            studentDeleteColumn = null;
-            studentDeleteMode = false;
-            selectionMode = false;
-            studentSelectionModel = null;
-
-            jTable.setModel(finalGradesModel);
-
-            // Sort: Final % ↓, Last Name ↑, First Name ↑
-            jTable.setAutoCreateRowSorter(true);
-            javax.swing.RowSorter<?> rs = jTable.getRowSorter();
-            if (rs instanceof javax.swing.table.TableRowSorter) {
-                @SuppressWarnings("unchecked")
-                javax.swing.table.TableRowSorter<javax.swing.table.TableModel> sorter
-                        = (javax.swing.table.TableRowSorter<javax.swing.table.TableModel>) rs;
-
-                java.text.Collator coll = java.text.Collator.getInstance(java.util.Locale.ROOT);
-                coll.setStrength(java.text.Collator.PRIMARY);
-                sorter.setComparator(0, coll); // First Name
-                sorter.setComparator(1, coll); // Last  Name
-
-                java.util.List<javax.swing.RowSorter.SortKey> keys
-                        = new java.util.ArrayList<javax.swing.RowSorter.SortKey>();
-                keys.add(new javax.swing.RowSorter.SortKey(6, javax.swing.SortOrder.DESCENDING)); // Final %
-                keys.add(new javax.swing.RowSorter.SortKey(1, javax.swing.SortOrder.ASCENDING));  // Last
-                keys.add(new javax.swing.RowSorter.SortKey(0, javax.swing.SortOrder.ASCENDING));  // First
-                sorter.setSortKeys(keys);
-                sorter.sort();
-            }
-
-            // Header text left-aligned (safe check)
-            java.awt.Component hdr = jTable.getTableHeader().getDefaultRenderer()
-                    .getTableCellRendererComponent(jTable, "", false, false, -1, -1);
-            if (hdr instanceof javax.swing.table.DefaultTableCellRenderer) {
-                ((javax.swing.table.DefaultTableCellRenderer) jTable.getTableHeader().getDefaultRenderer())
-                        .setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
-            }
+            java.text.Collator coll = java.text.Collator.getInstance(java.util.Locale.ROOT);
+            coll.setStrength(java.text.Collator.PRIMARY);
+            sorter.setComparator(0, coll); // First Name
+            sorter.setComparator(1, coll); // Last  Name
 
-            // Even column widths so the grid looks neat
-            int cols = jTable.getColumnModel().getColumnCount();
-            int w = 0;
-            java.awt.Container parent = jTable.getParent();
-            if (parent != null) {
-                w = parent.getWidth();
-            }
-            if (w <= 0) {
-                w = jTable.getWidth();
-            }
-            int per = (cols > 0 && w > 0) ? Math.max(70, w / cols) : 100;
-            for (int i = 0; i < cols; i++) {
-                jTable.getColumnModel().getColumn(i).setPreferredWidth(per);
-            }
-            jTable.doLayout();
+            java.util.List<javax.swing.RowSorter.SortKey> keys
+                    = new java.util.ArrayList<javax.swing.RowSorter.SortKey>();
+            keys.add(new javax.swing.RowSorter.SortKey(6, javax.swing.SortOrder.DESCENDING)); // Final %
+            keys.add(new javax.swing.RowSorter.SortKey(1, javax.swing.SortOrder.ASCENDING));  // Last
+            keys.add(new javax.swing.RowSorter.SortKey(0, javax.swing.SortOrder.ASCENDING));  // First
+            sorter.setSortKeys(keys);
+            sorter.sort();
+        }
 
-            jTable.clearSelection();
-            jTable.revalidate();
-            jTable.repaint();
+        // Header text left-aligned (safe check)
+        java.awt.Component hdr = jTable.getTableHeader().getDefaultRenderer()
+                .getTableCellRendererComponent(jTable, "", false, false, -1, -1);
+        if (hdr instanceof javax.swing.table.DefaultTableCellRenderer) {
+            ((javax.swing.table.DefaultTableCellRenderer) jTable.getTableHeader().getDefaultRenderer())
+                    .setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+        }
 
-        } catch (Exception ex) {
-            javax.swing.JOptionPane.showMessageDialog(
-                    this,
-                    "Unable to load final grades: " + ex.getMessage(),
-                    "Error",
-                    javax.swing.JOptionPane.ERROR_MESSAGE
-            );
+        // Even column widths so the grid looks neat
+        int cols = jTable.getColumnModel().getColumnCount();
+        int w = 0;
+        java.awt.Container parent = jTable.getParent();
+        if (parent != null) {
+            w = parent.getWidth();
         }
+        if (w <= 0) {
+            w = jTable.getWidth();
+        }
+        int per = (cols > 0 && w > 0) ? Math.max(70, w / cols) : 100;
+        for (int i = 0; i < cols; i++) {
+            jTable.getColumnModel().getColumn(i).setPreferredWidth(per);
+        }
+        jTable.doLayout();
+
+        jTable.clearSelection();
+        jTable.revalidate();
+        jTable.repaint();
     }
 
     /**
@@ -2197,77 +2492,93 @@ public class MainPage extends javax.swing.JFrame {
      * column (checkbox).
      */
     private void loadAssignmentsForSelectedCourse() {
-        try {
-            int courseId = getSelectedCourseId();
-            if (courseId <= 0) {
-                return;
-            }
-
-            List<Assignment> assignments = assignmentDAO.findByCourse(courseId);
-            assignmentModel = new AssignmentTableModel(assignments);
-            jTable.setModel(assignmentModel);
-
-            // Sorter for this model
-            javax.swing.table.TableRowSorter<javax.swing.table.TableModel> sorter
-                    = new javax.swing.table.TableRowSorter<javax.swing.table.TableModel>(assignmentModel);
-            jTable.setRowSorter(sorter);
+        final int courseId = getSelectedCourseId();
+        if (courseId <= 0) {
+            gridLoader.cancel();
+            return;
+        }
 
-            // Header left-align (only if default renderer supports it)
-            java.awt.Component hdr = jTable.getTableHeader().getDefaultRenderer()
-                    .getTableCellRendererComponent(jTable, "", false, false, -1, -1);
-            if (hdr instanceof javax.swing.table.DefaultTableCellRenderer) {
-                ((javax.swing.table.DefaultTableCellRenderer) jTable.getTableHeader().getDefaultRenderer())
-                        .setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+        gridLoader.load(new Runnable() {
+            @Override
+            public void run() {
+                loadAssignmentsForSelectedCourse();
             }
+        }, "assignments", new GridLoader.Fetch<AssignmentTableModel>() {
+            @Override
+            public AssignmentTableModel fetch() throws Exception {
+                return new AssignmentTableModel(assignmentDAO.findByCourse(courseId));
+            }
+        }, new GridLoader.Apply<AssignmentTableModel>() {
+            @Override
+            public void apply(AssignmentTableModel model) {
+                showAssignments(model);
+            }
+        });
+    }
 
-            // Left-aligned checkbox editor for the Delete column
-            javax.swing.JCheckBox editorCheckBox = new javax.swing.JCheckBox();
-            editorCheckBox.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
-            jTable.setDefaultEditor(Boolean.class, new javax.swing.DefaultCellEditor(editorCheckBox));
-
-            // Renderers: checkbox for Boolean, left renderer for others
-            for (int i = 0; i < jTable.getColumnCount(); i++) {
-                javax.swing.table.TableColumn col = jTable.getColumnModel().getColumn(i);
-                if (jTable.getColumnClass(i) == Boolean.class) {
-                    col.setCellRenderer(new javax.swing.table.TableCellRenderer() {
-                        final javax.swing.JCheckBox cb = new javax.swing.JCheckBox();
-
-                        {
-                            cb.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
-                            cb.setOpaque(true);
-                        }
+    /**
+     * Attaches fetched assignments to the table.
+     */
+    private void showAssignments(AssignmentTableModel model) {
+        assignmentModel = model;
+        jTable.setModel(assignmentModel);
+
+        // Sorter for this model
+        javax.swing.table.TableRowSorter<javax.swing.table.TableModel> sorter
+                = new javax.swing.table.TableRowSorter<javax.swing.table.TableModel>(assignmentModel);
+        jTable.setRowSorter(sorter);
+
+        // Header left-align (only if default renderer supports it)
+        java.awt.Component hdr = jTable.getTableHeader().getDefaultRenderer()
+                .getTableCellRendererComponent(jTable, "", false, false, -1, -1);
+        if (hdr instanceof javax.swing.table.DefaultTableCellRenderer) {
+            ((javax.swing.table.DefaultTableCellRenderer) jTable.getTableHeader().getDefaultRenderer())
+                    .setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+        }
+
+        // Left-aligned checkbox editor for the Delete column
+        javax.swing.JCheckBox editorCheckBox = new javax.swing.JCheckBox();
+        editorCheckBox.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+        jTable.setDefaultEditor(Boolean.class, new javax.swing.DefaultCellEditor(editorCheckBox));
+
+        // Renderers: checkbox for Boolean, left renderer for others
+        for (int i = 0; i < jTable.getColumnCount(); i++) {
+            javax.swing.table.TableColumn col = jTable.getColumnModel().getColumn(i);
+            if (jTable.getColumnClass(i) == Boolean.class) {
+                col.setCellRenderer(new javax.swing.table.TableCellRenderer() {
+                    final javax.swing.JCheckBox cb = new javax.swing.JCheckBox();
+
+                    {
+                        cb.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+                        cb.setOpaque(true);
+                    }
 
-                        @Override
-                        public java.awt.Component getTableCellRendererComponent(
-                                javax.swing.JTable table, Object value, boolean isSelected,
-                                boolean hasFocus, int row, int column) {
-                            cb.setSelected(Boolean.TRUE.equals(value));
-                            if (isSelected) {
-                                cb.setBackground(table.getSelectionBackground());
-                                cb.setForeground(table.getSelectionForeground());
-                            } else {
-                                cb.setBackground(table.getBackground());
-                                cb.setForeground(table.getForeground());
-                            }
-                            return cb;
+                    @Override
+                    public java.awt.Component getTableCellRendererComponent(
+                            javax.swing.JTable table, Object value, boolean isSelected,
+                            boolean hasFocus, int row, int column) {
+                        cb.setSelected(Boolean.TRUE.equals(value));
+                        if (isSelected) {
+                            cb.setBackground(table.getSelectionBackground());
+                            cb.setForeground(table.getSelectionForeground());
+                        } else {
+                            cb.setBackground(table.getBackground());
+                            cb.setForeground(table.getForeground());
                         }
-                    });
-                } else {
-                    javax.swing.table.DefaultTableCellRenderer left = new javax.swing.table.DefaultTableCellRenderer();
-                    left.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
-                    col.setCellRenderer(left);
-                }
+                        return cb;
+                    }
+                });
+            } else {
+                javax.swing.table.DefaultTableCellRenderer left = new javax.swing.table.DefaultTableCellRenderer();
+                left.setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
+                col.setCellRenderer(left);
             }
-
-            // Show/hide the Delete column based on assignmentDeleteMode
-            javax.swing.table.TableColumn[] ref = {assignmentDeleteColumn};
-            applyDeleteVisibility(ref, assignmentDeleteMode);
-            assignmentDeleteColumn = ref[0];
-
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Unable to load assignments: " + ex.getMessage(),
-                    "Error", JOptionPane.ERROR_MESSAGE);
         }
+
+        // Show/hide the Delete column based on assignmentDeleteMode
+        javax.swing.table.TableColumn[] ref = {assignmentDeleteColumn};
+        applyDeleteVisibility(ref, assignmentDeleteMode);
+        assignmentDeleteColumn = ref[0];
     }
 
     /**
@@ -2290,59 +2601,82 @@ public class MainPage extends javax.swing.JFrame {
     }
 
     /**
-     * Shows Monday–Friday attendance for the selected course; today's column is
+     * Shows Monday–Friday attendance for the selected course, plus each
+     * student's attendance rate for the year so far; today's column is
      * highlighted in the UI.
      */
     private void loadAttendanceForSelectedCourse() {
-        try {
-            int courseId = getSelectedCourseId();
-            if (courseId <= 0) {
-                return;
-            }
+        final int courseId = getSelectedCourseId();
+        if (courseId <= 0) {
+            gridLoader.cancel();
+            return;
+        }
 
-            List<Student> students = studentDAO.findByCourse(courseId);
+        final java.time.LocalDate today = java.time.LocalDate.now();
+        gridLoader.load(new Runnable() {
+            @Override
+            public void run() {
+                loadAttendanceForSelectedCourse();
+            }
+        }, "attendance", new GridLoader.Fetch<AttendanceTableModel>() {
+            @Override
+            public AttendanceTableModel fetch() throws Exception {
+                List<Student> students = studentDAO.findByCourse(courseId);
 
-            java.time.LocalDate today = java.time.LocalDate.now();
-            java.time.LocalDate start = today.with(java.time.temporal.TemporalAdjusters.previousOrSame(java.time.DayOfWeek.MONDAY));
-            java.time.LocalDate end = start.plusDays(4);
+                java.time.LocalDate start = today.with(java.time.temporal.TemporalAdjusters.previousOrSame(java.time.DayOfWeek.MONDAY));
+                java.time.LocalDate end = start.plusDays(4);
 
-            AttendanceDAO dao = new UcanaccessAttendanceDAO();
-            Map<Integer, Map<java.time.LocalDate, Boolean>> data
-                    = dao.findByCourseAndDateRange(courseId, start, end);
+                // the year so far in one read, so the rate column covers it too
+                java.time.LocalDate yearStart = java.time.LocalDate.of(today.getYear(), 1, 1);
+                if (start.isBefore(yearStart)) {
+                    yearStart = start; // week that spans New Year
+                }
+                sgms.model.AttendanceBitmap register
+                        = attendanceDAO.findBitmapByCourse(courseId, yearStart, end);
 
-            attendanceModel = new AttendanceTableModel(students, start, data);
+                return new AttendanceTableModel(students, start, register);
+            }
+        }, new GridLoader.Apply<AttendanceTableModel>() {
+            @Override
+            public void apply(AttendanceTableModel model) {
+                showAttendance(model, today);
+            }
+        });
+    }
 
-            // Detach other modes
-            studentTableModel = null;
-            studentDeleteColumn = null;
-            studentDeleteMode = false;
-            studentSelectionModel = null;
-            studentGradesModel = null;
-            finalGradesModel = null;
+    /**
+     * Attaches a fetched attendance register to the table; today's column is
+     * highlighted.
+     */
+    private void showAttendance(AttendanceTableModel model, java.time.LocalDate today) {
+        attendanceModel = model;
 
-            jTable.setModel(attendanceModel);
+        // Detach other modes
+        studentTableModel = null;
+        studentDeleteColumn = null;
+        studentDeleteMode = false;
+        studentSelectionModel = null;
+        studentGradesModel = null;
+        finalGradesModel = null;
 
-            // Sorter (by Student column)
-            javax.swing.table.TableRowSorter<javax.swing.table.TableModel> sorter
-                    = new javax.swing.table.TableRowSorter<javax.swing.table.TableModel>(attendanceModel);
-            jTable.setRowSorter(sorter);
+        jTable.setModel(attendanceModel);
 
-            java.util.List<javax.swing.RowSorter.SortKey> keys
-                    = new java.util.ArrayList<javax.swing.RowSorter.SortKey>();
-            keys.add(new javax.swing.RowSorter.SortKey(0, javax.swing.SortOrder.ASCENDING));
-            sorter.setSortKeys(keys);
-            sorter.sort();
+        // Sorter (by Student column)
+        javax.swing.table.TableRowSorter<javax.swing.table.TableModel> sorter
+                = new javax.swing.table.TableRowSorter<javax.swing.table.TableModel>(attendanceModel);
+        jTable.setRowSorter(sorter);
 
-            selectionMode = false;
+        java.util.List<javax.swing.RowSorter.SortKey> keys
+                = new java.util.ArrayList<javax.swing.RowSorter.SortKey>();
+        keys.add(new javax.swing.RowSorter.SortKey(0, javax.swing.SortOrder.ASCENDING));
+        sorter.setSortKeys(keys);
+        sorter.sort();
 
-            // Column index for today: 0 = Student, 1..5 = Mon..Fri
-            int dow = today.getDayOfWeek().getValue(); // Mon=1..Sun=7
-            attendanceTodayColumn = (dow >= 1 && dow <= 5) ? dow : -1;
+        selectionMode = false;
 
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Unable to load attendance: " + ex.getMessage(),
-                    "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        // Column index for today: 0 = Student, 1..5 = Mon..Fri
+        int dow = today.getDayOfWeek().getValue(); // Mon=1..Sun=7
+        attendanceTodayColumn = (dow >= 1 && dow <= 5) ? dow : -1;
     }
 
     /**
@@ -2368,50 +2702,66 @@ public class MainPage extends javax.swing.JFrame {
      * Shows the feedback note preview per student for the selected course.
      */
     private void loadFeedbackForSelectedCourse() {
-        try {
-            int courseId = getSelectedCourseId();
-            if (courseId <= 0) {
-                return;
-            }
-
-            List<Student> students = studentDAO.findByCourse(courseId);
-            Map<Integer, String> notes = feedbackDAO.findByCourse(courseId);
+        final int courseId = getSelectedCourseId();
+        if (courseId <= 0) {
+            gridLoader.cancel();
+            return;
+        }
 
-            feedbackModel = new StudentFeedbackTableModel(students, notes);
+        gridLoader.load(new Runnable() {
+            @Override
+            public void run() {
+                loadFeedbackForSelectedCourse();
+            }
+        }, "feedback", new GridLoader.Fetch<StudentFeedbackTableModel>() {
+            @Override
+            public StudentFeedbackTableModel fetch() throws Exception {
+                List<Student> students = studentDAO.findByCourse(courseId);
+                Map<Integer, String> notes = feedbackDAO.findByCourse(courseId);
+                return new StudentFeedbackTableModel(students, notes);
+            }
+        }, new GridLoader.Apply<StudentFeedbackTableModel>() {
+            @Override
+            public void apply(StudentFeedbackTableModel model) {
+                showFeedback(model);
+            }
+        });
+    }
 
-            // Detach other modes
-            studentTableModel = null;
-            studentDeleteColumn = null;
-            studentDeleteMode = false;
-            studentSelectionModel = null;
-            studentGradesModel = null;
-            finalGradesModel = null;
-            attendanceModel = null;
+    /**
+     * Attaches fetched feedback previews to the table.
+     */
+    private void showFeedback(StudentFeedbackTableModel model) {
+        feedbackModel = model;
 
-            jTable.setModel(feedbackModel);
+        // Detach other modes
+        studentTableModel = null;
+        studentDeleteColumn = null;
+        studentDeleteMode = false;
+        studentSelectionModel = null;
+        studentGradesModel = null;
+        finalGradesModel = null;
+        attendanceModel = null;
 
-            // Sorter (by Last Name)
-            javax.swing.table.TableRowSorter<javax.swing.table.TableModel> sorter
-                    = new javax.swing.table.TableRowSorter<javax.swing.table.TableModel>(feedbackModel);
-            jTable.setRowSorter(sorter);
+        jTable.setModel(feedbackModel);
 
-            java.util.List<javax.swing.RowSorter.SortKey> keys
-                    = new java.util.ArrayList<javax.swing.RowSorter.SortKey>();
-            keys.add(new javax.swing.RowSorter.SortKey(1, javax.swing.SortOrder.ASCENDING));
-            sorter.setSortKeys(keys);
-            sorter.sort();
+        // Sorter (by Last Name)
+        javax.swing.table.TableRowSorter<javax.swing.table.TableModel> sorter
+                = new javax.swing.table.TableRowSorter<javax.swing.table.TableModel>(feedbackModel);
+        jTable.setRowSorter(sorter);
 
-            // Header left-align (safe)
-            java.awt.Component hdr = jTable.getTableHeader().getDefaultRenderer()
-                    .getTableCellRendererComponent(jTable, "", false, false, -1, -1);
-            if (hdr instanceof javax.swing.table.DefaultTableCellRenderer) {
-                ((javax.swing.table.DefaultTableCellRenderer) jTable.getTableHeader().getDefaultRenderer())
-                        .setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
-            }
+        java.util.List<javax.swing.RowSorter.SortKey> keys
+                = new java.util.ArrayList<javax.swing.RowSorter.SortKey>();
+        keys.add(new javax.swing.RowSorter.SortKey(1, javax.swing.SortOrder.ASCENDING));
+        sorter.setSortKeys(keys);
+        sorter.sort();
 
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Unable to load feedback: " + ex.getMessage(),
-                    "Error", JOptionPane.ERROR_MESSAGE);
+        // Header left-align (safe)
+        java.awt.Component hdr = jTable.getTableHeader().getDefaultRenderer()
+                .getTableCellRendererComponent(jTable, "", false, false, -1, -1);
+        if (hdr instanceof javax.swing.table.DefaultTableCellRenderer) {
+            ((javax.swing.table.DefaultTableCellRenderer) jTable.getTableHeader().getDefaultRenderer())
+                    .setHorizontalAlignment(javax.swing.SwingConstants.LEFT);
         }
     }
 
@@ -2473,10 +2823,61 @@ public class MainPage extends javax.swing.JFrame {
         }
     }
 
+    /**
+     * Filters the table with the search box text. If nothing in the table
+     * matches, lists the closest learners in the whole school instead (typos
+     * allowed). That lookup runs in the background, because the first one
+     * reads every learner and enrolment.
+     */
+    private void searchTable() {
+        String query = jTextFieldSearch.getText();
+        sgms.util.SearchUtil.applySmartSearch(jTable, query);
+
+        String q = (query == null) ? "" : query.trim();
+        if (q.isEmpty() || "Search".equalsIgnoreCase(q) || jTable.getRowCount() > 0) {
+            return;
+        }
+        final String term = q;
+        final int run = ++learnerSearchRun;
+        new javax.swing.SwingWorker<List<sgms.service.LearnerSearchService.Match>, Void>() {
+            @Override
+            protected List<sgms.service.LearnerSearchService.Match> doInBackground() throws Exception {
+                return learnerSearch.search(term, 5);
+            }
+
+            @Override
+            protected void done() {
+                if (run != learnerSearchRun || !isDisplayable()) {
+                    return; // a newer search replaced this one, or the window is gone
+                }
+                try {
+                    List<sgms.service.LearnerSearchService.Match> matches = get();
+                    if (matches.isEmpty()) {
+                        return;
+                    }
+                    StringBuilder msg = new StringBuilder("Nothing here matches \"" + term + "\". Closest learners:\n");
+                    for (int i = 0; i < matches.size(); i++) {
+                        Student s = matches.get(i).getStudent();
+                        msg.append("\n").append(s.getFirstName()).append(' ').append(s.getLastName())
+                                .append("  (ID ").append(s.getStudentId())
+                                .append(", Grade ").append(s.getGradeLevel()).append(')');
+                    }
+                    JOptionPane.showMessageDialog(MainPage.this, msg.toString(), "Search", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception ex) {
+                    JOptionPane.showMessageDialog(MainPage.this, "Unable to search learners: " + ex.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
     /**
      * Rebuild the current grid according to the active model + flags.
      */
     private void reloadCurrentGrid() {
+        if (gridLoader.reloadPending()) {
+            return; // the view being loaded is the current one
+        }
         if (finalGradesModel != null) {
             loadFinalGradesForSelectedGrade();
             return;
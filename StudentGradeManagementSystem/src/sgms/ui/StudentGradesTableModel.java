@@ -1,13 +1,17 @@
 package sgms.ui;
 
 import sgms.model.Assignment;
+import sgms.model.GradeMatrix;
+import sgms.model.GradeSaveResult;
 import sgms.model.Student;
 import sgms.dao.GradeDAO;                 // kept for older code paths
+import sgms.service.GradeCalculationService;
 import sgms.service.ValidationService;
 
 import javax.swing.JOptionPane;
 import javax.swing.table.AbstractTableModel;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,17 +20,26 @@ import java.util.Map;
  * Shows students and their RAW marks for each assignment.
  * Col 0 = Student name, Col 1-N = marks (editable).
  * Also exposes helpers to get term and final percentages.
+ * Marks live in a {@link GradeMatrix} laid out in table order, so a cell
+ * read is a plain array lookup.
+ * A copy of the marks as last loaded or saved is kept too, with a bit per
+ * cell that differs from it, so a save only needs the changed cells.
  */
 public class StudentGradesTableModel extends AbstractTableModel {
 
     private final List<Student> students;
     private final List<Assignment> assignments;
-    // studentId -> (assignmentId -> RAW mark)
-    private final Map<Integer, Map<Integer, Integer>> grades;
+    // row = student index, column = assignment index (table column - 1)
+    private GradeMatrix grades;
+
+    // marks as last loaded/saved, same shape as grades
+    private GradeMatrix saved;
+    // bit (row * columns + column) set where grades differs from saved
+    private BitSet dirty = new BitSet();
 
     public StudentGradesTableModel(List<Student> students,
                                    List<Assignment> assignments,
-                                   Map<Integer, Map<Integer, Integer>> grades) {
+                                   GradeMatrix grades) {
         this.students = (students == null)
                 ? new ArrayList<Student>()
                 : new ArrayList<Student>(students);
@@ -35,15 +48,27 @@ public class StudentGradesTableModel extends AbstractTableModel {
                 ? new ArrayList<Assignment>()
                 : new ArrayList<Assignment>(assignments);
 
-        this.grades = new HashMap<Integer, Map<Integer, Integer>>();
-        if (students != null && grades != null) {
-            for (int i = 0; i < students.size(); i++) {
-                Student s = students.get(i);
-                Map<Integer, Integer> m = grades.get(s.getStudentId());
-                if (m == null) m = new HashMap<Integer, Integer>();
-                this.grades.put(s.getStudentId(), m);
-            }
+        int[] rowIds = new int[this.students.size()];
+        for (int i = 0; i < rowIds.length; i++) {
+            rowIds[i] = this.students.get(i).getStudentId();
+        }
+        int[] colIds = new int[this.assignments.size()];
+        for (int i = 0; i < colIds.length; i++) {
+            colIds[i] = this.assignments.get(i).getAssignmentId();
         }
+
+        // copy into table order (also drops marks for anyone not shown)
+        this.grades = (grades == null)
+                ? new GradeMatrix(rowIds, colIds)
+                : grades.reshape(rowIds, colIds);
+        this.saved = this.grades.copy();
+    }
+
+    /** Map layout: studentId -> (assignmentId -> RAW mark). */
+    public StudentGradesTableModel(List<Student> students,
+                                   List<Assignment> assignments,
+                                   Map<Integer, Map<Integer, Integer>> grades) {
+        this(students, assignments, GradeMatrix.fromMap(grades));
     }
 
     /** Older constructor signature; DAO is not used here. */
@@ -81,10 +106,8 @@ public class StudentGradesTableModel extends AbstractTableModel {
             String last  = (s.getLastName()  == null) ? "" : s.getLastName();
             return (first.length() > 0 && last.length() > 0) ? (first + " " + last) : (first + last);
         }
-        int assignmentId = assignments.get(columnIndex - 1).getAssignmentId();
-        Map<Integer, Integer> m = grades.get(s.getStudentId());
-        if (m == null) return null;
-        return m.get(assignmentId); // raw mark or null
+        int mark = grades.get(rowIndex, columnIndex - 1);
+        return (mark == GradeMatrix.NO_MARK) ? null : Integer.valueOf(mark); // raw mark or null
     }
 
     @Override
@@ -97,17 +120,13 @@ public class StudentGradesTableModel extends AbstractTableModel {
     public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
         if (columnIndex == 0) return;
 
-        Student s = students.get(rowIndex);
         Assignment a = assignments.get(columnIndex - 1);
-        int assignmentId = a.getAssignmentId();
 
         // allow clearing a mark by leaving the cell blank
         if (aValue == null || String.valueOf(aValue).trim().length() == 0) {
-            Map<Integer, Integer> m = grades.get(s.getStudentId());
-            if (m != null) {
-                m.remove(assignmentId);
-                fireTableCellUpdated(rowIndex, columnIndex);
-            }
+            grades.clear(rowIndex, columnIndex - 1);
+            updateDirty(rowIndex, columnIndex - 1);
+            fireTableCellUpdated(rowIndex, columnIndex);
             return;
         }
 
@@ -121,12 +140,8 @@ public class StudentGradesTableModel extends AbstractTableModel {
                 return;
             }
 
-            Map<Integer, Integer> m = grades.get(s.getStudentId());
-            if (m == null) {
-                m = new HashMap<Integer, Integer>();
-                grades.put(s.getStudentId(), m);
-            }
-            m.put(assignmentId, Integer.valueOf(mark));
+            grades.set(rowIndex, columnIndex - 1, mark);
+            updateDirty(rowIndex, columnIndex - 1);
             fireTableCellUpdated(rowIndex, columnIndex);
 
         } catch (NumberFormatException ex) {
@@ -142,58 +157,125 @@ public class StudentGradesTableModel extends AbstractTableModel {
 
     public void addAssignment(Assignment a) {
         assignments.add(a);
+        grades.addColumn(a.getAssignmentId());
+        saved.addColumn(a.getAssignmentId());
+        rebuildDirty();
         fireTableStructureChanged();
     }
 
     public void removeAssignment(int index) {
-        Assignment a = assignments.remove(index);
+        assignments.remove(index);
         // remove stored marks for that assignment
-        for (Map.Entry<Integer, Map<Integer, Integer>> e : grades.entrySet()) {
-            Map<Integer, Integer> m = e.getValue();
-            if (m != null) m.remove(a.getAssignmentId());
-        }
+        grades.removeColumn(index);
+        saved.removeColumn(index);
+        rebuildDirty();
         fireTableStructureChanged();
     }
 
-    /** Used by the save action. */
-    public Map<Integer, Map<Integer, Integer>> getGrades() {
+    /**
+     * The marks behind the table, in table order (live, not a copy). Changes
+     * made directly are not tracked as unsaved.
+     */
+    public GradeMatrix getGradeMatrix() {
         return grades;
     }
 
+    /**
+     * Used by the save action. Map layout: studentId -> (assignmentId -> RAW
+     * mark). This is a snapshot; changing it does not change the table.
+     */
+    public Map<Integer, Map<Integer, Integer>> getGrades() {
+        return grades.toMap();
+    }
+
+    // ---- change tracking ----
+
+    /** True if the cell (table coordinates) differs from the last load/save. */
+    public boolean isDirtyAt(int rowIndex, int columnIndex) {
+        if (columnIndex < 1) return false;
+        return dirty.get(rowIndex * grades.getColumnCount() + columnIndex - 1);
+    }
+
+    public boolean hasChanges() {
+        return !dirty.isEmpty();
+    }
+
+    public int getChangeCount() {
+        return dirty.cardinality();
+    }
+
+    /**
+     * Only the cells changed since the last load/save, for a bulk save.
+     * Layout: studentId -> (assignmentId -> RAW mark, or null if cleared).
+     */
+    public Map<Integer, Map<Integer, Integer>> getChanges() {
+        Map<Integer, Map<Integer, Integer>> changes = new HashMap<Integer, Map<Integer, Integer>>();
+        int cols = grades.getColumnCount();
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            int row = i / cols;
+            int col = i % cols;
+            Integer studentId = Integer.valueOf(grades.getStudentIdAt(row));
+            Map<Integer, Integer> perStudent = changes.get(studentId);
+            if (perStudent == null) {
+                perStudent = new HashMap<Integer, Integer>();
+                changes.put(studentId, perStudent);
+            }
+            int mark = grades.get(row, col);
+            perStudent.put(Integer.valueOf(grades.getAssignmentIdAt(col)),
+                    (mark == GradeMatrix.NO_MARK) ? null : Integer.valueOf(mark));
+        }
+        return changes;
+    }
+
+    /** Throw away unsaved edits and go back to the last loaded/saved marks. */
+    public void revert() {
+        if (dirty.isEmpty()) return;
+        grades = saved.copy();
+        dirty.clear();
+        fireTableDataChanged();
+    }
+
+    /** Treat the current marks as saved (after a successful save). */
+    public void markSaved() {
+        saved = grades.copy();
+        dirty.clear();
+        fireTableDataChanged();
+    }
+
+    /**
+     * Treat the cells that were saved as clean; cells that FAILED stay dirty
+     * so they can be fixed and saved again.
+     */
+    public void markSaved(List<GradeSaveResult> results) {
+        if (results == null) return;
+        for (int i = 0; i < results.size(); i++) {
+            GradeSaveResult r = results.get(i);
+            if (r.isFailed()) continue;
+            int row = grades.rowOf(r.getStudentId());
+            int col = grades.columnOf(r.getAssignmentId());
+            if (row < 0 || col < 0) continue;
+            saved.set(row, col, grades.get(row, col));
+            dirty.clear(row * grades.getColumnCount() + col);
+        }
+        fireTableDataChanged();
+    }
+
     /** Older name kept so existing calls still compile. */
     public Map<Integer, Map<Integer, Integer>> getGradesByStudent() {
-        return grades;
+        return getGrades();
     }
 
-    // ---- percentage helpers for “Final Grades” view ----
+    // ---- percentage helpers ----
 
     /**
      * Average of assignment percentages in a term for one student.
      * percent = (raw / maxMarks) * 100
      * Returns null if there are no marks in that term.
+     * Worked out by {@link GradeCalculationService}, so the table and the
+     * reports always agree.
      */
     public Double getTermAveragePercent(int studentId, int term) {
-        Map<Integer, Integer> m = grades.get(studentId);
-        if (m == null) return null;
-
-        double sumPct = 0.0;
-        int count = 0;
-
-        for (int i = 0; i < assignments.size(); i++) {
-            Assignment a = assignments.get(i);
-            if (a.getTerm() == term) {
-                Integer raw = m.get(a.getAssignmentId());
-                if (raw != null) {
-                    int max = (a.getMaxMarks() == null) ? 0 : a.getMaxMarks().intValue();
-                    double pct = (max > 0) ? (raw.intValue() * 100.0) / max : 0.0;
-                    sumPct += pct;
-                    count++;
-                }
-            }
-        }
-
-        if (count == 0) return null;
-        return Double.valueOf(sumPct / count);
+        return GradeCalculationService.termPercent(assignments, grades, studentId, term);
     }
 
     /**
@@ -201,10 +283,28 @@ public class StudentGradesTableModel extends AbstractTableModel {
      * (Weights are handled in GradeCalculator.)
      */
     public Double getFinalPercent(int studentId) {
-        Double t1 = getTermAveragePercent(studentId, 1);
-        Double t2 = getTermAveragePercent(studentId, 2);
-        Double t3 = getTermAveragePercent(studentId, 3);
-        Double t4 = getTermAveragePercent(studentId, 4);
-        return sgms.util.GradeCalculator.calculateFinalGrade(t1, t2, t3, t4);
+        return GradeCalculationService.finalPercent(
+                GradeCalculationService.termPercents(assignments, grades, studentId));
+    }
+
+    // ---- change tracking helpers ----
+
+    private void updateDirty(int row, int col) {
+        int i = row * grades.getColumnCount() + col;
+        dirty.set(i, grades.get(row, col) != saved.get(row, col));
+    }
+
+    /** Needed after the column count changes (cell numbers shift). */
+    private void rebuildDirty() {
+        BitSet fresh = new BitSet();
+        int cols = grades.getColumnCount();
+        for (int row = 0; row < grades.getRowCount(); row++) {
+            for (int col = 0; col < cols; col++) {
+                if (grades.get(row, col) != saved.get(row, col)) {
+                    fresh.set(row * cols + col);
+                }
+            }
+        }
+        dirty = fresh;
     }
 }
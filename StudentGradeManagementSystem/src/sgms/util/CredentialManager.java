@@ -4,39 +4,68 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 
 import sgms.dao.DB;
 
 /**
- * Very small credential helper that reads/writes users in the Access DB.
+ * Very small credential helper that reads/writes users in the database.
+ * <p>
+ * User names are stored in lower case and looked up by exact match, so each
+ * lookup uses the unique index on {@code tblUsers.username}. Passwords are
+ * stored as {@link PasswordHash} values; a row in an older format is given a
+ * new hash the first time its password is checked. Names that were recently
+ * looked up and not found are remembered for a short while, so repeated
+ * logins with an unknown name do not reach the database.
  */
 public final class CredentialManager {
 
     private CredentialManager() {
     }
 
-    // SQL (use parameters to avoid SQL injection)
+    // SQL (use parameters to avoid SQL injection); names are passed lower case.
     private static final String SQL_VALIDATE_LOGIN
-            = "SELECT passwordHash FROM tblUsers WHERE LOWER(username) = LOWER(?)";
+            = "SELECT passwordHash FROM tblUsers WHERE username = ?";
 
     private static final String SQL_CHECK_USERNAME
-            = "SELECT 1 FROM tblUsers WHERE LOWER(username) = LOWER(?)";
+            = "SELECT 1 FROM tblUsers WHERE username = ?";
 
     private static final String SQL_ADD_USER
             = "INSERT INTO tblUsers (fullName, username, passwordHash) VALUES (?, ?, ?)";
 
     private static final String SQL_RESET_PASSWORD
-            = "UPDATE tblUsers SET passwordHash=? WHERE LOWER(username)=LOWER(?)";
+            = "UPDATE tblUsers SET passwordHash=? WHERE username=?";
 
-    private static final String SQL_IS_ADMIN_PASSWORD
-            = "SELECT 1 FROM tblUsers WHERE username=? AND passwordHash=? AND role='Administrator'";
+    // only if nobody changed the password in the meantime
+    private static final String SQL_REHASH
+            = "UPDATE tblUsers SET passwordHash=? WHERE username=? AND passwordHash=?";
+
+    private static final String SQL_ADMIN_PASSWORD
+            = "SELECT passwordHash FROM tblUsers WHERE username=? AND role='Administrator'";
 
     // NEW: fetch the display name
     private static final String SQL_GET_FULL_NAME
-            = "SELECT fullName FROM tblUsers WHERE LOWER(username)=LOWER(?)";
+            = "SELECT fullName FROM tblUsers WHERE username=?";
+
+    private static final String ADMIN_USERNAME = "admin";
+
+    /** How many unknown names are remembered, and for how long. */
+    private static final int UNKNOWN_CACHE_SIZE = 256;
+    private static final long UNKNOWN_TTL_MILLIS = 60_000L;
+
+    /** Names recently looked up and not found -> when that stops being trusted (ms). */
+    private static final Map<String, Long> UNKNOWN = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > UNKNOWN_CACHE_SIZE;
+        }
+    };
 
     /**
-     * Check username + password. Accepts hashed or legacy stored values.
+     * Check username + password. Accepts hashed or legacy stored values;
+     * a legacy or weaker hash is replaced after a successful check.
      */
     public static boolean validateLogin(String username, String password) {
         if (username == null || username.trim().isEmpty()) {
@@ -45,20 +74,33 @@ public final class CredentialManager {
         if (password == null || password.isEmpty()) {
             return false;
         }
+        String key = key(username);
+        if (isKnownUnknown(key)) {
+            return false;
+        }
 
+        String stored;
         try (Connection c = DB.get(); PreparedStatement ps = c.prepareStatement(SQL_VALIDATE_LOGIN)) {
-            ps.setString(1, username.trim());
+            ps.setString(1, key);
             try (ResultSet rs = ps.executeQuery()) {
                 if (!rs.next()) {
+                    rememberUnknown(key);
                     return false;
                 }
-                String stored = rs.getString(1);
-                return matchesPassword(password, stored);
+                stored = rs.getString(1);
             }
         } catch (SQLException e) {
             System.err.println("[validateLogin] " + e.getMessage());
             return false;
         }
+
+        if (!PasswordHash.verify(password, stored)) {
+            return false;
+        }
+        if (PasswordHash.needsRehash(stored)) {
+            rehash(key, password, stored);
+        }
+        return true;
     }
 
     /**
@@ -68,10 +110,18 @@ public final class CredentialManager {
         if (!isValidUsername(username)) {
             return false;
         }
+        String key = key(username);
+        if (isKnownUnknown(key)) {
+            return false;
+        }
         try (Connection c = DB.get(); PreparedStatement ps = c.prepareStatement(SQL_CHECK_USERNAME)) {
-            ps.setString(1, username.trim());
+            ps.setString(1, key);
             try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
+                if (rs.next()) {
+                    return true;
+                }
+                rememberUnknown(key);
+                return false;
             }
         } catch (SQLException e) {
             System.err.println("[isUsernameExists] " + e.getMessage());
@@ -80,20 +130,23 @@ public final class CredentialManager {
     }
 
     /**
-     * Add a user with a simple hash of the password.
+     * Add a user with a salted hash of the password.
      */
     public static boolean addUser(String name, String username, String password) {
         if (!isValidUsername(username) || !isValidPassword(password)) {
             return false;
         }
+        String key = key(username);
         try (Connection c = DB.get(); PreparedStatement ps = c.prepareStatement(SQL_ADD_USER)) {
             ps.setString(1, name);
-            ps.setString(2, username.trim().toLowerCase()); // store canonical form
-            ps.setString(3, hashPassword(password.trim()));
+            ps.setString(2, key); // store canonical form
+            ps.setString(3, PasswordHash.hash(password.trim()));
             return ps.executeUpdate() == 1;
         } catch (SQLException e) {
             System.err.println("[addUser] " + e.getMessage());
             return false;
+        } finally {
+            forgetUnknown(key);
         }
     }
 
@@ -105,8 +158,8 @@ public final class CredentialManager {
             return false;
         }
         try (Connection c = DB.get(); PreparedStatement ps = c.prepareStatement(SQL_RESET_PASSWORD)) {
-            ps.setString(1, hashPassword(newPassword.trim()));
-            ps.setString(2, username.trim());
+            ps.setString(1, PasswordHash.hash(newPassword.trim()));
+            ps.setString(2, key(username));
             return ps.executeUpdate() == 1;
         } catch (SQLException e) {
             System.err.println("[resetPassword] " + e.getMessage());
@@ -121,16 +174,28 @@ public final class CredentialManager {
         if (adminPassword == null || adminPassword.isEmpty()) {
             return false;
         }
-        try (Connection c = DB.get(); PreparedStatement ps = c.prepareStatement(SQL_IS_ADMIN_PASSWORD)) {
-            ps.setString(1, "admin");
-            ps.setString(2, hashPassword(adminPassword.trim()));
+        String stored;
+        try (Connection c = DB.get(); PreparedStatement ps = c.prepareStatement(SQL_ADMIN_PASSWORD)) {
+            ps.setString(1, ADMIN_USERNAME);
             try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
+                if (!rs.next()) {
+                    return false;
+                }
+                stored = rs.getString(1);
             }
         } catch (SQLException e) {
             System.err.println("[isAdminPassword] " + e.getMessage());
             return false;
         }
+
+        String password = adminPassword.trim();
+        if (!PasswordHash.verify(password, stored)) {
+            return false;
+        }
+        if (PasswordHash.needsRehash(stored)) {
+            rehash(ADMIN_USERNAME, password, stored);
+        }
+        return true;
     }
 
     // ---------- NEW PUBLIC METHOD ----------
@@ -143,7 +208,7 @@ public final class CredentialManager {
             return "";
         }
         try (Connection c = DB.get(); PreparedStatement ps = c.prepareStatement(SQL_GET_FULL_NAME)) {
-            ps.setString(1, username.trim());
+            ps.setString(1, key(username));
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
                     String fn = rs.getString(1);
@@ -173,52 +238,46 @@ public final class CredentialManager {
         return s != null && s.trim().length() >= 6;
     }
 
-    /**
-     * VERY simple hash for school use.
-     */
-    private static String hashPassword(String password) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < password.length(); i++) {
-            int value = password.charAt(i) * (i + 1) + 11;
-            sb.append(Integer.toHexString(value));
-        }
-        return sb.toString();
+    /** Lower-case form used in the table and as cache key. */
+    private static String key(String username) {
+        return username.trim().toLowerCase(Locale.ROOT);
     }
 
-    private static boolean matchesPassword(String plain, String stored) {
-        if (stored == null) {
-            return false;
-        }
-        if (stored.equals(hashPassword(plain))) {
-            return true;  // hashed row
-        }
-        if (stored.equals(plain)) {
-            return true;                // legacy plain
+    /** Store a current-format hash; a failure only means it is tried again next login. */
+    private static void rehash(String key, String password, String oldHash) {
+        try (Connection c = DB.get(); PreparedStatement ps = c.prepareStatement(SQL_REHASH)) {
+            ps.setString(1, PasswordHash.hash(password));
+            ps.setString(2, key);
+            ps.setString(3, oldHash);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("[rehash] " + e.getMessage());
         }
-        try {
-            String legacy = trySimpleDecode(stored);
-            if (plain.equals(legacy)) {
-                return true;
+    }
+
+    private static boolean isKnownUnknown(String key) {
+        synchronized (UNKNOWN) {
+            Long until = UNKNOWN.get(key);
+            if (until == null) {
+                return false;
+            }
+            if (until.longValue() < System.currentTimeMillis()) {
+                UNKNOWN.remove(key);
+                return false;
             }
-        } catch (Exception ignore) {
+            return true;
         }
-        return false;
     }
 
-    /**
-     * Try to decode a legacy base64/xor string.
-     */
-    private static String trySimpleDecode(String s) {
-        try {
-            byte[] raw = java.util.Base64.getDecoder().decode(s);
-            char key = 0x3A;
-            char[] out = new char[raw.length];
-            for (int i = 0; i < raw.length; i++) {
-                out[i] = (char) (raw[i] ^ key);
-            }
-            return new String(out);
-        } catch (Exception e) {
-            return s; // not encoded
+    private static void rememberUnknown(String key) {
+        synchronized (UNKNOWN) {
+            UNKNOWN.put(key, Long.valueOf(System.currentTimeMillis() + UNKNOWN_TTL_MILLIS));
+        }
+    }
+
+    private static void forgetUnknown(String key) {
+        synchronized (UNKNOWN) {
+            UNKNOWN.remove(key);
         }
     }
 }
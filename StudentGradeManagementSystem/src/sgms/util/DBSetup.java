@@ -1,139 +1,56 @@
 package sgms.util;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 import sgms.dao.DB;
+import sgms.dao.SchemaBootstrap;
+import sgms.dao.impl.UcanaccessFinalGradeDAO;
 
 /**
- * Creates all tables in School.accdb.
- * Run this ONCE on a new database. If you run it again, Access will say
- * the tables already exist.
+ * Sets up the database ({@link DB} picks Access or HSQLDB). The tables are
+ * created by {@link SchemaBootstrap} when the first connection is opened (on
+ * every start, not only here); this adds the default admin user if there are
+ * no users yet, and checks the stored final grades against the marks,
+ * repairing any that are wrong (e.g. after an older version of the program
+ * changed marks in a shared database). Safe to run more than once.
  */
 public class DBSetup {
 
     public static void main(String[] args) {
+        // DB.get() has already created any missing tables
         try (Connection c = DB.get(); Statement s = c.createStatement()) {
 
-            // ── 1) USERS ───────────────────────────────────────────────────
-            s.executeUpdate("""
-                CREATE TABLE tblUsers (
-                    userId        AUTOINCREMENT PRIMARY KEY,
-                    fullName      TEXT(50),
-                    username      TEXT(30)  UNIQUE NOT NULL,
-                    passwordHash  TEXT(80)  NOT NULL,
-                    role          TEXT(20)  DEFAULT 'Teacher'
-                )
-            """);
-
-            // default admin user (password hash matches the simple hasher used)
-            s.executeUpdate("""
-                INSERT INTO tblUsers (fullName, username, passwordHash, role)
-                VALUES ('Administrator', 'admin',
-                        '6cd31521af231',
-                        'Administrator')
-            """);
-
-            // ── 2) STUDENTS ────────────────────────────────────────────────
-            s.executeUpdate("""
-                CREATE TABLE tblStudents (
-                    studentId   AUTOINCREMENT PRIMARY KEY,
-                    firstName   TEXT(30)   NOT NULL,
-                    lastName    TEXT(30)   NOT NULL,
-                    gradeLevel  INTEGER    NOT NULL
-                )
-            """);
-
-            // ── 3) COURSES ─────────────────────────────────────────────────
-            s.executeUpdate("""
-                CREATE TABLE tblCourses (
-                    courseId    AUTOINCREMENT PRIMARY KEY,
-                    courseCode  TEXT(10) UNIQUE NOT NULL,
-                    courseName  TEXT(50) NOT NULL,
-                    gradeLevel  INTEGER   NOT NULL
-                )
-            """);
-
-            // ── 3b) ENROLMENTS (student ↔ course) ──────────────────────────
-            s.executeUpdate("""
-                CREATE TABLE tblStudentCourses (
-                    studentId  INTEGER NOT NULL,
-                    courseId   INTEGER NOT NULL,
-                    PRIMARY KEY (studentId, courseId),
-                    FOREIGN KEY (studentId) REFERENCES tblStudents(studentId),
-                    FOREIGN KEY (courseId)  REFERENCES tblCourses(courseId)
-                )
-            """);
-
-            // ── 4) ASSIGNMENTS ─────────────────────────────────────────────
-            s.executeUpdate("""
-                CREATE TABLE tblAssignments (
-                    assignmentId  AUTOINCREMENT PRIMARY KEY,
-                    courseId      INTEGER NOT NULL,
-                    title         TEXT(50) NOT NULL,
-                    maxMarks      INTEGER  NOT NULL,
-                    term          INTEGER  NOT NULL,
-                    dueDate       DATE     NOT NULL,
-                    FOREIGN KEY (courseId) REFERENCES tblCourses(courseId)
-                )
-            """);
-
-            // ── 5) GRADES (raw marks) ──────────────────────────────────────
-            s.executeUpdate("""
-                CREATE TABLE tblGrades (
-                    studentId     INTEGER NOT NULL,
-                    assignmentId  INTEGER NOT NULL,
-                    markAwarded   INTEGER,
-                    PRIMARY KEY (studentId, assignmentId),
-                    FOREIGN KEY (studentId)    REFERENCES tblStudents(studentId),
-                    FOREIGN KEY (assignmentId) REFERENCES tblAssignments(assignmentId)
-                )
-            """);
-
-            // ── 6) FINAL GRADES (optional cache) ───────────────────────────
-            s.executeUpdate("""
-                CREATE TABLE tblFinalGrades (
-                    studentId  INTEGER PRIMARY KEY,
-                    term1      INTEGER,
-                    term2      INTEGER,
-                    term3      INTEGER,
-                    term4      INTEGER,
-                    finalGrade INTEGER,
-                    FOREIGN KEY (studentId) REFERENCES tblStudents(studentId)
-                )
-            """);
-
-            // ── 7) ATTENDANCE ──────────────────────────────────────────────
-            // Column name is attendanceDate (matches AttendanceDAO).
-            s.executeUpdate("""
-                CREATE TABLE tblAttendance (
-                    studentId      INTEGER NOT NULL,
-                    courseId       INTEGER NOT NULL,
-                    attendanceDate DATE    NOT NULL,
-                    present        YESNO   DEFAULT FALSE,
-                    PRIMARY KEY (studentId, courseId, attendanceDate),
-                    FOREIGN KEY (studentId) REFERENCES tblStudents(studentId),
-                    FOREIGN KEY (courseId)  REFERENCES tblCourses(courseId)
-                )
-            """);
-
-            // ── 8) FEEDBACK ────────────────────────────────────────────────
-            s.executeUpdate("""
-                CREATE TABLE tblFeedback (
-                    feedbackId  AUTOINCREMENT PRIMARY KEY,
-                    studentId   INTEGER NOT NULL,
-                    courseId    INTEGER NOT NULL,
-                    note        MEMO,
-                    entryDate   DATE DEFAULT DATE(),
-                    FOREIGN KEY (studentId) REFERENCES tblStudents(studentId),
-                    FOREIGN KEY (courseId)  REFERENCES tblCourses(courseId)
-                )
-            """);
-
-            System.out.println("Done: tables created.");
+            long users;
+            try (ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM tblUsers")) {
+                users = rs.next() ? rs.getLong(1) : 0L;
+            }
+
+            if (users == 0) {
+                // default admin user, password "admin"
+                try (PreparedStatement ps = c.prepareStatement("""
+                    INSERT INTO tblUsers (fullName, username, passwordHash, role)
+                    VALUES ('Administrator', 'admin', ?, 'Administrator')
+                """)) {
+                    ps.setString(1, PasswordHash.hash("admin"));
+                    ps.executeUpdate();
+                }
+            }
+
+            System.out.println("Done: schema version " + SchemaBootstrap.CURRENT_VERSION + ".");
         } catch (SQLException e) {
             System.err.println("Schema creation failed: " + e.getMessage());
+            return;
+        }
+
+        try {
+            int repaired = new UcanaccessFinalGradeDAO().checkConsistency(true);
+            System.out.println("Final grades: " + repaired + " row(s) repaired.");
+        } catch (SQLException e) {
+            System.err.println("Final grade check failed: " + e.getMessage());
         }
     }
 
@@ -0,0 +1,467 @@
+package sgms.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A .docx mail-merge template that has been read and scanned once.
+ * The main document, headers and footers are split into literal byte chunks
+ * and merge slots, so rendering a card is one pass that writes straight into
+ * the output zip. Supported fields (same as the old regex merge):
+ *  - {{KEY}}, ${KEY}, &lt;&lt;KEY&gt;&gt;
+ *  - Word MERGEFIELD (fldSimple)
+ *  - Word MERGEFIELD (begin/instrText/end runs)
+ *  - «KEY» chevrons
+ * Other entries are kept as raw bytes; stored (uncompressed) ones such as
+ * images are copied as-is with their CRC worked out once.
+ * {@link #getKeys()} lists every key the template refers to, so callers can
+ * leave out values that would never be used.
+ * <p>
+ * {@link #renderMerged(Iterator, OutputStream)} writes many cards into one
+ * document: the body is repeated once per card with a section break in
+ * between, while styles, numbering and media are shared.
+ */
+public final class DocxTemplate {
+
+    // Whole fields first, then text placeholders (same order as the old passes)
+    private static final Pattern FIELDS = Pattern.compile(
+            "(?s)"
+            + "(<w:fldSimple[^>]*w:instr=\"[^\"]*MERGEFIELD\\s+([^\"\\s]+)[^\"]*\"[^>]*>.*?</w:fldSimple>)"
+            + "|(<w:r[^>]*>\\s*<w:fldChar[^>]*w:type=\"begin\"[^>]*/>\\s*</w:r>"
+            + ".*?<w:instrText[^>]*>[^<]*MERGEFIELD\\s+([^<\\s]+)[^<]*</w:instrText>"
+            + ".*?<w:r[^>]*>\\s*<w:fldChar[^>]*w:type=\"end\"[^>]*/>\\s*</w:r>)"
+            + "|" + textPatterns());
+
+    // Body of a merged document: fields plus drawing IDs, which must stay unique
+    private static final Pattern BODY = Pattern.compile(FIELDS.pattern() + "|(<wp:docPr id=\"(\\d+)\")");
+
+    // Placeholders only, for the text inside a field whose key has no value
+    private static final Pattern TEXT = Pattern.compile(textPatterns());
+
+    private static final Pattern MAIL_MERGE = Pattern.compile("(?s)<w:mailMerge[\\s\\S]*?</w:mailMerge>");
+
+    private static final int ESCAPED = 0; // value escaped in place
+    private static final int RUN = 1;     // value as a whole <w:r> run
+    private static final int DRAWING = 2; // <wp:docPr id="..."> renumbered per card
+
+    // between cards when the template has no section properties to copy
+    private static final String PAGE_BREAK = "<w:p><w:r><w:br w:type=\"page\"/></w:r></w:p>";
+
+    private final List<Part> parts;
+    private final Set<String> keys;
+
+    private DocxTemplate(List<Part> parts) {
+        this.parts = parts;
+        Set<String> found = new LinkedHashSet<String>();
+        for (int i = 0; i < parts.size(); i++) {
+            Segment[] segments = parts.get(i).segments;
+            if (segments != null) {
+                collectKeys(segments, found);
+            }
+        }
+        this.keys = Collections.unmodifiableSet(found);
+    }
+
+    /**
+     * Read a .docx template and scan its merge fields.
+     *
+     * @param docx template bytes (the stream is read to the end, not closed)
+     * @return compiled template, safe to render from many threads
+     * @throws IOException if the zip cannot be read
+     */
+    public static DocxTemplate compile(InputStream docx) throws IOException {
+        List<Part> parts = new ArrayList<Part>();
+        ZipInputStream zin = new ZipInputStream(docx);
+
+        ZipEntry inEntry;
+        while ((inEntry = zin.getNextEntry()) != null) {
+            String name = inEntry.getName();
+            byte[] data = readAllBytes(zin);
+
+            if ("word/document.xml".equals(name)
+                    || name.startsWith("word/header")
+                    || name.startsWith("word/footer")) {
+                String xml = new String(data, StandardCharsets.UTF_8);
+                Part part = new Part(name, null, false, 0L, scan(xml, FIELDS));
+                if ("word/document.xml".equals(name)) {
+                    splitBody(part, xml);
+                }
+                parts.add(part);
+            } else if ("word/settings.xml".equals(name)) {
+                // Remove the mailMerge settings so Word doesn’t prompt
+                String xml = new String(data, StandardCharsets.UTF_8);
+                xml = MAIL_MERGE.matcher(xml).replaceAll("");
+                parts.add(new Part(name, xml.getBytes(StandardCharsets.UTF_8), false, 0L, null));
+            } else {
+                boolean stored = inEntry.getMethod() == ZipEntry.STORED;
+                long crc = 0L;
+                if (stored) {
+                    CRC32 c = new CRC32();
+                    c.update(data);
+                    crc = c.getValue();
+                }
+                parts.add(new Part(name, data, stored, crc, null));
+            }
+            zin.closeEntry();
+        }
+        return new DocxTemplate(parts);
+    }
+
+    /** Merge keys used anywhere in the template, in document order. */
+    public Set<String> getKeys() {
+        return keys;
+    }
+
+    /** True if the template has a field or placeholder for {@code key}. */
+    public boolean uses(String key) {
+        return keys.contains(key);
+    }
+
+    /**
+     * Write one merged .docx. Keys the template does not use are ignored;
+     * fields whose key is missing from the data are left as they are.
+     *
+     * @param data merge values by key
+     * @param out where the .docx goes (not closed)
+     * @throws IOException if writing fails
+     */
+    public void render(Map<String, String> data, OutputStream out) throws IOException {
+        ZipOutputStream zout = new ZipOutputStream(out);
+        for (int i = 0; i < parts.size(); i++) {
+            Part p = parts.get(i);
+            ZipEntry e = new ZipEntry(p.name);
+            if (p.stored) {
+                e.setMethod(ZipEntry.STORED);
+                e.setSize(p.data.length);
+                e.setCompressedSize(p.data.length);
+                e.setCrc(p.crc);
+            }
+            zout.putNextEntry(e);
+            if (p.segments == null) {
+                zout.write(p.data);
+            } else {
+                write(p.segments, data, zout, 0, null);
+            }
+            zout.closeEntry();
+        }
+        zout.finish();
+    }
+
+    /**
+     * Write one .docx holding every card, each starting on a new page.
+     * Cards are pulled from the iterator one at a time and written straight
+     * into the zip, so only the current card's data is in memory. Headers and
+     * footers use the first card's data.
+     *
+     * @param cards merge values for each card, in order
+     * @param out where the .docx goes (not closed)
+     * @return number of cards written
+     * @throws IOException if writing fails or the template has no body
+     */
+    public int renderMerged(Iterator<Map<String, String>> cards, OutputStream out) throws IOException {
+        Map<String, String> first = cards.hasNext() ? cards.next() : null;
+        if (first == null) {
+            throw new IOException("There are no report cards to write.");
+        }
+
+        int count = 0;
+        ZipOutputStream zout = new ZipOutputStream(out);
+        for (int i = 0; i < parts.size(); i++) {
+            Part p = parts.get(i);
+            ZipEntry e = new ZipEntry(p.name);
+            if (p.stored) {
+                e.setMethod(ZipEntry.STORED);
+                e.setSize(p.data.length);
+                e.setCompressedSize(p.data.length);
+                e.setCrc(p.crc);
+            }
+            zout.putNextEntry(e);
+
+            if (p.segments == null) {
+                zout.write(p.data);
+            } else if (p.body == null) {
+                write(p.segments, first, zout, 0, null);
+            } else {
+                long[] nextId = {p.nextDrawingId};
+                write(p.head, first, zout, 0, null);
+                Map<String, String> card = first;
+                while (card != null) {
+                    if (count > 0) {
+                        zout.write(p.separator);
+                    }
+                    write(p.body, card, zout, count, nextId);
+                    count++;
+                    card = cards.hasNext() ? cards.next() : null;
+                }
+                write(p.tail, first, zout, 0, null);
+            }
+            zout.closeEntry();
+        }
+        if (count == 0) {
+            throw new IOException("Template has no word/document.xml body.");
+        }
+        zout.finish();
+        return count;
+    }
+
+    // ----------------- compile -----------------
+
+    /** Add the key of every slot, including ones inside field fallbacks. */
+    private static void collectKeys(Segment[] segments, Set<String> out) {
+        for (int i = 0; i < segments.length; i++) {
+            Segment s = segments[i];
+            if (s.bytes == null && s.kind != DRAWING) {
+                out.add(s.key);
+                collectKeys(s.fallback, out);
+            }
+        }
+    }
+
+    /** Split XML into literal chunks and slots using one left-to-right scan. */
+    private static Segment[] scan(String xml, Pattern pattern) {
+        boolean fields = pattern != TEXT;
+        List<Segment> out = new ArrayList<Segment>();
+        Matcher m = pattern.matcher(xml);
+        int last = 0;
+        while (m.find()) {
+            if (m.start() > last) {
+                out.add(Segment.literal(xml.substring(last, m.start())));
+            }
+            String whole = m.group();
+            String key;
+            int kind;
+            Segment[] fallback;
+            if (fields && m.group(1) != null) {
+                key = unquote(m.group(2));
+                kind = RUN;
+                fallback = scan(whole, TEXT);
+            } else if (fields && m.group(3) != null) {
+                key = unquote(m.group(4));
+                kind = RUN;
+                fallback = scan(whole, TEXT);
+            } else if (pattern == BODY && m.group(9) != null) {
+                key = m.group(10);
+                kind = DRAWING;
+                fallback = new Segment[]{Segment.literal(whole)};
+            } else {
+                key = textKey(m, fields ? 5 : 1);
+                kind = ESCAPED;
+                fallback = new Segment[]{Segment.literal(whole)};
+            }
+            out.add(Segment.slot(key, kind, fallback));
+            last = m.end();
+        }
+        if (last < xml.length()) {
+            out.add(Segment.literal(xml.substring(last)));
+        }
+        return out.toArray(new Segment[0]);
+    }
+
+    /**
+     * Split document.xml into what comes before the body content, the content
+     * itself and the final section properties, for merged output.
+     */
+    private static void splitBody(Part part, String xml) {
+        int open = xml.indexOf("<w:body");
+        int close = xml.lastIndexOf("</w:body>");
+        if (open < 0 || close < open) {
+            return;
+        }
+        int start = xml.indexOf('>', open) + 1;
+
+        // body-level sectPr: the last one, after the last paragraph or table
+        int sect = xml.lastIndexOf("<w:sectPr", close);
+        int lastBlock = Math.max(xml.lastIndexOf("</w:p>", close), xml.lastIndexOf("</w:tbl>", close));
+        if (sect < start || sect < lastBlock) {
+            sect = close;
+        }
+
+        part.head = scan(xml.substring(0, start), FIELDS);
+        part.body = scan(xml.substring(start, sect), BODY);
+        part.tail = scan(xml.substring(sect), FIELDS);
+
+        // a paragraph holding a copy of the section properties ends one card's section
+        String separator = (sect < close)
+                ? "<w:p><w:pPr>" + xml.substring(sect, close) + "</w:pPr></w:p>"
+                : PAGE_BREAK;
+        part.separator = separator.getBytes(StandardCharsets.UTF_8);
+
+        long max = 0L;
+        Matcher m = BODY.matcher(xml);
+        while (m.find()) {
+            if (m.group(9) != null) {
+                max = Math.max(max, Long.parseLong(m.group(10)));
+            }
+        }
+        part.nextDrawingId = max + 1;
+    }
+
+    /** {{K}} | ${K} | <<K>> | «K» */
+    private static String textPatterns() {
+        return "\\{\\{([^{}<]+)\\}\\}"
+                + "|\\$\\{([^{}<]+)\\}"
+                + "|<<([^<>]+)>>"
+                + "|\u00AB([^\u00AB\u00BB<]+)\u00BB";
+    }
+
+    /** The key from whichever text placeholder matched (four groups from {@code first}). */
+    private static String textKey(Matcher m, int first) {
+        for (int g = first; g < first + 4; g++) {
+            if (m.group(g) != null) {
+                return m.group(g);
+            }
+        }
+        return "";
+    }
+
+    /** Word may write the field name in quotes: MERGEFIELD "Name". */
+    private static String unquote(String key) {
+        if (key.length() >= 2 && key.startsWith("\"") && key.endsWith("\"")) {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    // ----------------- render -----------------
+
+    /**
+     * Write segments for one card. {@code card} is the card's position in a
+     * merged document (0 for a single card); drawings after the first card get
+     * new IDs from {@code nextId}.
+     */
+    private static void write(Segment[] segments, Map<String, String> data, OutputStream out,
+                              int card, long[] nextId) throws IOException {
+        for (int i = 0; i < segments.length; i++) {
+            Segment s = segments[i];
+            if (s.bytes != null) {
+                out.write(s.bytes);
+                continue;
+            }
+            if (s.kind == DRAWING) {
+                if (card == 0 || nextId == null) {
+                    write(s.fallback, data, out, card, nextId);
+                } else {
+                    String id = "<wp:docPr id=\"" + (nextId[0]++) + "\"";
+                    out.write(id.getBytes(StandardCharsets.UTF_8));
+                }
+                continue;
+            }
+            String value = (data == null) ? null : data.get(s.key);
+            if (value == null && (data == null || !data.containsKey(s.key))) {
+                write(s.fallback, data, out, card, nextId);
+                continue;
+            }
+            String xml = (s.kind == RUN) ? makeRun(value) : escapeXmlWithLineBreaks(value);
+            out.write(xml.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // ----------------- text helpers -----------------
+
+    /** Turn plain text into a Word run, keeping new lines. */
+    static String makeRun(String text) {
+        String safe = text == null ? "" : text;
+        String[] parts = safe.split("\\n", -1);
+        StringBuilder run = new StringBuilder("<w:r>");
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) run.append("<w:br/>");
+            run.append("<w:t>").append(escapeXml(parts[i])).append("</w:t>");
+        }
+        run.append("</w:r>");
+        return run.toString();
+    }
+
+    /** Escape XML and insert <w:br/> for new lines. */
+    static String escapeXmlWithLineBreaks(String s) {
+        if (s == null || s.length() == 0) return "";
+        String[] parts = s.split("\\n", -1);
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) b.append("<w:br/>");
+            b.append(escapeXml(parts[i]));
+        }
+        return b.toString();
+    }
+
+    static String escapeXml(String s) {
+        if (s == null) return "";
+        return s.replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;");
+    }
+
+    private static byte[] readAllBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int r;
+        while ((r = in.read(buf)) != -1) {
+            bos.write(buf, 0, r);
+        }
+        return bos.toByteArray();
+    }
+
+    // ----------------- compiled pieces -----------------
+
+    /** One zip entry: raw bytes, or segments to merge. */
+    private static final class Part {
+        final String name;
+        final byte[] data;
+        final boolean stored;
+        final long crc;
+        final Segment[] segments;
+
+        // document.xml only, for merged output (body == null if it cannot be split)
+        Segment[] head;
+        Segment[] body;
+        Segment[] tail;
+        byte[] separator;
+        long nextDrawingId;
+
+        Part(String name, byte[] data, boolean stored, long crc, Segment[] segments) {
+            this.name = name;
+            this.data = data;
+            this.stored = stored;
+            this.crc = crc;
+            this.segments = segments;
+        }
+    }
+
+    /** Literal UTF-8 bytes, or a slot filled from the merge data. */
+    private static final class Segment {
+        final byte[] bytes;
+        final String key;
+        final int kind;
+        final Segment[] fallback; // written when the key has no value
+
+        private Segment(byte[] bytes, String key, int kind, Segment[] fallback) {
+            this.bytes = bytes;
+            this.key = key;
+            this.kind = kind;
+            this.fallback = fallback;
+        }
+
+        static Segment literal(String text) {
+            return new Segment(text.getBytes(StandardCharsets.UTF_8), null, 0, null);
+        }
+
+        static Segment slot(String key, int kind, Segment[] fallback) {
+            return new Segment(null, key, kind, fallback);
+        }
+    }
+}
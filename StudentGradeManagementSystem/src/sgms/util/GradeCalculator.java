@@ -46,6 +46,15 @@ public final class GradeCalculator {
         return Double.valueOf(finalPct);
     }
 
+    /**
+     * One assignment mark as a percentage: (raw / maxMarks) * 100.
+     * A missing or zero max counts as 0%.
+     */
+    public static double assignmentPercent(int raw, Integer maxMarks) {
+        int max = (maxMarks == null) ? 0 : maxMarks.intValue();
+        return (max > 0) ? (raw * 100.0) / max : 0.0;
+    }
+
     /** Average of an int array (returns double). Empty array → 0.0. */
     public static double classAverage(int[] marks) {
         if (marks == null || marks.length == 0) return 0.0;
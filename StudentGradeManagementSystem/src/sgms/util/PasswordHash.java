@@ -0,0 +1,163 @@
+package sgms.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Password hashes as stored in {@code tblUsers.passwordHash}.
+ * <p>
+ * Current format, version 1: {@code v1$<iterations>$<salt>$<key>}, where the
+ * key is PBKDF2 with HMAC-SHA256 over the password, a random 16-byte salt and
+ * the given number of iterations (salt and key in unpadded base64). At most
+ * 77 characters, so it fits the 80-character column.
+ * <p>
+ * The iteration count is the work factor: each login costs that many HMAC
+ * rounds. It defaults to {@link #DEFAULT_ITERATIONS} and can be changed with
+ * the system property {@code sgms.auth.iterations}; {@code PasswordHashBenchmark}
+ * (in the test sources) shows what a login costs at different values. Rows with fewer iterations,
+ * or in one of the old formats (the short hex hash, plain text, base64/XOR),
+ * still verify, and {@link #needsRehash} tells the caller to store a new hash.
+ */
+public final class PasswordHash {
+
+    /** Work factor used when {@code sgms.auth.iterations} is not set. */
+    public static final int DEFAULT_ITERATIONS = 120_000;
+
+    private static final String PREFIX = "v1$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+    private static final int MIN_ITERATIONS = 1_000;
+    private static final int MAX_ITERATIONS = 9_999_999; // keeps the hash within 80 characters
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private PasswordHash() {}
+
+    /** Work factor for new hashes. */
+    public static int iterations() {
+        String v = System.getProperty("sgms.auth.iterations");
+        if (v != null) {
+            try {
+                return clamp(Integer.parseInt(v.trim()));
+            } catch (NumberFormatException ex) {
+                System.err.println("[auth] ignoring sgms.auth.iterations=" + v);
+            }
+        }
+        return DEFAULT_ITERATIONS;
+    }
+
+    /** New hash of the password at the current work factor. */
+    public static String hash(String password) {
+        return hash(password, iterations());
+    }
+
+    /** New hash of the password with the given number of iterations. */
+    public static String hash(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        int n = clamp(iterations);
+        Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + n + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(derive(password, salt, n));
+    }
+
+    /**
+     * True if the password matches the stored value, in the current or an
+     * old format. Never throws; a damaged value simply does not match.
+     */
+    public static boolean verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        if (stored.startsWith(PREFIX)) {
+            String[] parts = stored.split("\\$");
+            if (parts.length != 4) {
+                return false;
+            }
+            try {
+                int n = Integer.parseInt(parts[1]);
+                byte[] salt = Base64.getDecoder().decode(parts[2]);
+                byte[] expected = Base64.getDecoder().decode(parts[3]);
+                if (n < MIN_ITERATIONS || n > MAX_ITERATIONS) {
+                    return false;
+                }
+                return MessageDigest.isEqual(expected, derive(password, salt, n));
+            } catch (IllegalArgumentException ex) {
+                return false; // bad number or base64
+            }
+        }
+        return verifyLegacy(password, stored);
+    }
+
+    /**
+     * True if the stored value should be replaced by {@link #hash(String)}:
+     * it is in an old format or uses fewer iterations than now configured.
+     */
+    public static boolean needsRehash(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) {
+            return true;
+        }
+        int end = stored.indexOf('$', PREFIX.length());
+        try {
+            return end < 0 || Integer.parseInt(stored.substring(PREFIX.length(), end)) < iterations();
+        } catch (NumberFormatException ex) {
+            return true;
+        }
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ALGORITHM + " is not available", ex);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static int clamp(int iterations) {
+        return Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, iterations));
+    }
+
+    // ---------- formats written by older versions ----------
+
+    /** Old hex hash, plain text, or base64 with XOR 0x3A. */
+    private static boolean verifyLegacy(String password, String stored) {
+        if (constantTimeEquals(stored, legacyHash(password))) {
+            return true;
+        }
+        if (constantTimeEquals(stored, password)) {
+            return true;
+        }
+        try {
+            byte[] raw = Base64.getDecoder().decode(stored);
+            char[] out = new char[raw.length];
+            for (int i = 0; i < raw.length; i++) {
+                out[i] = (char) (raw[i] ^ 0x3A);
+            }
+            return constantTimeEquals(new String(out), password);
+        } catch (IllegalArgumentException ex) {
+            return false; // not base64
+        }
+    }
+
+    /** The hash used before version 1 (character codes times position, in hex). */
+    private static String legacyHash(String password) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < password.length(); i++) {
+            int value = password.charAt(i) * (i + 1) + 11;
+            sb.append(Integer.toHexString(value));
+        }
+        return sb.toString();
+    }
+
+    private static boolean constantTimeEquals(String a, String b) {
+        return MessageDigest.isEqual(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,216 @@
+// src/sgms/util/SearchIndex.java
+package sgms.util;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.TableModel;
+import java.util.*;
+
+/**
+ * Word index over the rows of one table model, used by the smart search.
+ * <p>
+ * Every cell is normalised and split into words once. Each word keeps the set
+ * of rows it appears in, and each word is also listed under its three-letter
+ * pieces (trigrams), so a search term finds the words that contain it without
+ * scanning every cell. A query then becomes one row set per term, intersected.
+ * <p>
+ * The index listens to the model: edited or appended rows are re-indexed on
+ * the spot, anything else (deletes, reloads, new columns) marks it for a full
+ * rebuild on the next search. Use it on the Swing event thread only.
+ */
+public final class SearchIndex implements TableModelListener {
+
+    private static final String[] NO_WORDS = new String[0];
+
+    private final TableModel model;
+    /** word -> rows it appears in */
+    private final Map<String, BitSet> postings = new HashMap<>();
+    /** trigram -> words that contain it */
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+    /** distinct words of each row, so a changed row can be taken out again */
+    private final List<String[]> rowWords = new ArrayList<>();
+    private boolean stale = true;
+    private int version;
+
+    public SearchIndex(TableModel model) {
+        this.model = model;
+        model.addTableModelListener(this);
+    }
+
+    /** Stop listening to the model. */
+    public void dispose() {
+        model.removeTableModelListener(this);
+    }
+
+    public TableModel getModel() {
+        return model;
+    }
+
+    /** Changes whenever the indexed rows may have changed. */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Rows where every query term is part of some word in the row (the order
+     * of the terms does not matter, so "Smith Jake", "Jake Smith" and
+     * "Smith, Jake" all find the same rows).
+     *
+     * @return model row indexes, or null if the query has no terms (all rows)
+     */
+    public BitSet match(String query) {
+        ensureBuilt();
+        String[] terms = words(query);
+        if (terms.length == 0) return null;
+
+        BitSet result = null;
+        for (String t : terms) {
+            BitSet rows = rowsContaining(t);
+            if (result == null) result = rows;
+            else result.and(rows);
+            if (result.isEmpty()) break;
+        }
+        return result;
+    }
+
+    @Override
+    public void tableChanged(TableModelEvent e) {
+        version++;
+        if (stale) return;
+
+        int first = e.getFirstRow();
+        int last = e.getLastRow();
+        boolean rowRange = first >= 0 && last != Integer.MAX_VALUE; // not a header or "all rows" event
+
+        if (e.getType() == TableModelEvent.UPDATE && rowRange && last < rowWords.size()
+                && model.getRowCount() == rowWords.size()) {
+            for (int r = first; r <= last; r++) {
+                removeRow(r);
+                addRow(r);
+            }
+        } else if (e.getType() == TableModelEvent.INSERT && rowRange && first == rowWords.size()
+                && model.getRowCount() == last + 1) {
+            for (int r = first; r <= last; r++) {
+                addRow(r);
+            }
+        } else {
+            stale = true;
+        }
+    }
+
+    // ----------------- building -----------------
+
+    private void ensureBuilt() {
+        if (!stale && model.getRowCount() == rowWords.size()) return;
+        postings.clear();
+        trigrams.clear();
+        rowWords.clear();
+        for (int r = 0; r < model.getRowCount(); r++) {
+            addRow(r);
+        }
+        stale = false;
+    }
+
+    /** Index row r; rows are only ever added at the end or re-added in place. */
+    private void addRow(int r) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (int c = 0; c < model.getColumnCount(); c++) {
+            Object v = model.getValueAt(r, c);
+            if (v != null) Collections.addAll(distinct, words(String.valueOf(v)));
+        }
+        String[] ws = distinct.toArray(NO_WORDS);
+        if (r == rowWords.size()) rowWords.add(ws);
+        else rowWords.set(r, ws);
+
+        for (String w : ws) {
+            BitSet rows = postings.get(w);
+            if (rows == null) {
+                rows = new BitSet();
+                postings.put(w, rows);
+                for (int i = 0; i + 3 <= w.length(); i++) {
+                    String g = w.substring(i, i + 3);
+                    Set<String> s = trigrams.get(g);
+                    if (s == null) {
+                        s = new HashSet<>();
+                        trigrams.put(g, s);
+                    }
+                    s.add(w);
+                }
+            }
+            rows.set(r);
+        }
+    }
+
+    private void removeRow(int r) {
+        for (String w : rowWords.get(r)) {
+            BitSet rows = postings.get(w);
+            rows.clear(r);
+            if (rows.isEmpty()) {
+                postings.remove(w);
+                for (int i = 0; i + 3 <= w.length(); i++) {
+                    String g = w.substring(i, i + 3);
+                    Set<String> s = trigrams.get(g);
+                    if (s != null && s.remove(w) && s.isEmpty()) trigrams.remove(g);
+                }
+            }
+        }
+        rowWords.set(r, NO_WORDS);
+    }
+
+    // ----------------- lookup -----------------
+
+    private BitSet rowsContaining(String term) {
+        BitSet rows = new BitSet();
+        for (String w : candidateWords(term)) {
+            if (w.contains(term)) rows.or(postings.get(w));
+        }
+        return rows;
+    }
+
+    /** Words that may contain the term: those sharing its rarest trigram. */
+    private Collection<String> candidateWords(String term) {
+        if (term.length() < 3) return postings.keySet();
+        Set<String> best = null;
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            Set<String> s = trigrams.get(term.substring(i, i + 3));
+            if (s == null) return Collections.emptySet();
+            if (best == null || s.size() < best.size()) best = s;
+        }
+        return best;
+    }
+
+    /**
+     * Lowercase and split into words. Whitespace and punctuation separate
+     * words, except ' and - so O'Connor and Jean-Luc stay whole.
+     */
+    static String[] words(String s) {
+        String x = s.toLowerCase(Locale.ROOT);
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= x.length(); i++) {
+            boolean sep = i == x.length() || isSeparator(x.charAt(i));
+            if (sep) {
+                if (start >= 0) {
+                    out.add(x.substring(start, i));
+                    start = -1;
+                }
+            } else if (start < 0) {
+                start = i;
+            }
+        }
+        return out.toArray(NO_WORDS);
+    }
+
+    private static boolean isSeparator(char ch) {
+        switch (ch) {
+            case ' ': case '\t': case '\n': case '\u000B': case '\f': case '\r':
+                return true;
+            case '\'': case '-':
+                return false;
+            default:
+                // ASCII punctuation, as in \p{Punct}
+                return (ch >= '!' && ch <= '/') || (ch >= ':' && ch <= '@')
+                        || (ch >= '[' && ch <= '`') || (ch >= '{' && ch <= '~');
+        }
+    }
+}
@@ -8,6 +8,8 @@ import javax.swing.table.TableRowSorter;
 import java.util.*;
 
 public final class SearchUtil {
+    private static final String INDEX_KEY = "sgms.searchIndex";
+
     private SearchUtil() {}
 
     /** Apply a smart, name-aware filter to a JTable. */
@@ -31,81 +33,44 @@ public final class SearchUtil {
         sorter.setRowFilter(buildSmartNameRowFilter(table, q));
     }
 
-    /** Build a filter that understands "First Last", "Last First", "Last, First". */
+    /**
+     * Build a filter that understands "First Last", "Last First", "Last, First".
+     * Rows are looked up in the table's {@link SearchIndex} (built once per
+     * model) instead of re-reading every cell for every row on each keystroke.
+     */
     public static RowFilter<TableModel, Integer> buildSmartNameRowFilter(JTable table, String query) {
-        final String q = norm(query);
-        final Set<String> tokens = new LinkedHashSet<>(Arrays.asList(q.split("\\s+")));
-
-        final int firstCol = findColumn(table, "first");
-        final int lastCol  = findColumn(table, "last");
-        final int nameCol  = findColumn(table, "name"); // single combined name column
+        final SearchIndex index = indexFor(table);
+        final String q = query;
 
         return new RowFilter<TableModel, Integer>() {
+            private BitSet rows;
+            private int version = -1;
+
             @Override
             public boolean include(Entry<? extends TableModel, ? extends Integer> e) {
-                StringBuilder hay = new StringBuilder(96);
-
-                // 1) add all textual cells (generic find-anywhere)
-                TableModel m = e.getModel();
-                int row = e.getIdentifier();
-                for (int c = 0; c < m.getColumnCount(); c++) {
-                    Object v = m.getValueAt(row, c);
-                    if (v != null) hay.append(' ').append(norm(String.valueOf(v)));
+                // the sorter re-filters after model changes: look the rows up again then
+                if (version != index.getVersion()) {
+                    rows = index.match(q);
+                    version = index.getVersion();
                 }
-
-                // 2) add friendly name permutations
-                String first = (firstCol >= 0) ? val(m, row, firstCol) : "";
-                String last  = (lastCol  >= 0) ? val(m, row,  lastCol) : "";
-                String name  = (nameCol  >= 0) ? val(m, row,  nameCol) : "";
-
-                if (!first.isEmpty() || !last.isEmpty()) {
-                    hay.append(' ').append(first).append(' ').append(last);       // First Last
-                    hay.append(' ').append(last).append(' ').append(first);       // Last First
-                    hay.append(' ').append(last).append(", ").append(first);      // Last, First
-                }
-                if (!name.isEmpty()) {
-                    // normalise "Smith, Jake" => "smith jake"
-                    String n = norm(name).replace(",", " ");
-                    hay.append(' ').append(n);
-
-                    // also add swapped "Jake Smith"
-                    String[] parts = n.trim().split("\\s+");
-                    if (parts.length == 2) {
-                        hay.append(' ').append(parts[1]).append(' ').append(parts[0]);
-                        hay.append(' ').append(parts[0]).append(", ").append(parts[1]);
-                    }
-                }
-
-                String text = hay.toString();
-                // AND: every token must be present somewhere (order doesn’t matter)
-                for (String t : tokens) {
-                    if (!t.isEmpty() && !text.contains(t)) return false;
-                }
-                return true;
-            }
-
-            private String val(TableModel m, int r, int c) {
-                Object v = m.getValueAt(r, c);
-                return (v == null) ? "" : norm(String.valueOf(v));
+                return rows == null || rows.get(e.getIdentifier());
             }
         };
     }
 
-    /** Find view column by header keyword (case-insensitive, partial). */
-    private static int findColumn(JTable table, String needle) {
-        var cm = table.getColumnModel();
-        for (int i = 0; i < cm.getColumnCount(); i++) {
-            Object h = cm.getColumn(i).getHeaderValue();
-            if (h != null && norm(h.toString()).contains(needle)) return i;
+    /** The search index for the table's current model, replacing one for an older model. */
+    private static SearchIndex indexFor(JTable table) {
+        TableModel m = (table.getRowSorter() != null)
+                ? (TableModel) table.getRowSorter().getModel()
+                : table.getModel();
+        Object o = table.getClientProperty(INDEX_KEY);
+        if (o instanceof SearchIndex) {
+            SearchIndex old = (SearchIndex) o;
+            if (old.getModel() == m) return old;
+            old.dispose();
         }
-        return -1;
-    }
-
-    /** Lowercase; collapse punctuation to spaces (keep ' and - inside names). */
-    private static String norm(String s) {
-        String x = s.toLowerCase(Locale.ROOT);
-        x = x.replaceAll("[\\p{Punct}&&[^'-]]", " "); // keep O'Connor, Jean-Luc friendly
-        x = x.replaceAll("\\s+", " ").trim();
-        return x;
+        SearchIndex index = new SearchIndex(m);
+        table.putClientProperty(INDEX_KEY, index);
+        return index;
     }
 }
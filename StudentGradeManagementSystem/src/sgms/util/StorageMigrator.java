@@ -0,0 +1,225 @@
+package sgms.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+import sgms.dao.AccessStorage;
+import sgms.dao.DB;
+import sgms.dao.HsqldbStorage;
+import sgms.dao.SchemaBootstrap;
+import sgms.dao.StorageBackend;
+import sgms.dao.impl.FinalGradeMaterializer;
+
+/**
+ * Copies School.accdb into a new HSQLDB store, once. The Access file is only
+ * read, never changed.
+ * <pre>
+ * java -cp ... sgms.util.StorageMigrator [--from School.accdb] [--to folder] [--use]
+ * </pre>
+ * Defaults are {@code ~/.sgms/School.accdb} and {@code ~/.sgms/hsqldb}. The
+ * target folder must not hold a database yet. With {@code --use} the program
+ * is switched to the new store afterwards (in {@code ~/.sgms/sgms.properties});
+ * otherwise start it with {@code -Dsgms.db.backend=hsqldb} to try it first.
+ */
+public final class StorageMigrator {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private StorageMigrator() {}
+
+    public static void main(String[] args) {
+        Path from = AccessStorage.defaultLocation();
+        Path to = HsqldbStorage.defaultLocation();
+        boolean use = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--from") && i + 1 < args.length) {
+                from = Paths.get(args[++i]);
+            } else if (args[i].equals("--to") && i + 1 < args.length) {
+                to = Paths.get(args[++i]);
+            } else if (args[i].equals("--use")) {
+                use = true;
+            } else {
+                System.err.println("Usage: StorageMigrator [--from School.accdb] [--to folder] [--use]");
+                return;
+            }
+        }
+
+        AccessStorage source = new AccessStorage(from);
+        HsqldbStorage target = new HsqldbStorage(to);
+        if (!source.exists()) {
+            System.err.println("Nothing to migrate: " + from + " not found.");
+            return;
+        }
+        if (target.exists()) {
+            System.err.println(to + " already holds a database; move it away to migrate again.");
+            return;
+        }
+
+        try {
+            migrate(source, target);
+        } catch (SQLException ex) {
+            System.err.println("Migration failed: " + ex.getMessage());
+            removeStore(to);
+            return;
+        }
+
+        if (use) {
+            try {
+                useBackend(target.getName());
+                System.out.println("The program now uses " + to + ".");
+            } catch (IOException ex) {
+                System.err.println("Could not update " + DB.settingsFile() + ": " + ex.getMessage());
+            }
+        } else {
+            System.out.println("Start the program with -Dsgms.db.backend=" + target.getName()
+                    + " to use it, or run this again with --use on an empty folder.");
+        }
+    }
+
+    /**
+     * Create the schema in the target and copy every application table, in
+     * an order where referenced rows are copied first. The copied final
+     * grades are then checked against the copied marks, since the schema
+     * step that does this ran while the target was still empty.
+     */
+    static void migrate(StorageBackend source, StorageBackend target) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection src = source.open(); Connection dst = target.open()) {
+            SchemaBootstrap.run(dst, target);
+            dst.setAutoCommit(false);
+            for (String table : SchemaBootstrap.tableNames()) {
+                if (!hasTable(src, table)) {
+                    System.out.printf("%-18s not in the source, left empty%n", table);
+                    continue;
+                }
+                long t0 = System.nanoTime();
+                long copied = copyTable(src, dst, table);
+                dst.commit();
+                long expected = count(src, table);
+                if (count(dst, table) != expected) {
+                    throw new SQLException(table + ": copied " + count(dst, table) + " of " + expected + " rows");
+                }
+                System.out.printf("%-18s %8d rows  %7.1f ms%n", table, copied, (System.nanoTime() - t0) / 1e6);
+            }
+            int repaired = FinalGradeMaterializer.checkConsistency(dst, true);
+            dst.commit();
+            System.out.printf("%-18s %8d rows repaired%n", "final grades", repaired);
+            dst.setAutoCommit(true);
+            try (Statement s = dst.createStatement()) {
+                s.execute("CHECKPOINT");
+            }
+        }
+        System.out.printf("Copied %s to %s in %.1f s.%n", source.getLocation(), target.getLocation(),
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    private static long copyTable(Connection src, Connection dst, String table) throws SQLException {
+        List<String> columns = columns(dst, table);
+        String list = String.join(", ", columns);
+        StringBuilder marks = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            marks.append(i == 0 ? "?" : ", ?");
+        }
+
+        long rows = 0;
+        try (Statement read = src.createStatement();
+             ResultSet rs = read.executeQuery("SELECT " + list + " FROM " + table);
+             PreparedStatement write = dst.prepareStatement(
+                     "INSERT INTO " + table + " (" + list + ") VALUES (" + marks + ")")) {
+            while (rs.next()) {
+                for (int i = 1; i <= columns.size(); i++) {
+                    write.setObject(i, rs.getObject(i));
+                }
+                write.addBatch();
+                if (++rows % BATCH_SIZE == 0) {
+                    write.executeBatch();
+                }
+            }
+            if (rows % BATCH_SIZE != 0) {
+                write.executeBatch();
+            }
+        }
+        return rows;
+    }
+
+    /** Column names of a table, in table order. */
+    private static List<String> columns(Connection c, String table) throws SQLException {
+        List<String> names = new ArrayList<String>();
+        DatabaseMetaData meta = c.getMetaData();
+        try (ResultSet rs = meta.getColumns(null, null, table.toUpperCase(Locale.ROOT), null)) {
+            while (rs.next()) {
+                names.add(rs.getString("COLUMN_NAME"));
+            }
+        }
+        if (names.isEmpty()) {
+            throw new SQLException("No columns found for " + table);
+        }
+        return names;
+    }
+
+    private static boolean hasTable(Connection c, String table) throws SQLException {
+        try (ResultSet rs = c.getMetaData().getTables(null, null, table.toUpperCase(Locale.ROOT),
+                new String[] { "TABLE" })) {
+            return rs.next();
+        }
+    }
+
+    private static long count(Connection c, String table) throws SQLException {
+        try (Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0L;
+        }
+    }
+
+    /** Delete the half-made store (only the files HSQLDB names after it). */
+    private static void removeStore(Path dir) {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "school.*")) {
+            for (Path f : files) {
+                if (Files.isDirectory(f)) {
+                    try (DirectoryStream<Path> inner = Files.newDirectoryStream(f)) {
+                        for (Path g : inner) {
+                            Files.deleteIfExists(g);
+                        }
+                    }
+                }
+                Files.deleteIfExists(f);
+            }
+        } catch (IOException ex) {
+            System.err.println("Could not clean up " + dir + ": " + ex.getMessage());
+        }
+    }
+
+    /** Record the backend in ~/.sgms/sgms.properties, keeping other entries. */
+    private static void useBackend(String name) throws IOException {
+        Path file = DB.settingsFile();
+        Properties props = new Properties();
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                props.load(in);
+            }
+        }
+        props.setProperty("backend", name);
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            props.store(out, "Student Grade Management System");
+        }
+    }
+}
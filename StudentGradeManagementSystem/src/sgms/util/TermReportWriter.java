@@ -0,0 +1,220 @@
+package sgms.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import sgms.service.ReportService.ReportRow;
+import sgms.service.TermReportCursor;
+
+/**
+ * Writes the term report as CSV or as a minimal Excel workbook (.xlsx).
+ * Rows are written as they are read from the cursor, so the output is
+ * never built up in memory (the XLSX uses inline strings and has no
+ * shared-string table).
+ */
+public final class TermReportWriter {
+
+    private static final String[] HEADERS = {
+            "Term", "Student ID", "Name", "Course", "Assignment", "Max Marks", "Mark", "Percent"
+    };
+
+    private static final String CONTENT_TYPES =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+            + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+            + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+            + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+            + "<Override PartName=\"/xl/workbook.xml\""
+            + " ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+            + "<Override PartName=\"/xl/worksheets/sheet1.xml\""
+            + " ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+            + "</Types>";
+
+    private static final String ROOT_RELS =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+            + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+            + "<Relationship Id=\"rId1\""
+            + " Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\""
+            + " Target=\"xl/workbook.xml\"/>"
+            + "</Relationships>";
+
+    private static final String WORKBOOK =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+            + "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+            + " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">"
+            + "<sheets><sheet name=\"Term Report\" sheetId=\"1\" r:id=\"rId1\"/></sheets>"
+            + "</workbook>";
+
+    private static final String WORKBOOK_RELS =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+            + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+            + "<Relationship Id=\"rId1\""
+            + " Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\""
+            + " Target=\"worksheets/sheet1.xml\"/>"
+            + "</Relationships>";
+
+    private TermReportWriter() {}
+
+    /**
+     * Write every remaining row as CSV (UTF-8 with a byte order mark so Excel
+     * reads names correctly).
+     *
+     * @param rows open cursor (read to the end, not closed)
+     * @param out where the CSV goes (flushed, not closed)
+     * @return number of rows written
+     */
+    public static int writeCsv(TermReportCursor rows, OutputStream out) throws SQLException, IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        w.write('\uFEFF');
+        writeCsvLine(w, HEADERS);
+
+        int count = 0;
+        String[] cells = new String[HEADERS.length];
+        while (rows.next()) {
+            ReportRow r = rows.getRow();
+            cells[0] = String.valueOf(r.getTerm());
+            cells[1] = String.valueOf(r.getStudentId());
+            cells[2] = r.getFullName();
+            cells[3] = r.getCourseCode();
+            cells[4] = r.getAssignmentTitle();
+            cells[5] = String.valueOf(r.getMaxMarks());
+            cells[6] = (r.getMark() == null) ? "" : r.getMark().toString();
+            cells[7] = (r.getPercentage() == null) ? "" : percent(r.getPercentage().doubleValue());
+            writeCsvLine(w, cells);
+            count++;
+        }
+        w.flush();
+        return count;
+    }
+
+    /**
+     * Write every remaining row as a one-sheet .xlsx workbook. The sheet is
+     * streamed into the zip with inline strings, so no shared-string table
+     * has to be built up first.
+     *
+     * @param rows open cursor (read to the end, not closed)
+     * @param out where the workbook goes (finished, not closed)
+     * @return number of rows written
+     */
+    public static int writeXlsx(TermReportCursor rows, OutputStream out) throws SQLException, IOException {
+        ZipOutputStream zout = new ZipOutputStream(out);
+        putEntry(zout, "[Content_Types].xml", CONTENT_TYPES);
+        putEntry(zout, "_rels/.rels", ROOT_RELS);
+        putEntry(zout, "xl/workbook.xml", WORKBOOK);
+        putEntry(zout, "xl/_rels/workbook.xml.rels", WORKBOOK_RELS);
+
+        zout.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+        Writer w = new BufferedWriter(new OutputStreamWriter(zout, StandardCharsets.UTF_8), 64 * 1024);
+        w.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        w.write("<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">");
+        w.write("<sheetViews><sheetView workbookViewId=\"0\"><pane ySplit=\"1\" topLeftCell=\"A2\""
+                + " activePane=\"bottomLeft\" state=\"frozen\"/></sheetView></sheetViews>");
+        w.write("<sheetData>");
+
+        w.write("<row r=\"1\">");
+        for (int i = 0; i < HEADERS.length; i++) {
+            textCell(w, HEADERS[i]);
+        }
+        w.write("</row>");
+
+        int count = 0;
+        while (rows.next()) {
+            ReportRow r = rows.getRow();
+            count++;
+            w.write("<row r=\"");
+            w.write(String.valueOf(count + 1));
+            w.write("\">");
+            numberCell(w, String.valueOf(r.getTerm()));
+            numberCell(w, String.valueOf(r.getStudentId()));
+            textCell(w, r.getFullName());
+            textCell(w, r.getCourseCode());
+            textCell(w, r.getAssignmentTitle());
+            numberCell(w, String.valueOf(r.getMaxMarks()));
+            numberCell(w, (r.getMark() == null) ? null : r.getMark().toString());
+            numberCell(w, (r.getPercentage() == null) ? null : percent(r.getPercentage().doubleValue()));
+            w.write("</row>");
+        }
+
+        w.write("</sheetData></worksheet>");
+        w.flush();
+        zout.closeEntry();
+        zout.finish();
+        return count;
+    }
+
+    // ----------------- helpers -----------------
+
+    /** Percentage rounded to two decimals, always with a '.' separator. */
+    private static String percent(double pct) {
+        return String.valueOf(Math.round(pct * 100.0) / 100.0);
+    }
+
+    private static void writeCsvLine(Writer w, String[] cells) throws IOException {
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) {
+                w.write(',');
+            }
+            String cell = (cells[i] == null) ? "" : cells[i];
+            if (cell.indexOf(',') >= 0 || cell.indexOf('"') >= 0
+                    || cell.indexOf('\n') >= 0 || cell.indexOf('\r') >= 0) {
+                w.write('"');
+                w.write(cell.replace("\"", "\"\""));
+                w.write('"');
+            } else {
+                w.write(cell);
+            }
+        }
+        w.write("\r\n");
+    }
+
+    private static void putEntry(ZipOutputStream zout, String name, String xml) throws IOException {
+        zout.putNextEntry(new ZipEntry(name));
+        zout.write(xml.getBytes(StandardCharsets.UTF_8));
+        zout.closeEntry();
+    }
+
+    private static void textCell(Writer w, String text) throws IOException {
+        if (text == null || text.isEmpty()) {
+            w.write("<c/>");
+            return;
+        }
+        w.write("<c t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+        w.write(escapeXml(text));
+        w.write("</t></is></c>");
+    }
+
+    private static void numberCell(Writer w, String number) throws IOException {
+        if (number == null) {
+            w.write("<c/>");
+            return;
+        }
+        w.write("<c><v>");
+        w.write(number);
+        w.write("</v></c>");
+    }
+
+    /** Escape XML special characters and drop characters XML cannot hold. */
+    private static String escapeXml(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 16);
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            switch (ch) {
+                case '&': sb.append("&amp;"); break;
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '"': sb.append("&quot;"); break;
+                default:
+                    if (ch >= 0x20 || ch == '\t' || ch == '\n' || ch == '\r') {
+                        sb.append(ch);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,216 @@
+package sgms.dao.impl;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import sgms.dao.AccessStorage;
+import sgms.dao.MigrationRunner;
+import sgms.dao.ReportQuery;
+import sgms.dao.SchemaBootstrap;
+
+/**
+ * Shows how the database runs the main grade, report and attendance joins
+ * before and after the schema migrations (which add the lookup indexes).
+ * <p>
+ * Works on a copy of the database, so the real file is not changed:
+ * <pre>
+ * java -cp ... sgms.dao.impl.QueryPlanBenchmark [path/to/School.accdb]
+ * </pre>
+ * For every query it prints, per table, how the rows are found (FULL SCAN
+ * or INDEX PRED plus the index used) and the average time of a full read.
+ * <p>
+ * Lives in the test source root so it is not shipped with the application.
+ * It reads the private SQL constants of the DAOs, so it always measures
+ * the queries the application actually runs.
+ */
+public final class QueryPlanBenchmark {
+
+    private static final int WARMUP = 5;
+    private static final int RUNS = 30;
+
+    /** One query to look at: label, SQL, and the parameters it needs. */
+    private static final class Probe {
+        final String label;
+        final String sql;
+        final Object[] params;
+
+        Probe(String label, String sql, Object... params) {
+            this.label = label;
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+
+    private QueryPlanBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        Path source = args.length > 0
+                ? Paths.get(args[0])
+                : Paths.get(System.getProperty("user.home"), ".sgms", "School.accdb");
+        if (Files.notExists(source)) {
+            System.err.println("Database not found: " + source);
+            return;
+        }
+        Path copy = Files.createTempFile("sgms-plan", ".accdb");
+        try {
+            Files.copy(source, copy, StandardCopyOption.REPLACE_EXISTING);
+            // a plain connection: DB.get() would migrate before we can look
+            try (Connection c = DriverManager.getConnection("jdbc:ucanaccess://" + copy + ";memory=false")) {
+                List<Probe> probes = probes(c);
+
+                System.out.println("=== Before: schema version " + Math.max(MigrationRunner.readVersion(c), 0) + " ===");
+                report(c, probes);
+
+                long start = System.nanoTime();
+                int version = SchemaBootstrap.run(c, new AccessStorage(copy));
+                System.out.printf("%n(migrated to version %d in %.1f ms)%n%n", version, (System.nanoTime() - start) / 1e6);
+
+                System.out.println("=== After: schema version " + version + " ===");
+                report(c, probes);
+            }
+        } finally {
+            try {
+                Files.deleteIfExists(copy);
+            } catch (IOException ex) {
+                System.err.println("Could not delete " + copy + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    /** The DAO queries, with parameter values taken from the data itself. */
+    private static List<Probe> probes(Connection c) throws SQLException {
+        Integer gradeLevel = first(c, "SELECT MIN(gradeLevel) FROM tblStudents");
+        Integer studentId = first(c, "SELECT MIN(studentId) FROM tblGrades");
+        Integer course = first(c, "SELECT MIN(courseId) FROM tblAttendance");
+        if (course == null) {
+            course = first(c, "SELECT MIN(courseId) FROM tblCourses");
+        }
+        java.sql.Date from = firstDate(c, "SELECT MIN(attendanceDate) FROM tblAttendance");
+        java.sql.Date to = firstDate(c, "SELECT MAX(attendanceDate) FROM tblAttendance");
+
+        List<Probe> probes = new ArrayList<Probe>();
+        probes.add(new Probe("final grades by grade level",
+                sql(UcanaccessFinalGradeDAO.class, "SELECT_BY_GRADE_LEVEL"), gradeLevel));
+        probes.add(new Probe("marks of one student",
+                sql(FinalGradeMaterializer.class, "SELECT_STUDENT_MARKS"), studentId));
+        probes.add(new Probe("marks of a grade level",
+                sql(FinalGradeMaterializer.class, "SELECT_GRADE_LEVEL_MARKS"), gradeLevel));
+        probes.add(new Probe("term report (term 1)",
+                sql(UcanaccessReportDAO.class, "TERM_REPORT"), Integer.valueOf(1)));
+        probes.add(new Probe("attendance of a course in a date range",
+                sql(UcanaccessAttendanceDAO.class, "SELECT_BY_COURSE_AND_RANGE"), course, from, to));
+        probes.add(new Probe("feedback of a course",
+                sql(UcanaccessFeedbackDAO.class, "SELECT_FEEDBACK_BY_COURSE"), course));
+        return probes;
+    }
+
+    /** The SQL of a private constant: a String or a {@link ReportQuery}. */
+    private static String sql(Class<?> owner, String name) {
+        try {
+            Field f = owner.getDeclaredField(name);
+            f.setAccessible(true);
+            Object v = f.get(null);
+            return v instanceof ReportQuery ? ((ReportQuery) v).getSql() : (String) v;
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("No SQL constant " + owner.getSimpleName() + "." + name, ex);
+        }
+    }
+
+    private static void report(Connection c, List<Probe> probes) throws SQLException {
+        for (Probe p : probes) {
+            System.out.println();
+            System.out.println(p.label);
+            for (String line : plan(c, p.sql)) {
+                System.out.println("  " + line);
+            }
+            int rows = 0;
+            for (int i = 0; i < WARMUP; i++) {
+                rows = read(c, p);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < RUNS; i++) {
+                read(c, p);
+            }
+            System.out.printf("  %d rows, %.3f ms per run%n", rows, (System.nanoTime() - start) / 1e6 / RUNS);
+        }
+    }
+
+    /**
+     * Table access lines from HSQLDB's EXPLAIN PLAN output (UCanAccess runs
+     * the queries on an HSQLDB mirror of the Access file).
+     */
+    private static List<String> plan(Connection c, String sql) throws SQLException {
+        List<String> out = new ArrayList<String>();
+        String table = null;
+        String alias = null;
+        String access = null;
+        try (Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery("EXPLAIN PLAN FOR " + sql)) {
+            while (rs.next()) {
+                String line = rs.getString(1).trim();
+                if (line.startsWith("table=")) {
+                    table = line.substring(6);
+                    alias = null;
+                    access = null;
+                } else if (line.startsWith("alias=")) {
+                    alias = line.substring(6);
+                } else if (line.startsWith("access=")) {
+                    access = line.substring(7);
+                } else if (table != null && access != null && line.contains("index=")) {
+                    String entry = table + (alias != null ? " " + alias : "") + ": " + access;
+                    if (!access.equals("FULL SCAN")) {
+                        String index = line.substring(line.indexOf("index=") + 6);
+                        entry += " via " + index;
+                    }
+                    out.add(entry);
+                    table = null;
+                }
+            }
+        }
+        return out;
+    }
+
+    private static int read(Connection c, Probe p) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(p.sql)) {
+            for (int i = 0; i < p.params.length; i++) {
+                ps.setObject(i + 1, p.params[i]);
+            }
+            int rows = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows++;
+                }
+            }
+            return rows;
+        }
+    }
+
+    private static Integer first(Connection c, String sql) throws SQLException {
+        try (Statement s = c.createStatement(); ResultSet rs = s.executeQuery(sql)) {
+            if (rs.next()) {
+                int v = rs.getInt(1);
+                return rs.wasNull() ? null : Integer.valueOf(v);
+            }
+            return null;
+        }
+    }
+
+    private static java.sql.Date firstDate(Connection c, String sql) throws SQLException {
+        try (Statement s = c.createStatement(); ResultSet rs = s.executeQuery(sql)) {
+            java.sql.Date d = rs.next() ? rs.getDate(1) : null;
+            return d != null ? d : new java.sql.Date(System.currentTimeMillis());
+        }
+    }
+}
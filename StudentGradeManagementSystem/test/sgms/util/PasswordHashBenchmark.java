@@ -0,0 +1,142 @@
+package sgms.util;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import sgms.dao.DB;
+
+/**
+ * Shows what a login costs with the current {@link PasswordHash} work factor,
+ * and which work factor would fit a target login time:
+ * <pre>
+ * java -cp ... [-Dsgms.auth.iterations=N] sgms.util.PasswordHashBenchmark [targetMs]
+ * </pre>
+ * It times hashing at several iteration counts, the user lookup on the
+ * configured database, and a login with an unknown name before and after it
+ * is cached, then adds lookup and hash time up to an estimated login time
+ * (target default 250 ms). No passwords are checked against real users and
+ * nothing is written to {@code tblUsers}.
+ * <p>
+ * Lives in the test source root so it is not shipped with the application.
+ * The lookup uses the private login query of {@link CredentialManager}, read
+ * the same way {@code QueryPlanBenchmark} reads the DAO SQL.
+ */
+public final class PasswordHashBenchmark {
+
+    private static final int[] ITERATIONS = {10_000, 50_000, 120_000, 250_000, 500_000};
+    private static final int HASH_RUNS = 5;
+    private static final int LOOKUP_RUNS = 50;
+    private static final int CACHED_RUNS = 1_000;
+    private static final long DEFAULT_TARGET_MS = 250L;
+
+    private PasswordHashBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        long target = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_TARGET_MS;
+        int current = PasswordHash.iterations();
+
+        System.out.println("=== Password check (PBKDF2-HMAC-SHA256) ===");
+        verifyMillis(ITERATIONS[ITERATIONS.length - 1]); // let the JIT compile the HMAC code first
+        double perIteration = 0;
+        double currentMs = -1;
+        for (int n : ITERATIONS) {
+            double ms = verifyMillis(n);
+            perIteration = ms / n; // the largest run gives the steadiest figure
+            System.out.printf("  %,9d iterations: %7.1f ms%n", n, ms);
+            if (n == current) {
+                currentMs = ms;
+            }
+        }
+        if (currentMs < 0) {
+            currentMs = verifyMillis(current);
+            System.out.printf("  %,9d iterations: %7.1f ms (configured)%n", current, currentMs);
+        }
+
+        System.out.println();
+        System.out.println("=== Database (" + DB.backend() + ") ===");
+        double lookupMs;
+        String sql = loginSql();
+        try (Connection c = DB.get()) {
+            String username = firstUsername(c);
+            lookupMs = lookupMillis(c, sql, username != null ? username : "admin");
+        }
+        System.out.printf("  user lookup:                 %7.3f ms%n", lookupMs);
+
+        String unknown = "nobody_" + Long.toString(System.nanoTime(), 36);
+        long start = System.nanoTime();
+        CredentialManager.validateLogin(unknown, "wrong-password");
+        double coldMs = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        for (int i = 0; i < CACHED_RUNS; i++) {
+            CredentialManager.validateLogin(unknown, "wrong-password");
+        }
+        double cachedMs = (System.nanoTime() - start) / 1e6 / CACHED_RUNS;
+        System.out.printf("  unknown name, first try:     %7.3f ms%n", coldMs);
+        System.out.printf("  unknown name, cached:        %7.4f ms%n", cachedMs);
+
+        double loginMs = lookupMs + currentMs;
+        long budget = Math.max(1L, target - Math.round(lookupMs));
+        long suggested = (long) (budget / perIteration) / 1_000 * 1_000;
+
+        System.out.println();
+        System.out.printf("Login with %,d iterations: about %.1f ms (target %d ms) -> %s%n",
+                current, loginMs, target, loginMs <= target ? "OK" : "TOO SLOW");
+        System.out.printf("Iterations that fit the target on this machine: about %,d%n", suggested);
+        DB.shutdown();
+    }
+
+    /** Average time to check a password against a hash with n iterations. */
+    private static double verifyMillis(int n) {
+        String stored = PasswordHash.hash("benchmark-password", n);
+        PasswordHash.verify("benchmark-password", stored); // warm-up
+        long start = System.nanoTime();
+        for (int i = 0; i < HASH_RUNS; i++) {
+            if (!PasswordHash.verify("benchmark-password", stored)) {
+                throw new IllegalStateException("hash does not verify");
+            }
+        }
+        return (System.nanoTime() - start) / 1e6 / HASH_RUNS;
+    }
+
+    /** The login query, a private constant of {@link CredentialManager}. */
+    private static String loginSql() {
+        try {
+            Field f = CredentialManager.class.getDeclaredField("SQL_VALIDATE_LOGIN");
+            f.setAccessible(true);
+            return (String) f.get(null);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("No SQL constant CredentialManager.SQL_VALIDATE_LOGIN", ex);
+        }
+    }
+
+    private static double lookupMillis(Connection c, String sql, String username) throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            lookup(c, sql, username);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUP_RUNS; i++) {
+            lookup(c, sql, username);
+        }
+        return (System.nanoTime() - start) / 1e6 / LOOKUP_RUNS;
+    }
+
+    private static void lookup(Connection c, String sql, String username) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, username);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+            }
+        }
+    }
+
+    private static String firstUsername(Connection c) throws SQLException {
+        try (Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery("SELECT MIN(username) FROM tblUsers")) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+}